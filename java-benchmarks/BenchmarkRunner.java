@@ -0,0 +1,32 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs the benchmarks with the usual JMH command line, always adding the gc profiler
+ * (-prof gc), so every result also reports the bytes allocated per call and the collections.
+ *
+ * 	java -cp benchmarks.jar:polyfun.jar:osp.jar benchmarks.BenchmarkRunner [JMH options] [regexp]
+ *
+ * For example "MatrixBenchmarks.times -p size=256" runs one benchmark at one size, and
+ * "-rf csv -rff results.csv" writes the results to a file to compare later runs with.
+ *
+ * @author Andrew M.
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()){
+			org.openjdk.jmh.Main.main(args); //nothing to run, just print
+			return;
+		}
+		new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import matrixmath.Matrix;
+
+/**
+ * This class benchmarks Matrix.times, invert and rowreduce over matrix sizes. The matrices come
+ * from a fixed seed so runs can be compared; each benchmark runs in its own forked JVMs, so the
+ * profile one collects cannot slow down another.
+ *
+ * @author Andrew M.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBenchmarks {
+	@Param({"16", "64", "256"})
+	int size;
+
+	private Matrix a, b;
+
+	@Setup
+	public void setUp(){
+		Random rand = new Random(42);
+		a = randomMatrix(size, size, rand);
+		b = randomMatrix(size, size, rand);
+	}
+
+	@Benchmark
+	public Matrix times(){
+		return a.times(b);
+	}
+
+	@Benchmark
+	public Matrix invert(){
+		return a.invert();
+	}
+
+	@Benchmark
+	public Matrix rowreduce(){
+		return a.rowreduce();
+	}
+
+	static Matrix randomMatrix(int rows, int cols, Random rand){
+		Matrix a = new Matrix(rows, cols);
+		for (int ii = 0; ii < rows; ii++)
+			for (int jj = 0; jj < cols; jj++)
+				a.setEntry(ii, jj, rand.nextDouble()*2 - 1);
+		return a;
+	}
+}
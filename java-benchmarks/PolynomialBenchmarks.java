@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import matrixmath.Interpolation;
+import matrixmath.VDM;
+import polyfun.Polynomial;
+
+/**
+ * This class benchmarks Interpolation.fit and VDM.slopeAtPoint over polynomial degrees. The points
+ * fitted are Chebyshev points on a random polynomial (fixed seed), which keeps the fit
+ * well-conditioned at every degree.
+ *
+ * @author Andrew M.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PolynomialBenchmarks {
+	@Param({"3", "6", "10"})
+	int degree; //at least 2: slopeAtPoint divides out (x-a)^2
+
+	private Polynomial poly;
+	private double[] x, y;
+	private final Interpolation interp = new Interpolation();
+	private final VDM vdm = new VDM();
+
+	@Setup
+	public void setUp(){
+		poly = randomPolynomial(degree, new Random(42));
+		x = new double[degree+1];
+		y = new double[degree+1];
+		for (int ii = 0; ii <= degree; ii++) {
+			x[ii] = Math.cos(Math.PI*(ii + 0.5)/(degree+1));
+			y[ii] = poly.evaluate(x[ii]).getTerms()[0].getTermDouble();
+		}
+	}
+
+	@Benchmark
+	public Polynomial fit(){
+		return interp.fit(x, y, degree);
+	}
+
+	@Benchmark
+	public double slopeAtPoint(){
+		return vdm.slopeAtPoint(poly, 0.5);
+	}
+
+	static Polynomial randomPolynomial(int degree, Random rand){
+		double[] coefs = new double[degree+1];
+		for (int ii = 0; ii <= degree; ii++)
+			coefs[ii] = rand.nextInt(9) - 4;
+		coefs[degree] = 1; //keep the degree
+		return new Polynomial(coefs);
+	}
+}
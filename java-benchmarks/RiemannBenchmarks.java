@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import polyfun.Polynomial;
+import riemann_sum.Riemann;
+
+/**
+ * This class benchmarks Riemann.rs for every rule over polynomial degrees. The rule is a parameter,
+ * so every rule is measured in its own forked JVMs and the call to rs only ever sees one class
+ * (measuring the rules one after another in one JVM would make the call site megamorphic and the
+ * results would depend on the order).
+ *
+ * @author Andrew M.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RiemannBenchmarks {
+	@Param({"LeftHandRule", "RightHandRule", "MidpointRule", "TrapezoidRule", "SimpsonsRule", "MaximumRule", "MinimumRule", "RandomRule"})
+	String rule;
+
+	@Param({"3", "6", "10"})
+	int degree;
+
+	@Param({"1000"})
+	int intervals;
+
+	private Riemann sum;
+	private Polynomial poly;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		sum = (Riemann)Class.forName("riemann_sum." + rule).getDeclaredConstructor().newInstance();
+		poly = PolynomialBenchmarks.randomPolynomial(degree, new Random(42));
+	}
+
+	@Benchmark
+	public double rs(){
+		return sum.rs(poly, -2, 2, intervals);
+	}
+}
@@ -0,0 +1,116 @@
+package matrixmath;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of RowKernels. Each loop works on as many doubles at once as the machine's
+ * preferred vector width allows (for example 4 with AVX2, 8 with AVX-512) and finishes the last
+ * few entries with a scalar loop. axpy uses fused multiply-add.
+ *
+ * This class is only loaded through RowKernels, which falls back to ScalarRowKernels if the
+ * jdk.incubator.vector module is missing.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+class VectorRowKernels extends RowKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final int FLOAT_LANES = FLOATS.length();
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n){
+		DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+		int ii = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; ii < bound; ii += LANES) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOff+ii);
+			DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOff+ii);
+			xv.fma(a, yv).intoArray(y, yOff+ii); //y = x*alpha + y
+		}
+		for (; ii < n; ii++) {
+			y[yOff+ii] = Math.fma(alpha, x[xOff+ii], y[yOff+ii]);
+		}
+	}
+
+	@Override
+	public void scale(double alpha, double[] x, int off, int n){
+		int ii = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; ii < bound; ii += LANES) {
+			DoubleVector.fromArray(SPECIES, x, off+ii).mul(alpha).intoArray(x, off+ii);
+		}
+		for (; ii < n; ii++) {
+			x[off+ii] *= alpha;
+		}
+	}
+
+	@Override
+	public void add(double[] x, int xOff, double[] y, int yOff, double[] z, int zOff, int n){
+		int ii = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; ii < bound; ii += LANES) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOff+ii);
+			xv.add(DoubleVector.fromArray(SPECIES, y, yOff+ii)).intoArray(z, zOff+ii);
+		}
+		for (; ii < n; ii++) {
+			z[zOff+ii] = x[xOff+ii] + y[yOff+ii];
+		}
+	}
+
+	@Override
+	public double dot(double[] x, int xOff, double[] y, int yOff, int n){
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int ii = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; ii < bound; ii += LANES) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOff+ii);
+			sum = xv.fma(DoubleVector.fromArray(SPECIES, y, yOff+ii), sum);
+		}
+		double total = sum.reduceLanes(VectorOperators.ADD);
+		for (; ii < n; ii++) {
+			total += x[xOff+ii]*y[yOff+ii];
+		}
+		return total;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n){
+		FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+		int ii = 0;
+		int bound = FLOATS.loopBound(n);
+		for (; ii < bound; ii += FLOAT_LANES) {
+			FloatVector xv = FloatVector.fromArray(FLOATS, x, xOff+ii);
+			FloatVector yv = FloatVector.fromArray(FLOATS, y, yOff+ii);
+			xv.fma(a, yv).intoArray(y, yOff+ii);
+		}
+		for (; ii < n; ii++) {
+			y[yOff+ii] = Math.fma(alpha, x[xOff+ii], y[yOff+ii]);
+		}
+	}
+
+	@Override
+	public float dot(float[] x, int xOff, float[] y, int yOff, int n){
+		FloatVector sum = FloatVector.zero(FLOATS);
+		int ii = 0;
+		int bound = FLOATS.loopBound(n);
+		for (; ii < bound; ii += FLOAT_LANES) {
+			FloatVector xv = FloatVector.fromArray(FLOATS, x, xOff+ii);
+			sum = xv.fma(FloatVector.fromArray(FLOATS, y, yOff+ii), sum);
+		}
+		float total = sum.reduceLanes(VectorOperators.ADD);
+		for (; ii < n; ii++) {
+			total += x[xOff+ii]*y[yOff+ii];
+		}
+		return total;
+	}
+
+	@Override
+	public String getName(){
+		return "vector (" + LANES + " lanes)";
+	}
+}
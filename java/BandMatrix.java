@@ -0,0 +1,281 @@
+package matrixmath;
+
+/**
+ * The BandMatrix class stores a square matrix whose nonzeros are all close to the diagonal: at most
+ * lower diagonals below it and upper diagonals above it. Only those diagonals are kept, row by row,
+ * so an n x n band takes n*(lower+upper+1) doubles instead of n*n.
+ *
+ * factor does an LU decomposition with partial pivoting that stays inside the band (pivoting can
+ * widen U by lower more diagonals, which is planned for), so solving takes O(n*lower*(lower+upper))
+ * work instead of the O(n^3) of invert. For the common case of one diagonal on each side, see
+ * TridiagonalMatrix.
+ *
+ * @method get
+ * 	Gets a particular entry of the matrix (0 outside the band).
+ * @method set
+ * 	Sets a particular entry of the matrix (must be inside the band).
+ * @method times
+ * 	Multiplies by a vector.
+ * @method factor
+ * 	Returns the banded LU decomposition.
+ * @method solve
+ * 	Solves Ax = b.
+ * @method toMatrix
+ * 	Copies the values into a (dense) Matrix.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class BandMatrix {
+	final int n; //number of rows and columns
+	final int lower; //diagonals below the main diagonal
+	final int upper; //diagonals above the main diagonal
+	final double[] band; //row i holds columns i-lower to i+upper
+
+	/**
+	 * Constructor for a band matrix of zeros.
+	 *
+	 * @param n
+	 * 	Number of rows (and columns).
+	 * @param lower
+	 * 	Number of diagonals below the main diagonal.
+	 * @param upper
+	 * 	Number of diagonals above the main diagonal.
+	 */
+	public BandMatrix(int n, int lower, int upper){
+		if(lower < 0 || upper < 0){
+			throw new IllegalArgumentException("bandwidths cannot be negative");
+		}
+		this.n = n;
+		this.lower = lower;
+		this.upper = upper;
+		this.band = new double[n*(lower+upper+1)];
+	}
+
+	/**
+	 * Copies the band of a square Matrix (entries outside the band are ignored).
+	 *
+	 * @param that
+	 * 	The dense matrix.
+	 * @param lower
+	 * 	Number of diagonals below the main diagonal.
+	 * @param upper
+	 * 	Number of diagonals above the main diagonal.
+	 * @return
+	 * 	The band matrix.
+	 */
+	public static BandMatrix fromMatrix(Matrix that, int lower, int upper){
+		if(that.rows != that.cols){
+			throw new IllegalArgumentException("band matrices are square");
+		}
+		BandMatrix banded = new BandMatrix(that.rows, lower, upper);
+		for (int ii = 0; ii < banded.n; ii++) {
+			for (int jj = Math.max(0, ii-lower); jj <= Math.min(banded.n-1, ii+upper); jj++) {
+				banded.set(ii, jj, that.m[ii][jj]);
+			}
+		}
+		return banded;
+	}
+
+	public int getSize(){
+		return n;
+	}
+
+	private boolean inBand(int i, int j){
+		return j - i <= upper && i - j <= lower;
+	}
+
+	/**
+	 * Gets an entry of the matrix.
+	 *
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value at (i, j), 0 outside the band.
+	 */
+	public double get(int i, int j){
+		if(!inBand(i, j))
+			return 0;
+		return band[i*(lower+upper+1) + j - i + lower];
+	}
+
+	/**
+	 * Sets an entry inside the band.
+	 *
+	 * @param i
+	 * 	Row of new entry
+	 * @param j
+	 * 	Column of new entry
+	 * @param d
+	 * 	The value to put in the matrix.
+	 */
+	public void set(int i, int j, double d){
+		if(!inBand(i, j)){
+			throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside the band");
+		}
+		band[i*(lower+upper+1) + j - i + lower] = d;
+	}
+
+	/**
+	 * Multiplies by a vector.
+	 *
+	 * @param x
+	 * 	The vector (length n).
+	 * @return
+	 * 	The product.
+	 */
+	public double[] times(double[] x){
+		int width = lower+upper+1;
+		double[] y = new double[n];
+		for (int ii = 0; ii < n; ii++) {
+			int first = Math.max(0, ii-lower);
+			int last = Math.min(n-1, ii+upper);
+			int row = ii*width - ii + lower; //band index of column 0 in row ii
+			double sum = 0;
+			for (int jj = first; jj <= last; jj++) {
+				sum += band[row+jj]*x[jj];
+			}
+			y[ii] = sum;
+		}
+		return y;
+	}
+
+	/**
+	 * Factors the matrix (the matrix itself is not changed).
+	 *
+	 * @return
+	 * 	The banded LU decomposition.
+	 */
+	public LU factor(){
+		return new LU(this);
+	}
+
+	/**
+	 * Solves Ax = b (factors the matrix first; use factor to solve many times).
+	 *
+	 * @param b
+	 * 	The right-hand side.
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		return factor().solve(b);
+	}
+
+	/**
+	 * Copies the values into a Matrix.
+	 *
+	 * @return
+	 * 	Dense matrix with the same values.
+	 */
+	public Matrix toMatrix(){
+		Matrix mat = new Matrix(n, n);
+		for (int ii = 0; ii < n; ii++) {
+			for (int jj = Math.max(0, ii-lower); jj <= Math.min(n-1, ii+upper); jj++) {
+				mat.m[ii][jj] = get(ii, jj);
+			}
+		}
+		return mat;
+	}
+
+	/**
+	 * LU decomposition with partial pivoting of a band matrix. Each row keeps columns i-lower to
+	 * i+upper+lower, since row switches can move entries up to lower places past the original band.
+	 * The row switches are stored in the order they were done (piv[k] is the row switched with k).
+	 */
+	public static class LU {
+		private final int n, lower, width;
+		private final double[] a; //row i holds columns i-lower to i+lower+upper
+		private final int[] piv;
+
+		LU(BandMatrix m){
+			n = m.n;
+			lower = m.lower;
+			width = 2*m.lower + m.upper + 1;
+			a = new double[n*width];
+			piv = new int[n];
+			int reach = m.lower + m.upper; //furthest column right of the diagonal that can become nonzero
+			for (int ii = 0; ii < n; ii++) {
+				for (int jj = Math.max(0, ii-m.lower); jj <= Math.min(n-1, ii+m.upper); jj++) {
+					a[idx(ii, jj)] = m.get(ii, jj);
+				}
+			}
+
+			for (int kk = 0; kk < n; kk++) {
+				int last = Math.min(n-1, kk+lower); //last row with an entry in column kk
+				int p = kk;
+				double best = Math.abs(a[idx(kk, kk)]);
+				for (int ii = kk+1; ii <= last; ii++) {
+					double val = Math.abs(a[idx(ii, kk)]);
+					if(val > best){
+						best = val;
+						p = ii;
+					}
+				}
+				if(best == 0){
+					throw new ArithmeticException("matrix is singular");
+				}
+				piv[kk] = p;
+				int right = Math.min(n-1, kk+reach);
+				if(p != kk){
+					for (int jj = kk; jj <= right; jj++) {
+						double tmp = a[idx(kk, jj)];
+						a[idx(kk, jj)] = a[idx(p, jj)];
+						a[idx(p, jj)] = tmp;
+					}
+				}
+				double pivot = a[idx(kk, kk)];
+				for (int ii = kk+1; ii <= last; ii++) {
+					double mult = a[idx(ii, kk)] / pivot;
+					a[idx(ii, kk)] = mult; //store L
+					if(mult == 0)
+						continue;
+					RowKernels.ACTIVE.axpy(-mult, a, idx(kk, kk+1), a, idx(ii, kk+1), right - kk);
+				}
+			}
+		}
+
+		private int idx(int i, int j){
+			return i*width + j - i + lower;
+		}
+
+		/**
+		 * Solves Ax = b with the stored factors.
+		 *
+		 * @param b
+		 * 	The right-hand side (length n).
+		 * @return
+		 * 	The solution x.
+		 */
+		public double[] solve(double[] b){
+			if(b.length != n){
+				throw new IllegalArgumentException("right-hand side has length " + b.length + ", expected " + n);
+			}
+			double[] x = b.clone();
+			for (int kk = 0; kk < n; kk++) { //forward: same switches and eliminations as factoring
+				int p = piv[kk];
+				if(p != kk){
+					double tmp = x[kk];
+					x[kk] = x[p];
+					x[p] = tmp;
+				}
+				int last = Math.min(n-1, kk+lower);
+				for (int ii = kk+1; ii <= last; ii++) {
+					x[ii] -= a[idx(ii, kk)]*x[kk];
+				}
+			}
+			int reach = width - lower - 1;
+			for (int ii = n-1; ii >= 0; ii--) { //back substitution with U
+				double sum = x[ii];
+				int right = Math.min(n-1, ii+reach);
+				for (int jj = ii+1; jj <= right; jj++) {
+					sum -= a[idx(ii, jj)]*x[jj];
+				}
+				x[ii] = sum / a[idx(ii, ii)];
+			}
+			return x;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.BandMatrix;
+import matrixmath.TridiagonalMatrix;
+
+/**
+ * This class tests the banded and tridiagonal matrices: solves checked by |b - Ax| / |b| against
+ * the same matrix stored densely (the band matrix needs row switches), and the band product
+ * against the dense product.
+ *
+ * @author Andrew M.
+ */
+public class BandMatrixTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(9);
+		int n = 80;
+
+		BandMatrix band = new BandMatrix(n, 2, 3);
+		for (int ii = 0; ii < n; ii++)
+			for (int jj = Math.max(0, ii-2); jj <= Math.min(n-1, ii+3); jj++)
+				band.set(ii, jj, ii == jj ? 1 + rand.nextDouble() : rand.nextDouble()*2 - 1); //needs row switches
+		double[] b = randomVector(n, rand);
+		double[] x = randomVector(n, rand);
+		check("band solve", relative(band.toMatrix(), band.solve(b), b) < 1e-10);
+		check("band times vector", norm(subtract(band.times(x), times(band.toMatrix(), x))) < 1e-12);
+
+		double[] lower = new double[n-1], diag = new double[n], upper = new double[n-1];
+		for (int ii = 0; ii < n; ii++) {
+			diag[ii] = 4 + rand.nextDouble();
+			if(ii < n-1){
+				lower[ii] = rand.nextDouble()*2 - 1;
+				upper[ii] = rand.nextDouble()*2 - 1;
+			}
+		}
+		TridiagonalMatrix tri = new TridiagonalMatrix(lower, diag, upper);
+		check("tridiagonal solve", relative(tri.toBandMatrix().toMatrix(), tri.solve(b), b) < 1e-12);
+
+		finish();
+	}
+}
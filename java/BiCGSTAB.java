@@ -0,0 +1,65 @@
+package matrixmath;
+
+/**
+ * The BiCGSTAB class solves Ax = b for a general (nonsymmetric) square A with the stabilized
+ * biconjugate gradient method, preconditioned on the right so that the residual it checks is the
+ * true residual b - Ax. Each iteration costs two products with A and two preconditioner
+ * applications, and memory does not grow with the number of iterations (unlike GMRES).
+ *
+ * The method can break down (a division by zero) on some matrices; the solve then stops early with
+ * hasConverged false.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class BiCGSTAB extends IterativeSolver {
+	/**
+	 * @param a
+	 * 	The square matrix, as an operator.
+	 */
+	public BiCGSTAB(LinearOperator a){
+		super(a);
+	}
+
+	@Override
+	protected void iterate(double[] b, double[] x, double target){
+		int n = b.length;
+		double[] r = new double[n], rHat = new double[n], p = new double[n], v = new double[n];
+		double[] pHat = new double[n], s = new double[n], sHat = new double[n], t = new double[n];
+		double res = residual(b, x, r);
+		if(record(0, res, target))
+			return;
+		System.arraycopy(r, 0, rHat, 0, n);
+		double rho = 1, alpha = 1, omega = 1;
+		for (int it = 1; ; it++) {
+			double rhoNew = dot(rHat, r);
+			if(rhoNew == 0 || omega == 0)
+				return; //breakdown
+			double beta = (rhoNew/rho) * (alpha/omega);
+			rho = rhoNew;
+			for (int ii = 0; ii < n; ii++) //p = r + beta*(p - omega*v)
+				p[ii] = r[ii] + beta*(p[ii] - omega*v[ii]);
+			preconditioner.apply(p, pHat);
+			a.apply(pHat, v);
+			alpha = rho / dot(rHat, v);
+			for (int ii = 0; ii < n; ii++) //s = r - alpha*v
+				s[ii] = r[ii] - alpha*v[ii];
+			double sNorm = norm(s);
+			if(sNorm <= target){ //converged half way through the iteration
+				axpy(alpha, pHat, x);
+				record(it, sNorm, target);
+				return;
+			}
+			preconditioner.apply(s, sHat);
+			a.apply(sHat, t);
+			double tt = dot(t, t);
+			omega = tt == 0 ? 0 : dot(t, s) / tt;
+			axpy(alpha, pHat, x);
+			axpy(omega, sHat, x);
+			for (int ii = 0; ii < n; ii++) //r = s - omega*t
+				r[ii] = s[ii] - omega*t[ii];
+			if(record(it, norm(r), target))
+				return;
+		}
+	}
+}
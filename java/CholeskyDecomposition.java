@@ -0,0 +1,290 @@
+package matrixmath;
+
+/**
+ * The CholeskyDecomposition class factors a symmetric positive-definite matrix as A = LL^T, with L
+ * lower triangular. Only the lower triangle of A (on and below the diagonal) is read, and only L is
+ * stored, packed row after row into one array of n(n+1)/2 values, so it takes about half the work
+ * and memory of LUDecomposition. Normal equations and covariance matrices are symmetric positive
+ * definite.
+ *
+ * The LDL^T form (L with 1s on the diagonal and a separate diagonal D) can be chosen instead; it
+ * needs no square roots.
+ *
+ * If the matrix turns out not to be positive definite, factoring stops at the row where that is
+ * found and isPositiveDefinite returns false, so the caller can fall back to LUDecomposition
+ * without paying for the whole factorization.
+ *
+ * @method solve
+ * 	Solves Ax = b for one or many right-hand sides.
+ * @method logDeterminant
+ * 	Returns the natural log of the determinant of A.
+ * @method isPositiveDefinite
+ * 	Whether the factorization succeeded.
+ * @method getL
+ * 	Returns the factor L.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class CholeskyDecomposition {
+	private final double[] l; //L packed by rows: row i starts at i*(i+1)/2 and has i+1 entries
+	private final double[] d; //diagonal D for LDL^T, null for LL^T
+	private final int n; //size of the matrix
+	private boolean positiveDefinite = true;
+	private int failedRow = -1; //row where factoring stopped
+
+	/**
+	 * Factors a Matrix as LL^T. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The symmetric matrix (only the lower triangle is read).
+	 */
+	public CholeskyDecomposition(Matrix a){
+		this(a, false);
+	}
+
+	/**
+	 * Factors a Matrix as LL^T or LDL^T. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The symmetric matrix (only the lower triangle is read).
+	 * @param ldl
+	 * 	True for LDL^T, false for LL^T.
+	 */
+	public CholeskyDecomposition(Matrix a, boolean ldl){
+		n = checkSquare(a.rows, a.cols);
+		l = new double[packedSize(n)];
+		for (int ii = 0; ii < n; ii++)
+			System.arraycopy(a.m[ii], 0, l, start(ii), ii+1); //lower part of each row
+		d = ldl ? new double[n] : null;
+		factor();
+	}
+
+	/**
+	 * Factors a FlatMatrix as LL^T or LDL^T. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The symmetric matrix (only the lower triangle is read).
+	 * @param ldl
+	 * 	True for LDL^T, false for LL^T.
+	 */
+	public CholeskyDecomposition(FlatMatrix a, boolean ldl){
+		n = checkSquare(a.rows, a.cols);
+		l = new double[packedSize(n)];
+		for (int ii = 0; ii < n; ii++)
+			System.arraycopy(a.data, a.offset + ii*a.stride, l, start(ii), ii+1);
+		d = ldl ? new double[n] : null;
+		factor();
+	}
+
+	private static int checkSquare(int rows, int cols){
+		if(rows != cols){
+			throw new IllegalArgumentException("Cholesky decomposition needs a square matrix, not " + rows + "x" + cols);
+		}
+		return rows;
+	}
+
+	private static int packedSize(int n){
+		long size = (long)n*(n+1)/2;
+		if(size > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("matrix too large to pack: " + n + "x" + n);
+		}
+		return (int)size;
+	}
+
+	/**
+	 * Index in l of entry (i, 0) of L.
+	 */
+	private static int start(int i){
+		return (int)((long)i*(i+1)/2);
+	}
+
+	private void factor(){
+		if(d != null)
+			factorLDL();
+		else
+			factorLL();
+	}
+
+	/**
+	 * Row by row: entry (i, j) of L is (a_ij - dot(row i of L, row j of L)) / l_jj, and the
+	 * diagonal is the square root of what is left. Both dot products walk along rows.
+	 */
+	private void factorLL(){
+		double[] a = l;
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int ii = 0; ii < n; ii++) {
+			int rowI = start(ii);
+			for (int jj = 0; jj < ii; jj++) {
+				int rowJ = start(jj);
+				double sum = a[rowI+jj] - kernels.dot(a, rowI, a, rowJ, jj);
+				a[rowI+jj] = sum / a[rowJ+jj];
+			}
+			double diag = a[rowI+ii] - kernels.dot(a, rowI, a, rowI, ii);
+			if(!(diag > 0)){ //not positive definite (also catches NaN)
+				fail(ii);
+				return;
+			}
+			a[rowI+ii] = Math.sqrt(diag);
+		}
+	}
+
+	/**
+	 * Same order as factorLL, but with D kept separately: l_ij = (a_ij - sum l_ik d_k l_jk) / d_j.
+	 */
+	private void factorLDL(){
+		double[] a = l;
+		double[] scaled = new double[n]; //l_ik * d_k for the current row
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int ii = 0; ii < n; ii++) {
+			int rowI = start(ii);
+			for (int jj = 0; jj < ii; jj++) {
+				int rowJ = start(jj);
+				double sum = a[rowI+jj] - kernels.dot(scaled, 0, a, rowJ, jj);
+				a[rowI+jj] = sum / d[jj];
+				scaled[jj] = a[rowI+jj]*d[jj];
+			}
+			d[ii] = a[rowI+ii] - kernels.dot(scaled, 0, a, rowI, ii);
+			a[rowI+ii] = 1;
+			if(!(d[ii] > 0)){
+				fail(ii);
+				return;
+			}
+		}
+	}
+
+	private void fail(int row){
+		positiveDefinite = false;
+		failedRow = row;
+	}
+
+	/**
+	 * @return
+	 * 	True if the matrix is positive definite (the factorization is complete).
+	 */
+	public boolean isPositiveDefinite(){
+		return positiveDefinite;
+	}
+
+	/**
+	 * @return
+	 * 	The row where factoring stopped, or -1 if it succeeded.
+	 */
+	public int getFailedRow(){
+		return failedRow;
+	}
+
+	/**
+	 * The determinant is the product of the squared diagonal of L (or of D), which can easily
+	 * overflow, so its log is returned instead.
+	 *
+	 * @return
+	 * 	The natural log of the determinant of A.
+	 */
+	public double logDeterminant(){
+		check();
+		double sum = 0;
+		for (int ii = 0; ii < n; ii++) {
+			sum += (d == null) ? 2*Math.log(l[start(ii)+ii]) : Math.log(d[ii]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Solves Ax = b.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		if(b.length != n){
+			throw new IllegalArgumentException("right-hand side has length " + b.length + ", expected " + n);
+		}
+		FlatMatrix x = new FlatMatrix(b.clone(), 0, 1, n, 1);
+		substitute(x);
+		return x.data;
+	}
+
+	/**
+	 * Solves AX = B where every column of B is a right-hand side.
+	 *
+	 * @param b
+	 * 	The right-hand sides (n rows).
+	 * @return
+	 * 	New matrix X with one solution per column.
+	 */
+	public Matrix solve(Matrix b){
+		if(b.rows != n){
+			throw new IllegalArgumentException("right-hand side has " + b.rows + " rows, expected " + n);
+		}
+		FlatMatrix x = new FlatMatrix(b);
+		substitute(x);
+		return x.toMatrix();
+	}
+
+	/**
+	 * Forward substitution with L, divide by D (LDL^T only), back substitution with L^T.
+	 * Works on whole rows of x so that many right-hand sides are solved together.
+	 */
+	private void substitute(FlatMatrix x){
+		check();
+		double[] a = l;
+		double[] b = x.data;
+		int k = x.cols;
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int ii = 0; ii < n; ii++) { //L y = b
+			int row = start(ii);
+			int xi = x.offset + ii*x.stride;
+			for (int jj = 0; jj < ii; jj++) {
+				if(a[row+jj] != 0)
+					kernels.axpy(-a[row+jj], b, x.offset + jj*x.stride, b, xi, k);
+			}
+			if(d == null)
+				kernels.scale(1/a[row+ii], b, xi, k);
+		}
+		if(d != null){ //D z = y
+			for (int ii = 0; ii < n; ii++)
+				kernels.scale(1/d[ii], b, x.offset + ii*x.stride, k);
+		}
+		for (int ii = n-1; ii >= 0; ii--) { //L^T x = z (column ii of L^T is row ii of L)
+			int row = start(ii);
+			int xi = x.offset + ii*x.stride;
+			if(d == null)
+				kernels.scale(1/a[row+ii], b, xi, k);
+			for (int jj = 0; jj < ii; jj++) {
+				if(a[row+jj] != 0)
+					kernels.axpy(-a[row+jj], b, xi, b, x.offset + jj*x.stride, k);
+			}
+		}
+	}
+
+	/**
+	 * Returns L (for LDL^T, the unit lower triangular factor).
+	 *
+	 * @return
+	 * 	New matrix with L.
+	 */
+	public Matrix getL(){
+		Matrix lower = new Matrix(n, n);
+		for (int ii = 0; ii < n; ii++)
+			for (int jj = 0; jj <= ii; jj++)
+				lower.m[ii][jj] = l[start(ii)+jj];
+		return lower;
+	}
+
+	/**
+	 * @return
+	 * 	The diagonal D of LDL^T, or null for LL^T.
+	 */
+	public double[] getD(){
+		return d == null ? null : d.clone();
+	}
+
+	private void check(){
+		if(!positiveDefinite){
+			throw new ArithmeticException("matrix is not positive definite (failed at row " + failedRow + ")");
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.CholeskyDecomposition;
+import matrixmath.LUDecomposition;
+import matrixmath.Matrix;
+
+/**
+ * This class tests CholeskyDecomposition in both forms (LL^T and LDL^T): solves checked by
+ * |b - Ax| / |b| from the original matrix, the log determinant against LU, and an indefinite
+ * matrix that must be reported as not positive definite.
+ *
+ * @author Andrew M.
+ */
+public class CholeskyDecompositionTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(13);
+		int n = 60;
+		Matrix a = randomMatrix(n, n, rand);
+		Matrix spd = a.transposeTimes(a); //A^T A plus n on the diagonal is positive definite
+		for (int ii = 0; ii < n; ii++)
+			spd.setEntry(ii, ii, spd.m[ii][ii] + n);
+		double[] b = randomVector(n, rand);
+		Matrix bs = randomMatrix(n, 3, rand);
+
+		CholeskyDecomposition ll = new CholeskyDecomposition(spd);
+		check("Cholesky LL^T solve", relative(spd, ll.solve(b), b) < 1e-10);
+		check("Cholesky LL^T solve, 3 right-hand sides", relative(spd, ll.solve(bs), bs) < 1e-10);
+		check("Cholesky LL^T log determinant", Math.abs(ll.logDeterminant() - Math.log(Math.abs(new LUDecomposition(spd).determinant()))) < 1e-8);
+		CholeskyDecomposition ldl = new CholeskyDecomposition(spd, true);
+		check("Cholesky LDL^T solve", relative(spd, ldl.solve(b), b) < 1e-10);
+		check("Cholesky finds an indefinite matrix", !new CholeskyDecomposition(a).isPositiveDefinite());
+
+		finish();
+	}
+}
@@ -0,0 +1,45 @@
+package matrixmath;
+
+/**
+ * The ConjugateGradient class solves Ax = b for a symmetric positive-definite A (and a symmetric
+ * positive-definite preconditioner). Each iteration costs one product with A, one preconditioner
+ * application and a few vector operations, and keeps only four vectors.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class ConjugateGradient extends IterativeSolver {
+	/**
+	 * @param a
+	 * 	The symmetric positive-definite matrix, as an operator.
+	 */
+	public ConjugateGradient(LinearOperator a){
+		super(a);
+	}
+
+	@Override
+	protected void iterate(double[] b, double[] x, double target){
+		int n = b.length;
+		double[] r = new double[n], z = new double[n], p = new double[n], ap = new double[n];
+		double res = residual(b, x, r);
+		if(record(0, res, target))
+			return;
+		preconditioner.apply(r, z);
+		System.arraycopy(z, 0, p, 0, n);
+		double rz = dot(r, z);
+		for (int it = 1; ; it++) {
+			a.apply(p, ap);
+			double alpha = rz / dot(p, ap);
+			axpy(alpha, p, x);
+			axpy(-alpha, ap, r);
+			if(record(it, norm(r), target))
+				return;
+			preconditioner.apply(r, z);
+			double rzNew = dot(r, z);
+			double beta = rzNew / rz;
+			rz = rzNew;
+			for (int ii = 0; ii < n; ii++) //p = z + beta*p
+				p[ii] = z[ii] + beta*p[ii];
+		}
+	}
+}
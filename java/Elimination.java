@@ -0,0 +1,126 @@
+package matrixmath;
+
+/**
+ * The Elimination class rowreduces a FlatMatrix in place (Gauss-Jordan elimination with partial
+ * pivoting). Unlike the row operations in Matrix, nothing here makes a copy: every row switch,
+ * scaling and linear combination is done directly on the one working matrix, so reducing an
+ * n x n matrix takes O(n^3) work and no extra memory.
+ *
+ * The tolerance used to decide whether a pivot is zero is computed once from the size of the
+ * largest entry, instead of being recomputed inside the loops.
+ *
+ * @method reduce
+ * 	Rowreduces the first columns of the working matrix.
+ * @method eliminateColumn
+ * 	Puts zeros above and below the pivot of a single column.
+ * @method getRank
+ * 	Number of pivots found so far.
+ * @method getRowSwaps
+ * 	Number of row switches done while pivoting.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class Elimination {
+	private final FlatMatrix work; //the matrix being reduced (modified in place)
+	private final double tolerance; //anything smaller than this is treated as a zero pivot
+	private int rank; //pivots found so far (also the row the next pivot goes in)
+	private int rowSwaps = 0; //how many times rows were switched
+
+	/**
+	 * Sets up elimination on a matrix. The matrix is modified by reduce and eliminateColumn.
+	 *
+	 * @param work
+	 * 	The matrix to rowreduce in place.
+	 */
+	public Elimination(FlatMatrix work){
+		this.work = work;
+		double largest = 0;
+		for (int ii = 0; ii < work.rows; ii++) { //largest entry sets the scale for the tolerance
+			int row = work.offset + ii*work.stride;
+			for (int jj = 0; jj < work.cols; jj++) {
+				largest = Math.max(largest, Math.abs(work.data[row+jj]));
+			}
+		}
+		this.tolerance = Math.max(work.rows, work.cols) * Math.ulp(largest);
+	}
+
+	/**
+	 * Rowreduces the first max columns. The remaining columns (for example the identity in an
+	 * augmented matrix) are carried along by every row operation but are not used for pivots.
+	 *
+	 * @param max
+	 * 	Number of columns to reduce.
+	 * @return
+	 * 	The rank of those columns.
+	 */
+	public int reduce(int max){
+		for (int col = 0; col < max && rank < work.rows; col++) {
+			eliminateColumn(col);
+		}
+		return rank;
+	}
+
+	/**
+	 * Finds the largest entry in a column (at or below the next pivot row), switches it up,
+	 * makes it a 1 and puts zeros in the rest of the column. If every candidate is smaller
+	 * than the tolerance the column has no pivot and the matrix is left alone.
+	 *
+	 * @param col
+	 * 	The column to put zeros down.
+	 * @return
+	 * 	True if the column had a pivot.
+	 */
+	public boolean eliminateColumn(int col){
+		double[] a = work.data;
+		int stride = work.stride;
+		int base = work.offset;
+		int cols = work.cols;
+
+		int pivot = -1;
+		double best = tolerance;
+		for (int ii = rank; ii < work.rows; ii++) { //partial pivoting: biggest entry is the most stable pivot
+			double val = Math.abs(a[base + ii*stride + col]);
+			if(val > best){
+				best = val;
+				pivot = ii;
+			}
+		}
+		if(pivot < 0){ //column is all (numerically) zero below the pivots found so far
+			for (int ii = rank; ii < work.rows; ii++)
+				a[base + ii*stride + col] = 0;
+			return false;
+		}
+		if(pivot != rank){
+			work.switchRows(pivot, rank);
+			rowSwaps++;
+		}
+
+		int pivotRow = base + rank*stride;
+		RowKernels.ACTIVE.scale(1/a[pivotRow + col], a, pivotRow + col+1, cols - col-1); //entries left of col are already zero
+		a[pivotRow+col] = 1;
+
+		for (int ii = 0; ii < work.rows; ii++) {
+			int row = base + ii*stride;
+			double factor = a[row+col];
+			if(ii == rank || factor == 0)
+				continue;
+			RowKernels.ACTIVE.axpy(-factor, a, pivotRow + col+1, a, row + col+1, cols - col-1); //row ii -= factor * pivot row
+			a[row+col] = 0; //exactly zero instead of rounding error
+		}
+		rank++;
+		return true;
+	}
+
+	public int getRank(){
+		return rank;
+	}
+
+	public int getRowSwaps(){
+		return rowSwaps;
+	}
+
+	public double getTolerance(){
+		return tolerance;
+	}
+}
@@ -0,0 +1,484 @@
+package matrixmath;
+
+/**
+ * This class is a matrix whose values are kept in one contiguous array of doubles instead of
+ * a 2D array. Entries are stored row by row (row-major); entry (i, j) lives at
+ * offset + i*stride + j. Because the stride can be larger than the number of columns, a
+ * FlatMatrix can also be a view of a block of rows and columns inside a larger matrix without
+ * copying any values.
+ *
+ * The operations mirror those of Matrix (fillMatrix, clone, plus, times, rowreduce, invert) but
+ * work directly on the flat array, so large matrices do not need one heap object per row.
+ *
+ * Matrix itself keeps its 2D array, because m is public and callers read, write and replace its
+ * rows directly; storing Matrix values in one array would break all of that code. Instead the
+ * Matrix operations that gain from contiguous storage (rowreduce, times, the decompositions)
+ * copy into a FlatMatrix, work there and copy back, and code that wants contiguous storage
+ * throughout uses FlatMatrix (new FlatMatrix(matrix) and toMatrix convert between the two).
+ *
+ * @method get
+ * 	Gets a particular entry of the matrix.
+ * @method set
+ * 	Sets a particular entry of the matrix.
+ * @method row
+ * 	Returns a view of one row (shares values with this matrix).
+ * @method view
+ * 	Returns a view of a block of this matrix (shares values with this matrix).
+ * @method copyInto
+ * 	Copies the values of this matrix into another matrix of the same size.
+ * @method fillMatrix
+ * 	Fills the values of one matrix with those of an input matrix.
+ * @method clone
+ * 	Returns a cloned matrix (copy function).
+ * @method plus
+ * 	Adds two matrices.
+ * @method times
+ * 	Multiplies two matrices.
+ * @method plusInto, timesInto
+ * 	Write the sum or product into a matrix given by the caller (see MatrixArena).
+ * @method transpose, transposeInPlace
+ * 	Returns the transpose, or transposes a square matrix in place (see Transpose).
+ * @method timesTransposed, transposeTimes
+ * 	this*that^T and this^T*that without making the transpose.
+ * @method rowreduce
+ * 	Returns a rowreduced matrix.
+ * @method invert
+ * 	Returns the inverse of a matrix (square matrix).
+ * @method switchRows
+ * 	Switches two rows in place.
+ * @method scalarTimesRow
+ * 	Multiplies a row by a scalar in place.
+ * @method linearCombRows
+ * 	Adds a multiple of one row to another in place.
+ * @method toMatrix
+ * 	Copies the values into a Matrix.
+ * @method print
+ * 	Prints out a matrix.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class FlatMatrix {
+	double[] data; //the array that holds the matrix values (row-major)
+	int offset; //index in data of entry (0, 0)
+	int stride; //distance in data between the start of two rows
+	int rows; //number of rows
+	int cols; //number of columns
+
+	/**
+	 * Constructor for a flat matrix - initializes with # of rows and columns.
+	 *
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 */
+	public FlatMatrix(int i, int j){
+		this(new double[i*j], 0, j, i, j);
+	}
+
+	/**
+	 * Wraps an existing array (no values are copied).
+	 *
+	 * @param data
+	 * 	The array holding the values.
+	 * @param offset
+	 * 	Index of entry (0, 0) in the array.
+	 * @param stride
+	 * 	Distance in the array between the start of two rows (at least the number of columns).
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 */
+	public FlatMatrix(double[] data, int offset, int stride, int i, int j){
+		if(stride < j || offset < 0 || (i > 0 && offset + (i-1)*stride + j > data.length)){
+			throw new IllegalArgumentException("array too small for a " + i + "x" + j + " matrix");
+		}
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.rows = i;
+		this.cols = j;
+	}
+
+	/**
+	 * Copies a Matrix into flat storage.
+	 *
+	 * @param that
+	 * 	The matrix whose values are copied.
+	 */
+	public FlatMatrix(Matrix that){
+		this(that.rows, that.cols);
+		for (int ii = 0; ii < rows; ii++) {
+			System.arraycopy(that.m[ii], 0, data, ii*stride, cols); //one bulk copy per row
+		}
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * Gets an entry of the matrix.
+	 *
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value at (i, j).
+	 */
+	public double get(int i, int j){
+		return data[offset + i*stride + j];
+	}
+
+	/**
+	 * Sets an entry of the matrix with value d.
+	 *
+	 * @param i
+	 * 	Row of new entry
+	 * @param j
+	 * 	Column of new entry
+	 * @param d
+	 * 	The value to put in the matrix.
+	 */
+	public void set(int i, int j, double d){
+		data[offset + i*stride + j] = d;
+	}
+
+	/**
+	 * Returns a 1 x cols view of a row. Changing the view changes this matrix.
+	 *
+	 * @param i
+	 * 	The row to view.
+	 * @return
+	 * 	A matrix sharing values with row i.
+	 */
+	public FlatMatrix row(int i){
+		return view(i, 0, 1, cols);
+	}
+
+	/**
+	 * Returns a view of a block of this matrix. Changing the view changes this matrix.
+	 *
+	 * @param row
+	 * 	First row of the block.
+	 * @param col
+	 * 	First column of the block.
+	 * @param numRows
+	 * 	Number of rows in the block.
+	 * @param numCols
+	 * 	Number of columns in the block.
+	 * @return
+	 * 	A matrix sharing values with the block.
+	 */
+	public FlatMatrix view(int row, int col, int numRows, int numCols){
+		if(row < 0 || col < 0 || row + numRows > rows || col + numCols > cols){
+			throw new IndexOutOfBoundsException("block outside of a " + rows + "x" + cols + " matrix");
+		}
+		return new FlatMatrix(data, offset + row*stride + col, stride, numRows, numCols);
+	}
+
+	/**
+	 * Copies the values of one row into an array.
+	 *
+	 * @param i
+	 * 	The row to copy.
+	 * @param dest
+	 * 	The array to copy into.
+	 * @param destPos
+	 * 	Where in dest to start copying.
+	 */
+	public void copyRow(int i, double[] dest, int destPos){
+		System.arraycopy(data, offset + i*stride, dest, destPos, cols);
+	}
+
+	/**
+	 * Copies values from an array into one row.
+	 *
+	 * @param i
+	 * 	The row to fill.
+	 * @param src
+	 * 	The array to copy from.
+	 * @param srcPos
+	 * 	Where in src to start copying.
+	 */
+	public void setRow(int i, double[] src, int srcPos){
+		System.arraycopy(src, srcPos, data, offset + i*stride, cols);
+	}
+
+	/**
+	 * Copies the values of this matrix into another matrix with the same dimensions.
+	 *
+	 * @param dest
+	 * 	The matrix to copy into.
+	 */
+	public void copyInto(FlatMatrix dest){
+		if(dest.rows != rows || dest.cols != cols){
+			throw new IllegalArgumentException("dimensions do not agree");
+		}
+		if(stride == cols && dest.stride == cols){ //both are packed, so one copy does it
+			System.arraycopy(data, offset, dest.data, dest.offset, rows*cols);
+			return;
+		}
+		for (int ii = 0; ii < rows; ii++) {
+			System.arraycopy(data, offset + ii*stride, dest.data, dest.offset + ii*dest.stride, cols);
+		}
+	}
+
+	/**
+	 * Fills a matrix with values given by another matrix (reuses this array when it already has that shape).
+	 *
+	 * @param that
+	 * 	The matrix values used to fill these.
+	 */
+	public void fillMatrix(FlatMatrix that){
+		if(offset != 0 || stride != that.cols || data.length != that.rows*that.cols){ //different shape, so get a new packed array
+			data = new double[that.rows*that.cols];
+			offset = 0;
+			stride = that.cols;
+		}
+		rows = that.rows;
+		cols = that.cols;
+		that.copyInto(this);
+	}
+
+	/**
+	 * Copies a matrix into a new, packed matrix.
+	 */
+	public FlatMatrix clone(){
+		FlatMatrix cloned = new FlatMatrix(rows, cols);
+		copyInto(cloned);
+		return cloned;
+	}
+
+	/**
+	 * Adds two matrices. The two matrices must have the same dimensions.
+	 *
+	 * @param that
+	 * 	The second matrix to be added.
+	 * @return
+	 * 	New matrix containing result of added matrices, or null if the sizes do not agree.
+	 */
+	public FlatMatrix plus(FlatMatrix that){
+		if(rows != that.rows || cols != that.cols){
+			return null; //if does not agree in size
+		}
+		FlatMatrix added = new FlatMatrix(rows, cols);
+		plusInto(that, added);
+		return added;
+	}
+
+	/**
+	 * Adds two matrices like plus, but writes the sum into dest.
+	 *
+	 * @param that
+	 * 	The second matrix to be added (same size).
+	 * @param dest
+	 * 	The matrix the sum is written to (may be this or that).
+	 */
+	public void plusInto(FlatMatrix that, FlatMatrix dest){
+		if(rows != that.rows || cols != that.cols || rows != dest.rows || cols != dest.cols){
+			throw new IllegalArgumentException("dimensions do not agree");
+		}
+		for (int ii = 0; ii < rows; ii++) {
+			int a = offset + ii*stride;
+			int b = that.offset + ii*that.stride;
+			RowKernels.ACTIVE.add(data, a, that.data, b, dest.data, dest.offset + ii*dest.stride, cols);
+		}
+	}
+
+	/**
+	 * Multiplies two matrices (see MatrixMultiply for the cache-blocked kernel).
+	 *
+	 * @param that
+	 * 	The matrix used to multiply this one by (remember not commutative)
+	 * @return
+	 * 	New matrix with multiplied values
+	 */
+	public FlatMatrix times(FlatMatrix that){
+		return MatrixMultiply.multiply(this, that);
+	}
+
+	/**
+	 * Multiplies two matrices like times, but writes the product into dest.
+	 *
+	 * @param that
+	 * 	The matrix used to multiply this one by.
+	 * @param dest
+	 * 	The matrix the product is written to (rows x that.cols, not overlapping this or that).
+	 */
+	public void timesInto(FlatMatrix that, FlatMatrix dest){
+		for (int ii = 0; ii < dest.rows; ii++)
+			java.util.Arrays.fill(dest.data, dest.offset + ii*dest.stride, dest.offset + ii*dest.stride + dest.cols, 0);
+		MatrixMultiply.multiplyAdd(this, that, dest);
+	}
+
+	/**
+	 * Multiplies this matrix by the transpose of another (this*that^T) without making the transpose.
+	 *
+	 * @param that
+	 * 	Matrix with the same number of columns as this one.
+	 * @return
+	 * 	New rows x that.rows matrix with the product.
+	 */
+	public FlatMatrix timesTransposed(FlatMatrix that){
+		return MatrixMultiply.multiplyTransposed(this, that);
+	}
+
+	/**
+	 * Multiplies the transpose of this matrix by another (this^T*that) without making the transpose.
+	 * this.transposeTimes(this) is the Gram matrix.
+	 *
+	 * @param that
+	 * 	Matrix with the same number of rows as this one.
+	 * @return
+	 * 	New cols x that.cols matrix with the product.
+	 */
+	public FlatMatrix transposeTimes(FlatMatrix that){
+		return MatrixMultiply.transposeMultiply(this, that);
+	}
+
+	/**
+	 * Returns the transpose of this matrix (see Transpose for the cache-oblivious copy).
+	 *
+	 * @return
+	 * 	New cols x rows matrix.
+	 */
+	public FlatMatrix transpose(){
+		FlatMatrix transposed = new FlatMatrix(cols, rows);
+		Transpose.transpose(this, transposed);
+		return transposed;
+	}
+
+	/**
+	 * Transposes this square matrix in place.
+	 */
+	public void transposeInPlace(){
+		Transpose.transposeInPlace(this);
+	}
+
+	/**
+	 * Switches two rows in place.
+	 *
+	 * @param firstRow
+	 * 	First row used to switch.
+	 * @param secondRow
+	 * 	Second row used to switch.
+	 */
+	public void switchRows(int firstRow, int secondRow){
+		if(firstRow == secondRow)
+			return;
+		int a = offset + firstRow*stride;
+		int b = offset + secondRow*stride;
+		for (int jj = 0; jj < cols; jj++) {
+			double tmp = data[a+jj];
+			data[a+jj] = data[b+jj];
+			data[b+jj] = tmp;
+		}
+	}
+
+	/**
+	 * Multiplies a row by a scalar in place.
+	 *
+	 * @param scalar
+	 * 	The scalar to multiply the row by.
+	 * @param rownumber
+	 * 	The row number to multiply.
+	 */
+	public void scalarTimesRow(double scalar, int rownumber){
+		RowKernels.ACTIVE.scale(scalar, data, offset + rownumber*stride, cols);
+	}
+
+	/**
+	 * Adds a multiple of one row to another row in place.
+	 *
+	 * @param scalar
+	 * 	The scalar used to multiply the first row.
+	 * @param firstrow
+	 * 	The row that is multiplied and then added.
+	 * @param secondrow
+	 * 	The modified row.
+	 */
+	public void linearCombRows(double scalar, int firstrow, int secondrow){
+		RowKernels.ACTIVE.axpy(scalar, data, offset + firstrow*stride, data, offset + secondrow*stride, cols);
+	}
+
+	/**
+	 * Returns a rowreduced matrix. The reduction is done in place on one copy of this matrix.
+	 *
+	 * @return
+	 * 	A matrix that has been fully rowreduced.
+	 */
+	public FlatMatrix rowreduce(){
+		FlatMatrix reduced = clone();
+		reduced.reduceColumns(Math.min(rows, cols));
+		return reduced;
+	}
+
+	/**
+	 * Finds the inverse of a square matrix by rowreducing [this | I] and keeping the right half.
+	 *
+	 * @return
+	 * 	Returns a new, inverted matrix, or null if the matrix is not square.
+	 */
+	public FlatMatrix invert(){
+		if(rows != cols){
+			System.out.println("not invertible");
+			return null;
+		}
+		FlatMatrix withID = new FlatMatrix(rows, 2*cols);
+		for (int ii = 0; ii < rows; ii++) {
+			System.arraycopy(data, offset + ii*stride, withID.data, ii*withID.stride, cols);
+			withID.data[ii*withID.stride + cols + ii] = 1; //identity on the right
+		}
+		withID.reduceColumns(cols); //only the left half gets rowreduced
+		return withID.view(0, cols, rows, cols).clone();
+	}
+
+	/**
+	 * Rowreduces the first max columns of this matrix in place (see Elimination).
+	 *
+	 * @param max
+	 * 	Number of columns to reduce.
+	 */
+	void reduceColumns(int max){
+		new Elimination(this).reduce(max);
+	}
+
+	/**
+	 * Copies the values into a Matrix.
+	 *
+	 * @return
+	 * 	A Matrix with the same values.
+	 */
+	public Matrix toMatrix(){
+		Matrix mat = new Matrix(rows, cols);
+		for (int ii = 0; ii < rows; ii++) {
+			System.arraycopy(data, offset + ii*stride, mat.m[ii], 0, cols);
+		}
+		return mat;
+	}
+
+	/**
+	 * Prints out a matrix in the same format as Matrix.print.
+	 */
+	public void print(){
+		for (int ii = 0; ii < rows; ii++) {
+			System.out.print("| ");
+			for (int jj = 0; jj < cols; jj++) {
+				double precision = 10000; //round to 4 decimal places
+				double val = Math.round(get(ii, jj)*precision);
+				val /= precision;
+				System.out.print(val);
+				System.out.print(" | ");
+			}
+			System.out.println();
+		}
+	}
+}
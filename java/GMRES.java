@@ -0,0 +1,102 @@
+package matrixmath;
+
+/**
+ * The GMRES class solves Ax = b for a general square A by finding, at step j, the x with the
+ * smallest residual among all x0 + (combinations of r0, Ar0, ..., A^(j-1) r0). It never breaks
+ * down and its residual never grows, but it keeps one vector per step, so it restarts after
+ * restart steps (GMRES(m)) from the current x to keep memory at (restart+1) vectors.
+ *
+ * The basis is built with modified Gram-Schmidt and the small least-squares problem is kept upper
+ * triangular with Givens rotations, so the residual norm is known at every step without computing
+ * b - Ax. Preconditioning is on the right, so that residual is the true residual.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class GMRES extends IterativeSolver {
+	private int restart = 50; //steps between restarts
+
+	/**
+	 * @param a
+	 * 	The square matrix, as an operator.
+	 */
+	public GMRES(LinearOperator a){
+		super(a);
+	}
+
+	/**
+	 * Sets how many steps run before restarting (more converges in fewer steps but uses more memory).
+	 *
+	 * @param m
+	 * 	The number of steps (default 50).
+	 */
+	public void setRestart(int m){
+		if(m < 1){
+			throw new IllegalArgumentException("restart must be at least 1");
+		}
+		restart = m;
+	}
+
+	@Override
+	protected void iterate(double[] b, double[] x, double target){
+		int n = b.length;
+		int m = restart;
+		double[][] v = new double[m+1][n]; //orthonormal basis
+		double[][] h = new double[m+1][m]; //Hessenberg matrix, made upper triangular by the rotations
+		double[] cs = new double[m], sn = new double[m]; //Givens rotations
+		double[] g = new double[m+1]; //right-hand side of the small least-squares problem
+		double[] z = new double[n], update = new double[n];
+		double[] y = new double[m];
+		int it = 0;
+		if(record(0, residual(b, x, v[0]), target))
+			return;
+		while(true){ //one cycle per restart
+			double beta = norm(v[0]);
+			RowKernels.ACTIVE.scale(1/beta, v[0], 0, n);
+			java.util.Arrays.fill(g, 0);
+			g[0] = beta;
+			int steps = 0;
+			boolean stop = false;
+			for (int jj = 0; jj < m && !stop; jj++) {
+				preconditioner.apply(v[jj], z);
+				a.apply(z, v[jj+1]);
+				for (int ii = 0; ii <= jj; ii++) { //modified Gram-Schmidt
+					h[ii][jj] = dot(v[jj+1], v[ii]);
+					axpy(-h[ii][jj], v[ii], v[jj+1]);
+				}
+				h[jj+1][jj] = norm(v[jj+1]);
+				if(h[jj+1][jj] != 0)
+					RowKernels.ACTIVE.scale(1/h[jj+1][jj], v[jj+1], 0, n);
+				for (int ii = 0; ii < jj; ii++) { //apply the earlier rotations to the new column
+					double tmp = cs[ii]*h[ii][jj] + sn[ii]*h[ii+1][jj];
+					h[ii+1][jj] = -sn[ii]*h[ii][jj] + cs[ii]*h[ii+1][jj];
+					h[ii][jj] = tmp;
+				}
+				double r = Math.hypot(h[jj][jj], h[jj+1][jj]); //new rotation zeroes h[jj+1][jj]
+				cs[jj] = r == 0 ? 1 : h[jj][jj] / r;
+				sn[jj] = r == 0 ? 0 : h[jj+1][jj] / r;
+				h[jj][jj] = r;
+				h[jj+1][jj] = 0;
+				g[jj+1] = -sn[jj]*g[jj];
+				g[jj] = cs[jj]*g[jj];
+				steps = jj+1;
+				it++;
+				stop = record(it, Math.abs(g[jj+1]), target) || r == 0;
+			}
+			for (int ii = steps-1; ii >= 0; ii--) { //back substitution for y, then x += M^-1 (V y)
+				double sum = g[ii];
+				for (int kk = ii+1; kk < steps; kk++)
+					sum -= h[ii][kk]*y[kk];
+				y[ii] = h[ii][ii] == 0 ? 0 : sum / h[ii][ii];
+			}
+			java.util.Arrays.fill(update, 0);
+			for (int ii = 0; ii < steps; ii++)
+				axpy(y[ii], v[ii], update);
+			preconditioner.apply(update, z);
+			axpy(1, z, x);
+			if(stop)
+				return;
+			residual(b, x, v[0]); //restart from the true residual
+		}
+	}
+}
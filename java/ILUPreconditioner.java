@@ -0,0 +1,84 @@
+package matrixmath;
+
+/**
+ * The ILUPreconditioner class is the incomplete LU factorization with no fill-in, ILU(0), of a
+ * SparseMatrix: L and U are computed as in LUDecomposition (without pivoting), except that every
+ * entry outside the nonzero pattern of A is dropped. The factors have exactly the nonzeros of A,
+ * so applying the preconditioner costs about as much as one multiply by A.
+ *
+ * Factoring fails with an ArithmeticException on a zero pivot; matrices from discretized PDEs
+ * (diagonally dominant or M-matrices) do not have one.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class ILUPreconditioner implements Preconditioner {
+	private final int n; //size of the matrix
+	private final int[] rowPtr, colIdx; //pattern of A
+	private final double[] lu; //L (below the diagonal, unit diagonal not stored) and U, in A's pattern
+	private final int[] diag; //position of a_ii in each row
+
+	/**
+	 * Factors a square sparse matrix (the matrix itself is not changed).
+	 *
+	 * @param a
+	 * 	The matrix, which must have every diagonal entry in its pattern.
+	 */
+	public ILUPreconditioner(SparseMatrix a){
+		if(a.rows != a.cols){
+			throw new IllegalArgumentException("ILU needs a square matrix, not " + a.rows + "x" + a.cols);
+		}
+		n = a.rows;
+		rowPtr = a.rowPtr;
+		colIdx = a.colIdx;
+		lu = a.values.clone();
+		diag = new int[n];
+		int[] where = new int[n]; //position of column j in the current row, or -1
+		java.util.Arrays.fill(where, -1);
+		for (int ii = 0; ii < n; ii++) {
+			diag[ii] = -1;
+			for (int pp = rowPtr[ii]; pp < rowPtr[ii+1]; pp++) {
+				where[colIdx[pp]] = pp;
+				if(colIdx[pp] == ii)
+					diag[ii] = pp;
+			}
+			if(diag[ii] < 0){
+				throw new ArithmeticException("row " + ii + " has no diagonal entry");
+			}
+			for (int pp = rowPtr[ii]; pp < diag[ii]; pp++) { //each k < i in the row, in column order
+				int kk = colIdx[pp];
+				double mult = lu[pp] / lu[diag[kk]];
+				lu[pp] = mult;
+				for (int qq = diag[kk]+1; qq < rowPtr[kk+1]; qq++) { //row i -= mult * (U part of row k), inside the pattern only
+					int pos = where[colIdx[qq]];
+					if(pos >= 0)
+						lu[pos] -= mult*lu[qq];
+				}
+			}
+			if(lu[diag[ii]] == 0){
+				throw new ArithmeticException("zero pivot in row " + ii);
+			}
+			for (int pp = rowPtr[ii]; pp < rowPtr[ii+1]; pp++)
+				where[colIdx[pp]] = -1;
+		}
+	}
+
+	/**
+	 * Solves LUz = r: forward substitution with L, then back substitution with U.
+	 */
+	@Override
+	public void apply(double[] r, double[] z){
+		for (int ii = 0; ii < n; ii++) {
+			double sum = r[ii];
+			for (int pp = rowPtr[ii]; pp < diag[ii]; pp++)
+				sum -= lu[pp]*z[colIdx[pp]];
+			z[ii] = sum;
+		}
+		for (int ii = n-1; ii >= 0; ii--) {
+			double sum = z[ii];
+			for (int pp = diag[ii]+1; pp < rowPtr[ii+1]; pp++)
+				sum -= lu[pp]*z[colIdx[pp]];
+			z[ii] = sum / lu[diag[ii]];
+		}
+	}
+}
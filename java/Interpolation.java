@@ -11,6 +11,8 @@ import riemann_sum.SimpsonsRule;
  * 
  * @method fit
  * 	Finds the equation of an interpolated polynomial through a set of points. 
+ * @method fitLeastSquares
+ * 	Finds the polynomial of a given degree that best fits any number of points. 
  * @method Riemann_poly 
  * 	Calculates and interpolates Riemann sum function. 
  * @method VDM_poly 
@@ -33,8 +35,11 @@ public class Interpolation {
 	 * 	Returns fitted polynomial 
 	 */
 	public Polynomial fit(double[] x, double[] y, int degree){
+		long start = MatrixMetrics.start(); 
+		MatrixEvents.Fit event = new MatrixEvents.Fit(); 
+		event.begin(); 
 		Matrix points = new Matrix(degree+1, degree+2); //sets up matrix to rowreduce to get coefficients
-		Matrix use_inv = new Matrix(degree+1, degree+1); //sets up matrix to invert to get coefs (alternate method) 
+		Matrix use_inv = new Matrix(degree+1, degree+1); //sets up matrix to factor to get coefs (alternate method) 
 		Matrix b = new Matrix(degree+1, 1);
 		for (int ii = 0; ii < points.rows; ii++) {
 			for (int jj = 0; jj < degree+1; jj++) {
@@ -48,9 +53,8 @@ public class Interpolation {
 			b.setEntry(ii, 0, y_val);
 		}	
 		//Matrix red = points.rowreduce(); //rowreduce the points 
-		Matrix inv = use_inv.invert(); //get the inverse 
-		Matrix soln = inv.times(b); //multiply to get solution
-		//inv.print(); 
+		LUDecomposition lu = new LUDecomposition(use_inv); 
+		Matrix soln = lu.solve(b); //factor once and solve (no explicit inverse) 
 		
 		double[] new_coefs = new double[soln.rows]; 
 		for (int ii = 0; ii < soln.rows; ii ++) { //find solution set
@@ -63,9 +67,51 @@ public class Interpolation {
 		}
 		
 		Polynomial fitted = new Polynomial(new_coefs); //create the actual polynomial
+		event.end(); 
+		if(event.shouldCommit()){
+			event.degree = degree; 
+			event.rowSwaps = lu.getRowSwaps(); 
+			event.commit(); 
+		}
+		long n = degree+1; 
+		MatrixMetrics.record(MatrixMetrics.Operation.FIT, start, 2*n*n*n/3 + 2*n*n); //LU plus the powers and substitution 
 		return fitted; 
 	}
 
+	/**
+	 * Fits a polynomial to any number of points by least squares (the polynomial that makes the sum 
+	 * of squared errors smallest). Unlike fit, every point is used, and there can be many more points 
+	 * than the degree. The Vandermonde system is solved with a Householder QR decomposition, so 
+	 * neither A^T A nor an inverse is formed. 
+	 * 
+	 * @param x
+	 * 	X coordinates of the points
+	 * @param y
+	 * 	Y coordinates of the points
+	 * @param degree
+	 * 	Degree of polynomial to fit (needs at least degree+1 points)
+	 * @return
+	 * 	The coefficients and residual of the fitted polynomial 
+	 */
+	public LeastSquaresFit fitLeastSquares(double[] x, double[] y, int degree){
+		if(x.length != y.length){
+			throw new IllegalArgumentException("x and y must have the same number of points");
+		}
+		if(x.length < degree+1){
+			throw new IllegalArgumentException("need at least " + (degree+1) + " points for degree " + degree);
+		}
+		FlatMatrix vdmT = new FlatMatrix(degree+1, x.length); //Vandermonde matrix, built transposed for QRDecomposition
+		for (int ii = 0; ii < x.length; ii++) {
+			double power = 1; 
+			for (int jj = 0; jj <= degree; jj++) { //row jj holds x^jj for every point
+				vdmT.data[jj*x.length + ii] = power; 
+				power *= x[ii]; 
+			}
+		}
+		QRDecomposition qr = QRDecomposition.fromTransposed(vdmT); 
+		return new LeastSquaresFit(qr.solve(y), qr.residualNorm(y), x.length); 
+	}
+
 	/**
 	 * Finds the accumulation function polynomial for a given poly.
 	 * 
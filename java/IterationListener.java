@@ -0,0 +1,20 @@
+package matrixmath;
+
+/**
+ * The IterationListener interface is called by an IterativeSolver after every iteration, for
+ * logging or plotting convergence.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public interface IterationListener {
+	/**
+	 * Called after each iteration.
+	 *
+	 * @param iteration
+	 * 	The iteration just finished (starting at 1).
+	 * @param residualNorm
+	 * 	|b - Ax| for the current x.
+	 */
+	void iteration(int iteration, double residualNorm);
+}
@@ -0,0 +1,188 @@
+package matrixmath;
+
+/**
+ * The IterativeSolver class is the base of the Krylov solvers (ConjugateGradient, BiCGSTAB and
+ * GMRES). They solve Ax = b using only products Ax, so A can be any LinearOperator, and each
+ * iteration costs one or two products instead of the O(n^3) of elimination. For a large sparse
+ * matrix that is the difference between seconds and hours.
+ *
+ * A solve stops when |b - Ax| <= tolerance * |b| (2-norm) or after maxIterations. Not converging
+ * is not an error: solve returns the best x found and hasConverged returns false. The listener,
+ * if set, is called after every iteration with the residual norm.
+ *
+ * @method solve
+ * 	Solves Ax = b.
+ * @method setPreconditioner
+ * 	Sets the preconditioner.
+ * @method setTolerance
+ * 	Sets the relative residual to stop at.
+ * @method setMaxIterations
+ * 	Sets the most iterations to run.
+ * @method setListener
+ * 	Sets the per-iteration callback.
+ * @method hasConverged
+ * 	Whether the last solve reached the tolerance.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public abstract class IterativeSolver {
+	protected final LinearOperator a; //the matrix
+	protected Preconditioner preconditioner = Preconditioner.NONE;
+	protected double tolerance = 1e-10; //relative residual to stop at
+	protected int maxIterations = 1000;
+	protected IterationListener listener;
+
+	private int iterations; //results of the last solve
+	private double residualNorm;
+	private boolean converged;
+
+	/**
+	 * @param a
+	 * 	The matrix, as an operator.
+	 */
+	protected IterativeSolver(LinearOperator a){
+		this.a = a;
+	}
+
+	public void setPreconditioner(Preconditioner p){
+		preconditioner = (p == null) ? Preconditioner.NONE : p;
+	}
+
+	/**
+	 * Sets the relative residual |b - Ax| / |b| to stop at.
+	 *
+	 * @param tol
+	 * 	The tolerance (default 1e-10).
+	 */
+	public void setTolerance(double tol){
+		if(!(tol > 0)){
+			throw new IllegalArgumentException("tolerance must be positive");
+		}
+		tolerance = tol;
+	}
+
+	/**
+	 * Sets the most iterations to run.
+	 *
+	 * @param max
+	 * 	The limit (default 1000).
+	 */
+	public void setMaxIterations(int max){
+		if(max < 0){
+			throw new IllegalArgumentException("iteration limit cannot be negative");
+		}
+		maxIterations = max;
+	}
+
+	public void setListener(IterationListener l){
+		listener = l;
+	}
+
+	/**
+	 * Solves Ax = b starting from x = 0.
+	 *
+	 * @param b
+	 * 	The right-hand side.
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		return solve(b, new double[b.length]);
+	}
+
+	/**
+	 * Solves Ax = b starting from a guess, which is improved in place.
+	 *
+	 * @param b
+	 * 	The right-hand side.
+	 * @param x
+	 * 	The starting guess (the answer from a nearby problem often saves many iterations).
+	 * @return
+	 * 	x
+	 */
+	public double[] solve(double[] b, double[] x){
+		if(x.length != b.length){
+			throw new IllegalArgumentException("guess has length " + x.length + ", expected " + b.length);
+		}
+		iterations = 0;
+		converged = false;
+		double normB = norm(b);
+		double target = tolerance * (normB == 0 ? 1 : normB);
+		iterate(b, x, target);
+		return x;
+	}
+
+	/**
+	 * Runs the method, improving x in place until the residual is at most target. Implementations
+	 * call record after every iteration and stop when it returns true.
+	 */
+	protected abstract void iterate(double[] b, double[] x, double target);
+
+	/**
+	 * Records the residual after an iteration and tells the listener.
+	 *
+	 * @return
+	 * 	True if the solve should stop (converged, or out of iterations).
+	 */
+	protected boolean record(int iteration, double residual, double target){
+		iterations = iteration;
+		residualNorm = residual;
+		converged = residual <= target;
+		if(listener != null && iteration > 0)
+			listener.iteration(iteration, residual);
+		return converged || iteration >= maxIterations || !Double.isFinite(residual);
+	}
+
+	/**
+	 * r = b - Ax
+	 *
+	 * @return
+	 * 	|r|
+	 */
+	protected double residual(double[] b, double[] x, double[] r){
+		a.apply(x, r);
+		for (int ii = 0; ii < r.length; ii++)
+			r[ii] = b[ii] - r[ii];
+		return norm(r);
+	}
+
+	protected static double dot(double[] x, double[] y){
+		return RowKernels.ACTIVE.dot(x, 0, y, 0, x.length);
+	}
+
+	protected static double norm(double[] x){
+		return Math.sqrt(dot(x, x));
+	}
+
+	/**
+	 * y += alpha*x
+	 */
+	protected static void axpy(double alpha, double[] x, double[] y){
+		RowKernels.ACTIVE.axpy(alpha, x, 0, y, 0, x.length);
+	}
+
+	/**
+	 * @return
+	 * 	The number of iterations the last solve ran.
+	 */
+	public int getIterations(){
+		return iterations;
+	}
+
+	/**
+	 * @return
+	 * 	|b - Ax| at the end of the last solve.
+	 */
+	public double getResidualNorm(){
+		return residualNorm;
+	}
+
+	/**
+	 * @return
+	 * 	True if the last solve reached the tolerance.
+	 */
+	public boolean hasConverged(){
+		return converged;
+	}
+}
@@ -0,0 +1,88 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.BiCGSTAB;
+import matrixmath.ConjugateGradient;
+import matrixmath.GMRES;
+import matrixmath.ILUPreconditioner;
+import matrixmath.IterativeSolver;
+import matrixmath.JacobiPreconditioner;
+import matrixmath.LinearOperator;
+import matrixmath.Matrix;
+import matrixmath.SparseMatrix;
+
+/**
+ * This class tests the Krylov solvers (conjugate gradient, BiCGSTAB and GMRES), with no
+ * preconditioner, Jacobi and ILU(0). Each solve is checked by computing |b - Ax| / |b| itself
+ * instead of trusting the residual the solver reports. The matrices are a 2D Poisson problem
+ * (symmetric positive definite) and a convection-diffusion problem (not symmetric).
+ *
+ * @author Andrew M.
+ */
+public class IterativeSolverTest {
+
+	public static void main(String[] args) {
+		int grid = 20; //unknowns on each side of the grid
+		SparseMatrix poisson = gridMatrix(grid, 0);
+		SparseMatrix convection = gridMatrix(grid, 0.4);
+		double[] b = randomVector(grid*grid, new Random(7));
+
+		solve("CG", new ConjugateGradient(LinearOperator.of(poisson)), poisson, b, null);
+		solve("CG + Jacobi", new ConjugateGradient(LinearOperator.of(poisson)), poisson, b, new JacobiPreconditioner(poisson));
+		solve("CG + ILU", new ConjugateGradient(LinearOperator.of(poisson)), poisson, b, new ILUPreconditioner(poisson));
+
+		solve("BiCGSTAB", new BiCGSTAB(LinearOperator.of(convection)), convection, b, null);
+		solve("BiCGSTAB + Jacobi", new BiCGSTAB(LinearOperator.of(convection)), convection, b, new JacobiPreconditioner(convection));
+		solve("BiCGSTAB + ILU", new BiCGSTAB(LinearOperator.of(convection)), convection, b, new ILUPreconditioner(convection));
+
+		solve("GMRES", new GMRES(LinearOperator.of(convection)), convection, b, null);
+		solve("GMRES + ILU", new GMRES(LinearOperator.of(convection)), convection, b, new ILUPreconditioner(convection));
+		GMRES restarted = new GMRES(LinearOperator.of(convection));
+		restarted.setRestart(5);
+		restarted.setMaxIterations(5000);
+		solve("GMRES(5)", restarted, convection, b, null);
+
+		Matrix dense = poisson.toMatrix(); //the operator of a dense Matrix gives the same answer
+		solve("CG on a dense Matrix", new ConjugateGradient(LinearOperator.of(dense)), poisson, b, new JacobiPreconditioner(dense));
+
+		finish();
+	}
+
+	/**
+	 * Solves and checks that the solver converged and that the true relative residual is small.
+	 */
+	private static void solve(String name, IterativeSolver solver, SparseMatrix a, double[] b, matrixmath.Preconditioner p){
+		solver.setPreconditioner(p);
+		solver.setTolerance(1e-10);
+		double[] x = solver.solve(b);
+		double relative = norm(subtract(b, a.times(x))) / norm(b);
+		check(name + ": " + solver.getIterations() + " iterations, |b - Ax|/|b| = " + relative, solver.hasConverged() && relative < 1e-8);
+	}
+
+	/**
+	 * Five-point Laplacian on a grid x grid mesh; convection adds a one-sided first derivative,
+	 * which makes the matrix non-symmetric.
+	 */
+	private static SparseMatrix gridMatrix(int grid, double convection){
+		int n = grid*grid;
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(n, n);
+		for (int ii = 0; ii < grid; ii++) {
+			for (int jj = 0; jj < grid; jj++) {
+				int row = ii*grid + jj;
+				builder.add(row, row, 4 + convection);
+				if(ii > 0)
+					builder.add(row, row - grid, -1 - convection);
+				if(ii < grid-1)
+					builder.add(row, row + grid, -1);
+				if(jj > 0)
+					builder.add(row, row - 1, -1);
+				if(jj < grid-1)
+					builder.add(row, row + 1, -1);
+			}
+		}
+		return builder.build();
+	}
+}
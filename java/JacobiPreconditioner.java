@@ -0,0 +1,42 @@
+package matrixmath;
+
+/**
+ * The JacobiPreconditioner class uses only the diagonal of A: z_i = r_i / a_ii. It costs one
+ * multiply per entry and helps most when the rows of A have very different scales.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class JacobiPreconditioner implements Preconditioner {
+	private final double[] inverseDiag; //1 / a_ii (1 where a_ii is 0)
+
+	/**
+	 * @param a
+	 * 	The square matrix.
+	 */
+	public JacobiPreconditioner(Matrix a){
+		inverseDiag = new double[a.rows];
+		for (int ii = 0; ii < a.rows; ii++)
+			inverseDiag[ii] = invert(a.m[ii][ii]);
+	}
+
+	/**
+	 * @param a
+	 * 	The square sparse matrix.
+	 */
+	public JacobiPreconditioner(SparseMatrix a){
+		inverseDiag = new double[a.rows];
+		for (int ii = 0; ii < a.rows; ii++)
+			inverseDiag[ii] = invert(a.get(ii, ii));
+	}
+
+	private static double invert(double d){
+		return d == 0 ? 1 : 1/d;
+	}
+
+	@Override
+	public void apply(double[] r, double[] z){
+		for (int ii = 0; ii < r.length; ii++)
+			z[ii] = r[ii]*inverseDiag[ii];
+	}
+}
@@ -0,0 +1,449 @@
+package matrixmath;
+
+/**
+ * The LUDecomposition class factors a square matrix once as PA = LU (partial pivoting) so that
+ * the same matrix can then be used to solve any number of systems, find its determinant, or find
+ * its inverse without rowreducing it again.
+ *
+ * L (unit lower triangular) and U (upper triangular) are stored together in one FlatMatrix: U on
+ * and above the diagonal, the multipliers of L below it. P is stored as the list of original row
+ * numbers in their pivoted order.
+ *
+ * For large matrices, blocked factors nb columns (a panel) at a time and then updates everything
+ * to the right and below the panel with one matrix multiply, which runs in parallel through
+ * ParallelMatrixOps. Almost all the work ends up in that multiply, so it uses every core and the
+ * cache blocking of MatrixMultiply; the result is the same factorization (same pivots) as the
+ * one-column-at-a-time algorithm. The constructors switch to it by themselves for matrices of
+ * 1024 rows or more (512 when the multiply pool has more than one thread), so invert,
+ * MatrixCache and the solvers built on them get it too.
+ *
+ * @method solve
+ * 	Solves Ax = b for one or many right-hand sides.
+ * @method determinant
+ * 	Returns the determinant of A.
+ * @method inverse
+ * 	Returns the inverse of A.
+ * @method isSingular
+ * 	Whether a zero pivot was found while factoring.
+ * @method blocked
+ * 	Factors a matrix with the blocked, multi-core algorithm (optionally with a given panel width).
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class LUDecomposition {
+	private FlatMatrix lu; //L and U packed together
+	private int[] piv; //piv[i] is the original row that ended up in row i
+	private int n; //size of the matrix
+	private int pivSign = 1; //+1 or -1 depending on the number of row switches
+	private int rowSwaps = 0; //row switches done by partial pivoting
+	private boolean singular = false;
+	private static final int BLOCK_SIZE = 128; //default panel width of the blocked algorithm
+	private static final int BLOCKED_MIN = 1024; //size from which the constructors factor blocked (one thread)
+	private static final int BLOCKED_MIN_PARALLEL = 512; //the same with more than one thread
+
+	/**
+	 * Factors a Matrix. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 */
+	public LUDecomposition(Matrix a){
+		factorBySize(new FlatMatrix(a)); //the copy becomes the LU factors
+	}
+
+	/**
+	 * Factors a FlatMatrix. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 */
+	public LUDecomposition(FlatMatrix a){
+		factorBySize(a.clone());
+	}
+
+	private LUDecomposition(){
+	}
+
+	/**
+	 * Factors a Matrix with the blocked algorithm and the default panel width. The matrix itself is
+	 * not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 * @return
+	 * 	The decomposition.
+	 */
+	public static LUDecomposition blocked(Matrix a){
+		return blocked(a, BLOCK_SIZE);
+	}
+
+	/**
+	 * Factors a Matrix with the blocked algorithm. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 * @param nb
+	 * 	The number of columns factored together before the trailing update (larger panels put
+	 * 	more of the work in the parallel multiply, smaller ones keep the panel in cache).
+	 * @return
+	 * 	The decomposition.
+	 */
+	public static LUDecomposition blocked(Matrix a, int nb){
+		checkBlockSize(nb);
+		LUDecomposition lu = new LUDecomposition();
+		lu.factorBlocked(new FlatMatrix(a), nb);
+		return lu;
+	}
+
+	/**
+	 * Factors a FlatMatrix with the blocked algorithm and the default panel width. The matrix
+	 * itself is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 * @return
+	 * 	The decomposition.
+	 */
+	public static LUDecomposition blocked(FlatMatrix a){
+		return blocked(a, BLOCK_SIZE);
+	}
+
+	/**
+	 * Factors a FlatMatrix with the blocked algorithm. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 * @param nb
+	 * 	The panel width.
+	 * @return
+	 * 	The decomposition.
+	 */
+	public static LUDecomposition blocked(FlatMatrix a, int nb){
+		checkBlockSize(nb);
+		LUDecomposition lu = new LUDecomposition();
+		lu.factorBlocked(a.clone(), nb);
+		return lu;
+	}
+
+	private static void checkBlockSize(int nb){
+		if(nb < 1){
+			throw new IllegalArgumentException("block size must be positive");
+		}
+	}
+
+	/**
+	 * Factors with the blocked algorithm when the matrix is large enough for it to be faster (one
+	 * column at a time it is faster up to about 1000 rows on one core).
+	 */
+	private void factorBySize(FlatMatrix work){
+		int min = ParallelMatrixOps.getPool().getParallelism() > 1 ? BLOCKED_MIN_PARALLEL : BLOCKED_MIN;
+		if(work.rows >= min)
+			factorBlocked(work, BLOCK_SIZE);
+		else
+			factor(work);
+	}
+
+	/**
+	 * Right-looking elimination: for each column pick the largest pivot, store the multipliers
+	 * below it and update the rows underneath (each update walks along a row).
+	 *
+	 * @param work
+	 * 	A copy of the matrix that becomes the packed LU factors.
+	 */
+	private void factor(FlatMatrix work){
+		if(work.rows != work.cols){
+			throw new IllegalArgumentException("LU decomposition needs a square matrix, not " + work.rows + "x" + work.cols);
+		}
+		lu = work;
+		n = work.rows;
+		piv = new int[n];
+		for (int ii = 0; ii < n; ii++)
+			piv[ii] = ii;
+
+		double[] a = lu.data;
+		int stride = lu.stride;
+		int base = lu.offset;
+		double tolerance = n * Math.ulp(maxAbs()); //anything this small is a zero pivot
+
+		for (int kk = 0; kk < n; kk++) {
+			int p = kk;
+			double best = Math.abs(a[base + kk*stride + kk]);
+			for (int ii = kk+1; ii < n; ii++) { //partial pivoting
+				double val = Math.abs(a[base + ii*stride + kk]);
+				if(val > best){
+					best = val;
+					p = ii;
+				}
+			}
+			if(p != kk){
+				lu.switchRows(p, kk);
+				int tmp = piv[p];
+				piv[p] = piv[kk];
+				piv[kk] = tmp;
+				pivSign = -pivSign;
+				rowSwaps++;
+			}
+			if(best <= tolerance){
+				singular = true; //nothing to eliminate with in this column
+				continue;
+			}
+
+			int pivotRow = base + kk*stride;
+			double pivot = a[pivotRow + kk];
+			for (int ii = kk+1; ii < n; ii++) {
+				int row = base + ii*stride;
+				double mult = a[row+kk] / pivot;
+				a[row+kk] = mult; //store L below the diagonal
+				if(mult == 0)
+					continue;
+				RowKernels.ACTIVE.axpy(-mult, a, pivotRow + kk+1, a, row + kk+1, n - kk-1);
+			}
+		}
+	}
+
+	/**
+	 * Blocked right-looking elimination. For each panel of nb columns:
+	 * 	1. factor the panel column by column (whole rows are switched, so the pivots are the same as
+	 * 	   in factor),
+	 * 	2. U12 = L11^-1 A12 for the rows of the panel (forward substitution along rows),
+	 * 	3. A22 -= L21 U12 with the parallel multiply.
+	 *
+	 * @param work
+	 * 	A copy of the matrix that becomes the packed LU factors.
+	 * @param nb
+	 * 	The panel width.
+	 */
+	private void factorBlocked(FlatMatrix work, int nb){
+		if(work.rows != work.cols){
+			throw new IllegalArgumentException("LU decomposition needs a square matrix, not " + work.rows + "x" + work.cols);
+		}
+		if(work.rows <= 2*nb){ //too small for blocking to pay off
+			factor(work);
+			return;
+		}
+		lu = work;
+		n = work.rows;
+		piv = new int[n];
+		for (int ii = 0; ii < n; ii++)
+			piv[ii] = ii;
+
+		double[] a = lu.data;
+		int stride = lu.stride;
+		int base = lu.offset;
+		double tolerance = n * Math.ulp(maxAbs());
+		RowKernels kernels = RowKernels.ACTIVE;
+		FlatMatrix negL = new FlatMatrix(n, nb); //-L21, the left operand of the trailing update
+
+		for (int k0 = 0; k0 < n; k0 += nb) {
+			int end = Math.min(n, k0 + nb);
+			for (int kk = k0; kk < end; kk++) { //1. the panel
+				int p = kk;
+				double best = Math.abs(a[base + kk*stride + kk]);
+				for (int ii = kk+1; ii < n; ii++) {
+					double val = Math.abs(a[base + ii*stride + kk]);
+					if(val > best){
+						best = val;
+						p = ii;
+					}
+				}
+				if(p != kk){
+					lu.switchRows(p, kk);
+					int tmp = piv[p];
+					piv[p] = piv[kk];
+					piv[kk] = tmp;
+					pivSign = -pivSign;
+					rowSwaps++;
+				}
+				if(best <= tolerance){
+					singular = true;
+					continue;
+				}
+				int pivotRow = base + kk*stride;
+				double pivot = a[pivotRow + kk];
+				for (int ii = kk+1; ii < n; ii++) {
+					int row = base + ii*stride;
+					double mult = a[row+kk] / pivot;
+					a[row+kk] = mult;
+					if(mult != 0)
+						kernels.axpy(-mult, a, pivotRow + kk+1, a, row + kk+1, end - kk-1);
+				}
+			}
+			if(end == n)
+				break;
+			int right = n - end;
+			for (int ii = k0+1; ii < end; ii++) { //2. U12 = L11^-1 A12
+				int row = base + ii*stride;
+				for (int jj = k0; jj < ii; jj++) {
+					double l = a[row+jj];
+					if(l != 0)
+						kernels.axpy(-l, a, base + jj*stride + end, a, row + end, right);
+				}
+			}
+			int kb = end - k0;
+			FlatMatrix l21 = negL.view(0, 0, right, kb);
+			for (int ii = 0; ii < right; ii++) {
+				System.arraycopy(a, base + (end+ii)*stride + k0, l21.data, ii*l21.stride, kb);
+				kernels.scale(-1, l21.data, ii*l21.stride, kb);
+			}
+			ParallelMatrixOps.multiplyAdd(l21, lu.view(k0, end, kb, right), lu.view(end, end, right, right)); //3. A22 -= L21 U12
+		}
+	}
+
+	private double maxAbs(){
+		double largest = 0;
+		for (int ii = 0; ii < n; ii++) {
+			for (int jj = 0; jj < n; jj++) {
+				largest = Math.max(largest, Math.abs(lu.get(ii, jj)));
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @return
+	 * 	True if the matrix has no inverse (a pivot was zero).
+	 */
+	public boolean isSingular(){
+		return singular;
+	}
+
+	/**
+	 * The determinant is the product of the pivots (times -1 for each row switch).
+	 *
+	 * @return
+	 * 	The determinant of the factored matrix.
+	 */
+	public double determinant(){
+		double det = pivSign;
+		for (int ii = 0; ii < n; ii++) {
+			det *= lu.get(ii, ii);
+		}
+		return det;
+	}
+
+	/**
+	 * Solves Ax = b for a single right-hand side.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		if(b.length != n){
+			throw new IllegalArgumentException("right-hand side has length " + b.length + ", expected " + n);
+		}
+		FlatMatrix x = new FlatMatrix(n, 1);
+		for (int ii = 0; ii < n; ii++) {
+			x.data[ii] = b[piv[ii]];
+		}
+		substitute(x);
+		return x.data;
+	}
+
+	/**
+	 * Solves AX = B where every column of B is a right-hand side.
+	 *
+	 * @param b
+	 * 	The right-hand sides (n rows, any number of columns).
+	 * @return
+	 * 	New matrix X with one solution per column.
+	 */
+	public Matrix solve(Matrix b){
+		if(b.rows != n){
+			throw new IllegalArgumentException("right-hand side has " + b.rows + " rows, expected " + n);
+		}
+		FlatMatrix x = new FlatMatrix(n, b.cols);
+		for (int ii = 0; ii < n; ii++) {
+			x.setRow(ii, b.m[piv[ii]], 0); //apply P while copying
+		}
+		substitute(x);
+		return x.toMatrix();
+	}
+
+	/**
+	 * Solves AX = B where every column of B is a right-hand side.
+	 *
+	 * @param b
+	 * 	The right-hand sides (n rows, any number of columns).
+	 * @return
+	 * 	New matrix X with one solution per column.
+	 */
+	public FlatMatrix solve(FlatMatrix b){
+		if(b.rows != n){
+			throw new IllegalArgumentException("right-hand side has " + b.rows + " rows, expected " + n);
+		}
+		FlatMatrix x = new FlatMatrix(n, b.cols);
+		for (int ii = 0; ii < n; ii++) {
+			System.arraycopy(b.data, b.offset + piv[ii]*b.stride, x.data, ii*x.stride, b.cols);
+		}
+		substitute(x);
+		return x;
+	}
+
+	/**
+	 * Finds the inverse by solving AX = I.
+	 *
+	 * @return
+	 * 	The inverse of the factored matrix.
+	 */
+	public Matrix inverse(){
+		FlatMatrix x = new FlatMatrix(n, n);
+		for (int ii = 0; ii < n; ii++) {
+			x.set(ii, piv[ii], 1); //rows of the identity, already permuted
+		}
+		substitute(x);
+		return x.toMatrix();
+	}
+
+	/**
+	 * Forward substitution with L and then back substitution with U on rows that are already
+	 * permuted. Works on whole rows of x so that many right-hand sides are solved together.
+	 */
+	private void substitute(FlatMatrix x){
+		if(singular){
+			throw new ArithmeticException("matrix is singular");
+		}
+		double[] a = lu.data;
+		double[] b = x.data;
+		int k = x.cols;
+		for (int ii = 1; ii < n; ii++) { //solve Ly = Pb
+			int row = lu.offset + ii*lu.stride;
+			int xi = x.offset + ii*x.stride;
+			for (int jj = 0; jj < ii; jj++) {
+				double l = a[row+jj];
+				if(l == 0)
+					continue;
+				RowKernels.ACTIVE.axpy(-l, b, x.offset + jj*x.stride, b, xi, k);
+			}
+		}
+		for (int ii = n-1; ii >= 0; ii--) { //solve Ux = y
+			int row = lu.offset + ii*lu.stride;
+			int xi = x.offset + ii*x.stride;
+			for (int jj = ii+1; jj < n; jj++) {
+				double u = a[row+jj];
+				if(u == 0)
+					continue;
+				RowKernels.ACTIVE.axpy(-u, b, x.offset + jj*x.stride, b, xi, k);
+			}
+			RowKernels.ACTIVE.scale(1/a[row+ii], b, xi, k);
+		}
+	}
+
+	/**
+	 * @return
+	 * 	The number of row switches partial pivoting made.
+	 */
+	public int getRowSwaps(){
+		return rowSwaps;
+	}
+
+	/**
+	 * @return
+	 * 	The size of the factored matrix.
+	 */
+	public int getSize(){
+		return n;
+	}
+}
@@ -0,0 +1,57 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.LUDecomposition;
+import matrixmath.Matrix;
+
+/**
+ * This class tests LUDecomposition: solves with one and several right-hand sides checked by
+ * |b - Ax| / |b| from the original matrix, the inverse checked against the identity, the
+ * determinant against a known value, and a singular matrix that must be reported as such. The
+ * blocked factorization (default and narrow panels) is checked the same way and against the
+ * unblocked one.
+ *
+ * @author Andrew M.
+ */
+public class LUDecompositionTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(11);
+		int n = 60;
+		Matrix a = randomMatrix(n, n, rand);
+		double[] b = randomVector(n, rand);
+		Matrix bs = randomMatrix(n, 3, rand);
+
+		LUDecomposition lu = new LUDecomposition(a);
+		check("LU solve", relative(a, lu.solve(b), b) < 1e-10);
+		check("LU solve, 3 right-hand sides", relative(a, lu.solve(bs), bs) < 1e-10);
+		check("LU inverse", identityError(a.times(lu.inverse())) < 1e-10);
+
+		Matrix big = randomMatrix(300, 300, rand); //large enough for more than one panel
+		double[] bigB = randomVector(300, rand);
+		LUDecomposition unblocked = new LUDecomposition(big);
+		LUDecomposition blocked = LUDecomposition.blocked(big);
+		double[] bx = blocked.solve(bigB);
+		check("blocked LU solve", relative(big, bx, bigB) < 1e-10);
+		check("blocked LU solve, 16 column panels", relative(big, LUDecomposition.blocked(big, 16).solve(bigB), bigB) < 1e-10);
+		check("blocked LU agrees with unblocked LU", norm(subtract(bx, unblocked.solve(bigB))) < 1e-10*norm(bx)
+				&& Math.abs(blocked.determinant() / unblocked.determinant() - 1) < 1e-10);
+
+		Matrix small = new Matrix(3, 3); //det = 2*(3*4 - 1*0) - 1*(1*4 - 1*2) + 0 = 22
+		double[][] values = {{2, 1, 0}, {1, 3, 1}, {2, 0, 4}};
+		for (int ii = 0; ii < 3; ii++)
+			for (int jj = 0; jj < 3; jj++)
+				small.setEntry(ii, jj, values[ii][jj]);
+		check("LU determinant", Math.abs(new LUDecomposition(small).determinant() - 22) < 1e-12);
+
+		Matrix singular = a.clone();
+		for (int jj = 0; jj < n; jj++)
+			singular.setEntry(n-1, jj, singular.m[0][jj] + singular.m[1][jj]); //last row = row 0 + row 1
+		check("LU finds a singular matrix", new LUDecomposition(singular).isSingular());
+
+		finish();
+	}
+}
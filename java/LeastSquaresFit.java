@@ -0,0 +1,61 @@
+package matrixmath;
+import polyfun.Polynomial;
+
+/**
+ * The LeastSquaresFit class holds the result of Interpolation.fitLeastSquares: the coefficients of
+ * the polynomial that best fits a set of points (smallest sum of squared errors) and how far the
+ * points are from it.
+ *
+ * @method getPolynomial
+ * 	Returns the fitted polynomial.
+ * @method getCoefficients
+ * 	Returns the coefficients (constant term first).
+ * @method getResidualNorm
+ * 	Returns the square root of the sum of squared errors.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class LeastSquaresFit {
+	private final double[] coefs; //coefs[i] is the coefficient of x^i
+	private final double residualNorm; //|Ax - y|
+	private final int points; //number of points fitted
+
+	LeastSquaresFit(double[] coefs, double residualNorm, int points){
+		this.coefs = coefs;
+		this.residualNorm = residualNorm;
+		this.points = points;
+	}
+
+	/**
+	 * @return
+	 * 	The fitted polynomial.
+	 */
+	public Polynomial getPolynomial(){
+		return new Polynomial(coefs.clone());
+	}
+
+	/**
+	 * @return
+	 * 	The coefficients, constant term first (same order as the Polynomial constructor).
+	 */
+	public double[] getCoefficients(){
+		return coefs.clone();
+	}
+
+	/**
+	 * @return
+	 * 	The square root of the sum of squared errors at the fitted points.
+	 */
+	public double getResidualNorm(){
+		return residualNorm;
+	}
+
+	/**
+	 * @return
+	 * 	The root-mean-square error at the fitted points.
+	 */
+	public double getRmsError(){
+		return residualNorm / Math.sqrt(points);
+	}
+}
@@ -0,0 +1,64 @@
+package matrixmath;
+
+/**
+ * The LinearOperator interface is anything that can multiply a vector: y = Ax. The iterative
+ * solvers only ever use A this way, so A does not have to be stored as a matrix at all; a dense
+ * Matrix, a SparseMatrix or a lambda that computes the product directly all work.
+ *
+ * 	LinearOperator laplacian = (x, y) -> { ... };
+ *
+ * @method apply
+ * 	Computes y = Ax.
+ * @method of
+ * 	Wraps a Matrix, FlatMatrix or SparseMatrix.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public interface LinearOperator {
+	/**
+	 * Computes y = Ax.
+	 *
+	 * @param x
+	 * 	The vector to multiply.
+	 * @param y
+	 * 	Where to put the product (never the same array as x).
+	 */
+	void apply(double[] x, double[] y);
+
+	/**
+	 * @param a
+	 * 	A square matrix.
+	 * @return
+	 * 	The operator x -> Ax.
+	 */
+	static LinearOperator of(Matrix a){
+		return (x, y) -> {
+			for (int ii = 0; ii < a.rows; ii++)
+				y[ii] = RowKernels.ACTIVE.dot(a.m[ii], 0, x, 0, a.cols);
+		};
+	}
+
+	/**
+	 * @param a
+	 * 	A square matrix.
+	 * @return
+	 * 	The operator x -> Ax.
+	 */
+	static LinearOperator of(FlatMatrix a){
+		return (x, y) -> {
+			for (int ii = 0; ii < a.rows; ii++)
+				y[ii] = RowKernels.ACTIVE.dot(a.data, a.offset + ii*a.stride, x, 0, a.cols);
+		};
+	}
+
+	/**
+	 * @param a
+	 * 	A square sparse matrix.
+	 * @return
+	 * 	The operator x -> Ax.
+	 */
+	static LinearOperator of(SparseMatrix a){
+		return (x, y) -> a.times(x, y);
+	}
+}
@@ -1,5 +1,6 @@
 package matrixmath;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -9,16 +10,29 @@ import java.util.Random;
  * The matrix is made up of a 2D array of doubles, and most matrix operations return a 
  * new matrix with modified rows or columns.  
  * 
+ * The 2D array stays because m is public; operations that need contiguous storage work on a 
+ * FlatMatrix copy (see FlatMatrix), which is also the class to use for large matrices. 
+ * 
  * @method fillMatrix 
  * 	Fills the values of one matrix with those of an input matrix. 
+ * @method copyInto, plusInto, timesInto 
+ * 	Write the result into a matrix given by the caller instead of a new one (see MatrixArena). 
  * @method times 
  * 	Multiplies two matrices. 
+ * @method transpose, transposeInPlace
+ * 	Returns the transpose, or transposes a square matrix in place (see Transpose). 
+ * @method timesTransposed, transposeTimes
+ * 	this*that^T and this^T*that without making the transpose. 
+ * @method lazy
+ * 	Starts a lazy matrix expression (see MatrixExpression).
+ * @method timesParallel, plusParallel 
+ * 	Multiplies or adds two matrices using all cores (see ParallelMatrixOps). 
  * @method rowreduce
  * 	Returns a rowreduced matrix. 
  * @method invert
  * 	Returns the inverse of a matrix (square matrix). 
  * @method linearCombRows
- * 	
+ * 	Adds a multiple of one row to another row. 
  * @method clone
  *  Returns a cloned matrix (copy function). 
  * @method zerosDown
@@ -27,10 +41,16 @@ import java.util.Random;
  *  Finds the pivot in a particular column - the first item in the column that is not a 0. 
  * @method setEntry
  *  Set a particular entry of a matrix. 
+ * @method getVersion, markModified
+ *  Modification count used by MatrixCache to tell whether cached results are still valid. 
  * @method switchRows
  *  Switch two rows in a matrix. 
  * @method scalarTimesRow
  *  Multiplies a row by a scalar. 
+ * @method switchRowsInPlace, scalarTimesRowInPlace, linearCombRowsInPlace
+ *  Same row operations, but they change this matrix instead of returning a new one. 
+ * @method switchRowsInto, scalarTimesRowInto, linearCombRowsInto, zerosDownInto
+ *  Same row operations, but the result goes into a matrix given by the caller. 
  * @method plus 
  *  Adds two matrices. 
  * @method print 
@@ -45,12 +65,14 @@ public class Matrix  {
 	/**
 	 * This double array contains the values in the matrix. When modifying a matrix, it is 
 	 * sometimes useful to set this array to a double array created outside of the matrix. 
+	 * Code that writes single values into this array should call markModified afterwards. 
 	 */
 	public double[][] m; //the array that holds the matrix values
 	int rows; //number of rows 
 	int cols; //number of columns
 	boolean hasIdentity = false; 
 	double count = 0; 
+	private long version = 0; //bumped by every change made through this class (see MatrixCache) 
 
 	/**
 	 * Constructor for matrix - initializes with # of rows and columns. 
@@ -66,6 +88,20 @@ public class Matrix  {
 		cols = j; //set the number of columns 
 	}
 
+	/**
+	 * Wraps existing rows (no values are copied); used by MatrixArena for pooled rows. 
+	 * 
+	 * @param values
+	 * 	The rows, each of length j. 
+	 * @param j
+	 * 	The number of columns (needed when there are no rows). 
+	 */
+	Matrix(double[][] values, int j){
+		m = values; 
+		rows = values.length; 
+		cols = j; 
+	}
+
 	/**
 	 * This constructor allows for random generation of matrices with random integers or floats. 
 	 * 
@@ -106,24 +142,71 @@ public class Matrix  {
 	 * @return 
 	 */
 	public void fillMatrix(Matrix that){ //useful for cloning a matrix - fills the values of one matrix with those of another. 
-		double[][] mat = new double[that.m.length][that.m[0].length]; 
+		double[][] mat = new double[that.m.length][]; 
 		for (int ii = 0; ii < mat.length; ii++) {
-			for (int jj = 0; jj < mat[0].length; jj++) {
-				mat[ii][jj] = that.m[ii][jj]; //put each value in 
-			}
+			mat[ii] = that.m[ii].clone(); //bulk copy of each row 
 		}
 		this.m = mat; //equate the 2D arrays in each matrix 
+		version++; 
+	}
+
+	/**
+	 * Copies the values of this matrix into another matrix with the same dimensions (no new arrays). 
+	 * 
+	 * @param dest
+	 * 	The matrix to copy into. 
+	 */
+	public void copyInto(Matrix dest){
+		checkSameSize(dest); 
+		if(dest == this)
+			return; 
+		for (int ii = 0; ii < rows; ii++) {
+			System.arraycopy(m[ii], 0, dest.m[ii], 0, cols); //each row into the row already there 
+		}
+		dest.version++; 
+	}
+
+	private void checkSameSize(Matrix dest){
+		if(dest.rows != rows || dest.cols != cols){
+			throw new IllegalArgumentException("cannot put a " + rows + "x" + cols + " result in a " + dest.rows + "x" + dest.cols + " matrix"); 
+		}
 	}
 
 	/**
-	 * Finds the inverse of a matrix. The invert method appends the identity matrix to a given matrix, 
-	 * rowreduces the original matrix, and then returns a matrix created from the right side of the 
-	 * augmented matrix. 
+	 * Finds the inverse of a matrix. The matrix is factored once (see LUDecomposition) and the inverse 
+	 * is found by solving against the identity matrix. If the matrix turns out to be singular, the old 
+	 * method is used instead: append the identity matrix, rowreduce, and return the right side of the 
+	 * augmented matrix. When MatrixCache is turned on, inverting an unchanged matrix again returns a 
+	 * copy of the cached inverse. 
 	 * 
 	 * @return
 	 * 	Returns a new, inverted matrix (same dimensions as one from the user). 
 	 */
 	public Matrix invert(){
+		if(this.rows != this.cols){ //need a square matrix to invert
+			System.out.println("not invertible");
+			return null; 
+		}
+		long start = MatrixMetrics.start(); 
+		MatrixEvents.Invert event = new MatrixEvents.Invert(); //flight recorder event, kept only if slow 
+		event.begin(); 
+		Matrix inverse = MatrixCache.inverse(this, event); //computes it when the cache is off 
+		event.end(); 
+		if(event.shouldCommit()){
+			event.size = rows; 
+			event.commit(); 
+		}
+		MatrixMetrics.record(MatrixMetrics.Operation.INVERT, start, event.cached ? 0 : 2L*rows*rows*rows); //LU plus solving against I, nothing for a cached copy 
+		return inverse; 
+	}
+
+	/**
+	 * Inverts by rowreducing the matrix augmented with the identity matrix. 
+	 * 
+	 * @return
+	 * 	Right side of the rowreduced augmented matrix. 
+	 */
+	Matrix invertByRowreduce(){
 		Matrix withID = this.addIdentity(this.clone()); //appends identity matrix
 		Matrix red = withID.rowreduce(); //rowreduce that matrix
 
@@ -205,15 +288,43 @@ public class Matrix  {
 	 * 	A matrix with the modified row. 
 	 */
 	public Matrix linearCombRows(double scalar, int firstrow, int secondrow){
-		Matrix replaced = new Matrix(this.rows, this.cols); //make the matrix to be returned 
-		replaced.fillMatrix(this); 
-
-		for (int ii = 0; ii < replaced.cols; ii++) {
-			replaced.m[secondrow][ii] += scalar*replaced.m[firstrow][ii]; 
-		}
+		Matrix replaced = this.clone(); //make the matrix to be returned 
+		replaced.linearCombRowsInPlace(scalar, firstrow, secondrow); 
 		return replaced; //returns new matrix (DOES NOT modify the original matrix) 
 	}
 
+	/**
+	 * Like linearCombRows, but the result goes into dest (same size as this matrix). 
+	 * 
+	 * @param scalar
+	 * 	The scalar used to multiply the first row. 
+	 * @param firstrow
+	 * 	The row that is multiplied and then added. 
+	 * @param secondrow
+	 * 	The modified row. 
+	 * @param dest
+	 * 	The matrix the result is written to (may be this matrix). 
+	 */
+	public void linearCombRowsInto(double scalar, int firstrow, int secondrow, Matrix dest){
+		copyInto(dest); 
+		dest.linearCombRowsInPlace(scalar, firstrow, secondrow); 
+	}
+
+	/**
+	 * Adds a multiple of one row to another row of this matrix (modifies this matrix). 
+	 * 
+	 * @param scalar
+	 * 	The scalar used to multiply the first row. 
+	 * @param firstrow
+	 * 	The row that is multiplied and then added. 
+	 * @param secondrow
+	 * 	The modified row. 
+	 */
+	public void linearCombRowsInPlace(double scalar, int firstrow, int secondrow){
+		RowKernels.ACTIVE.axpy(scalar, m[firstrow], 0, m[secondrow], 0, cols); //vectorized when possible
+		version++; 
+	}
+
 	/**
 	 * Adds two matrices. To add two matrices, you need to add the corresponding members from each matrix. 
 	 * The two matrices must thus have the same dimensions (rows and columns) for addition to be possible. 
@@ -226,16 +337,29 @@ public class Matrix  {
 	public Matrix plus (Matrix that){
 		if (rows == that.rows && cols == that.cols){ //make sure rows agree 
 			Matrix added = new Matrix(rows, cols); //make added matrix 
-			for (int ii = 0; ii < added.m.length; ii++) { //add corresponding values 
-				for (int jj = 0; jj < added.m[0].length; jj++) {
-					added.m[ii][jj] = this.m[ii][jj] + that.m[ii][jj]; 
-				}
-			}
+			plusInto(that, added); 
 			return added; //return new matrix 
 		}
 		return null; //if does not agree in size 
 	}
 
+	/**
+	 * Adds two matrices like plus, but writes the sum into dest. 
+	 * 
+	 * @param that
+	 * 	The second matrix to be added (same size). 
+	 * @param dest
+	 * 	The matrix the sum is written to (may be this or that). 
+	 */
+	public void plusInto(Matrix that, Matrix dest){
+		checkSameSize(that); 
+		checkSameSize(dest); 
+		for (int ii = 0; ii < rows; ii++) { //add corresponding values 
+			RowKernels.ACTIVE.add(this.m[ii], 0, that.m[ii], 0, dest.m[ii], 0, cols); 
+		}
+		dest.version++; 
+	}
+
 	/**
 	 * Prints out a matrix. 
 	 * Goes through each row and column of the matrix and print out the value; space each member
@@ -262,9 +386,7 @@ public class Matrix  {
 	 * 	A matrix that has been fully rowreduced. 
 	 */
 	public Matrix rowreduce(){ 
-		Matrix reduced = new Matrix(this.rows, this.cols); //creates new matrix that will contain rowreduced values
-		reduced.fillMatrix(this); 
-		double max = 0; 
+		int max = 0; 
 		if(this.hasIdentity) //if the matrix has the identity, you can only rowreduce half of the columns (for augmented matrix) 
 			max = this.cols/2; 
 		else { //otherwise, you can rowreduce as much as possible (limtied by either rows or cols) and leave the rest not reduced 
@@ -274,26 +396,35 @@ public class Matrix  {
 				max = this.rows; 
 		}
 
-		for (int ii = 0; ii < max; ii++) { //go through the maximum number of columns 
-			reduced = reduced.zerosDown(reduced, ii); //put zeros down in the column you are on 
-			
-			if(reduced.m[ii][ii] != 1){ //if the value at this position not 1, you need to make it 1 (on diagonal of matrix)
-				double multFactor = 1/(reduced.m[ii][ii]); //multiply by reciprocal 
-				if(Math.abs(multFactor) < Math.pow(10, 10) && Math.abs(multFactor) > Math.pow(10, -10)){ //this makes sure you are not dividing by a positive infinity type number
-					reduced = reduced.scalarTimesRow(multFactor, ii); //if it's smaller than 10^-10, round to 0
-				}
-			}
+		long start = MatrixMetrics.start(); 
+		MatrixEvents.Rowreduce event = new MatrixEvents.Rowreduce(); 
+		event.begin(); 
+		FlatMatrix reduced = MatrixPool.flatCopy(this); //one working copy (pooled) that gets reduced in place 
+		Elimination elim = new Elimination(reduced); 
+		elim.reduce(max); //partial pivoting, no copies per row operation 
+		Matrix result = reduced.toMatrix(); 
+		MatrixPool.release(reduced.data); 
+		event.end(); 
+		if(event.shouldCommit()){
+			event.rows = rows; 
+			event.cols = cols; 
+			event.pivotColumns = max; 
+			event.rank = elim.getRank(); 
+			event.rowSwaps = elim.getRowSwaps(); 
+			event.commit(); 
 		}
-
-		return reduced; //return rowreduced matrix
+		MatrixMetrics.record(MatrixMetrics.Operation.ROWREDUCE, start, 2L*rows*cols*max); //each pivot column updates every row 
+		return result; //return rowreduced matrix
 	}
 
 	/**
 	 * Given a matrix and a column, this method goes through the column and puts zeros in every row except the pivot. 
-	 * The matrix class rowreduces by performing zerosDown on every column. 
+	 * The pivot is found in this matrix (see findPivot) and switched into row col; every other row with a value in 
+	 * the column then has a multiple of a row below it (or above, for the bottom row) added to it. Any matrix can be 
+	 * passed in, not just one whose earlier columns are already reduced. 
 	 * 
-	 * ZerosDown is the most important part of the rowreduce as the program cycles through each column and puts zeros 
-	 * in every position except the diagonal (should be 1's).  
+	 * rowreduce no longer calls this for every column (it reduces one working copy in place with Elimination), 
+	 * but zerosDown is kept for code that steps through a reduction column by column. 
 	 * 
 	 * @param that
 	 *	The matrix used (being rowreduced). 
@@ -303,37 +434,58 @@ public class Matrix  {
 	 * 	Returns a new matrix with zeros in that column. 
 	 */
 	public Matrix zerosDown(Matrix that, int col){ 
-		Matrix zeroDown = new Matrix(this.rows, this.cols); //new matrix with zerosDown performed 
-		zeroDown.fillMatrix(that); //fill with old values 
+		Matrix zeroDown = new Matrix(that.rows, that.cols); //new matrix with zerosDown performed 
+		zerosDownInto(that, col, zeroDown); 
+		return zeroDown; 
+	}
+
+	/**
+	 * Like zerosDown, but the result goes into dest. The row operations are done in place on dest, 
+	 * so no matrix is made per operation. 
+	 * 
+	 * @param that
+	 *	The matrix used (being rowreduced). 
+	 * @param col
+	 * 	The column to put zeros down. 
+	 * @param dest
+	 * 	The matrix the result is written to (same size as that, may be that). 
+	 */
+	public void zerosDownInto(Matrix that, int col, Matrix dest){ 
+		that.checkSameSize(dest); 
 		double[] pivot = findPivot(col); //find the pivot in the column you're using 
+		that.copyInto(dest); //start from the old values 
 		if(pivot[0] >= col) //if the pivot is not in the right place, 
-			zeroDown = zeroDown.switchRows((int)pivot[0], col); //swap pivot to right plaec
+			dest.switchRowsInPlace((int)pivot[0], col); //swap pivot to right place 
 		int switch_pos = 0; 
 		double multFactor = 0; 
 
-		//this rounds down values that are less than a tiny number (10^-15)
-		for (int jj = 0; jj < that.m.length; jj++) {
-			for (int kk = 0; kk < that.m[0].length; kk++) {
-				if(Math.abs(that.m[jj][kk]) < Math.pow(10, -15) && that.m[jj][kk] != 0){
-					that.m[jj][kk] = 0; //set it to 0
+		//this rounds down values of that which are less than a tiny number (10^-15); the result was copied first, 
+		//so it is not rounded (when dest is that, the values have already been replaced) 
+		if(dest != that){
+			for (int jj = 0; jj < that.rows; jj++) {
+				for (int kk = 0; kk < that.cols; kk++) {
+					if(Math.abs(that.m[jj][kk]) < 1e-15 && that.m[jj][kk] != 0){
+						that.m[jj][kk] = 0; //set it to 0
+					}
 				}
 			}
+			that.version++; 
 		}
-		for (int ii = zeroDown.rows-1; ii >= 0; ii--) { //go through each row from the bottom to start making each value a zero 
-			if(zeroDown.m[ii][col] != 0 && ii != pivot[0]){ //you do not want a zero where the pivot is (or if there is already a 0)
-				for (int jj = zeroDown.rows-1; jj >= 0; jj--) {
-					if(Math.abs(zeroDown.m[jj][col]) >= Math.pow(10, -8) && jj != ii){ //determines whether the value is too large or small 
-						multFactor = -1*(zeroDown.m[ii][col])/(zeroDown.m[jj][col]); //finds proper value to multiply by  
+		double[][] z = dest.m; 
+		for (int ii = dest.rows-1; ii >= 0; ii--) { //go through each row from the bottom to start making each value a zero 
+			if(z[ii][col] != 0 && ii != pivot[0]){ //you do not want a zero where the pivot is (or if there is already a 0)
+				for (int jj = dest.rows-1; jj >= 0; jj--) {
+					if(Math.abs(z[jj][col]) >= 1e-8 && jj != ii){ //determines whether the value is too large or small 
+						multFactor = -1*(z[ii][col])/(z[jj][col]); //finds proper value to multiply by  
 						switch_pos = jj; //row # used for linearcombrow 
 						break; 
 					}
 				}
-				if(Math.abs(multFactor) < Math.pow(10, 8) && Math.abs(multFactor) > Math.pow(10, -8)){ //make sure you're not dividing/multiplying by a number too large or small
-					zeroDown = zeroDown.linearCombRows(multFactor, switch_pos, ii); 
+				if(Math.abs(multFactor) < 1e8 && Math.abs(multFactor) > 1e-8){ //make sure you're not dividing/multiplying by a number too large or small
+					dest.linearCombRowsInPlace(multFactor, switch_pos, ii); 
 				}
 			}
 		}
-		return zeroDown; 
 	}
 
 	/**
@@ -365,14 +517,39 @@ public class Matrix  {
 	 * 	New, multiplied matrix. 
 	 */
 	public Matrix scalarTimesRow(double scalar, int rownumber){
-		Matrix times = new Matrix(this.rows, this.cols); //new matrix with row multiplied 
-		times.fillMatrix(this); //fill data in new matrix with old one 
-		for (int ii = 0; ii < this.cols; ii++) {
-			times.m[rownumber][ii] *= scalar; //multiply each value by scalar 
-		}
+		Matrix times = this.clone(); //new matrix with row multiplied 
+		times.scalarTimesRowInPlace(scalar, rownumber); 
 		return times; //return new matrix
 	}
 
+	/**
+	 * Like scalarTimesRow, but the result goes into dest (same size as this matrix). 
+	 * 
+	 * @param scalar
+	 * 	The scalar to multiply the particular row by. 
+	 * @param rownumber
+	 * 	The row number to multiply. 
+	 * @param dest
+	 * 	The matrix the result is written to (may be this matrix). 
+	 */
+	public void scalarTimesRowInto(double scalar, int rownumber, Matrix dest){
+		copyInto(dest); 
+		dest.scalarTimesRowInPlace(scalar, rownumber); 
+	}
+
+	/**
+	 * Multiplies a particular row of this matrix by a scalar (modifies this matrix). 
+	 * 
+	 * @param scalar
+	 * 	The scalar to multiply the particular row by. 
+	 * @param rownumber
+	 * 	The row number to multiply. 
+	 */
+	public void scalarTimesRowInPlace(double scalar, int rownumber){
+		RowKernels.ACTIVE.scale(scalar, m[rownumber], 0, cols); //multiply each value by scalar 
+		version++; 
+	}
+
 	/**
 	 * Switches two rows in a matrix; returns a new matrix with the switched rows.  
 	 * 
@@ -384,17 +561,40 @@ public class Matrix  {
 	 * 	New matrix with switched rows. 
 	 */
 	public Matrix switchRows(int firstRow, int secondRow){
-		Matrix switched = new Matrix(this.rows, this.cols);
-		switched.fillMatrix(this); //fill the values of the new matrix with the old one (but then switch the rows) 
-		double[] row_one = new double[this.cols]; //holds contents of each row while they're being switched  
-		double[] row_two = new double[this.cols]; 
+		Matrix switched = this.clone(); //fill the values of the new matrix with the old one (but then switch the rows) 
+		switched.switchRowsInPlace(firstRow, secondRow); 
+		return switched; 
+	}
 
-		row_one = this.m[firstRow]; //make sure you don't lose the row 
-		row_two = this.m[secondRow]; 
+	/**
+	 * Like switchRows, but the result goes into dest (same size as this matrix). 
+	 * 
+	 * @param firstRow
+	 * 	First row used to switch. 
+	 * @param secondRow
+	 * 	Second row used to switch. 
+	 * @param dest
+	 * 	The matrix the result is written to (may be this matrix). 
+	 */
+	public void switchRowsInto(int firstRow, int secondRow, Matrix dest){
+		copyInto(dest); 
+		dest.switchRowsInPlace(firstRow, secondRow); 
+	}
 
-		switched.m[firstRow] = row_two; //switch the rows 
-		switched.m[secondRow] = row_one; 
-		return switched; 
+	/**
+	 * Switches two rows of this matrix (modifies this matrix). Only the row references are 
+	 * exchanged, so no values are copied. 
+	 * 
+	 * @param firstRow
+	 * 	First row used to switch. 
+	 * @param secondRow
+	 * 	Second row used to switch. 
+	 */
+	public void switchRowsInPlace(int firstRow, int secondRow){
+		double[] row_one = m[firstRow]; //make sure you don't lose the row 
+		m[firstRow] = m[secondRow]; 
+		m[secondRow] = row_one; 
+		version++; 
 	}
 
 	/**
@@ -403,6 +603,9 @@ public class Matrix  {
 	 * of the row is then summed, and this sum is part of the product matrix. 
 	 * 
 	 * The multiplied matrix has dimensions of the # of rows in the first matrix and the # of columns in the second matrix. 
+	 * The cache-blocked kernel in MatrixMultiply (which has its own loop for a matrix times a column vector) reads the 
+	 * rows of both matrices where they are and adds into the rows of the product, so nothing is copied. Only Strassen's 
+	 * method (see MatrixMultiply.setMode) needs flat copies, which are temporaries taken from MatrixPool. 
 	 * 
 	 * @param that
 	 * 	The matrix used to multiply this one by (remember not commutative) 
@@ -411,15 +614,153 @@ public class Matrix  {
 	 */
 	public Matrix times(Matrix that){
 		Matrix mult = new Matrix(rows, that.cols); 
+		timesInto(that, mult); 
+		return mult; //return multiplied matrix 
+	}
 
-		for (int ii = 0; ii < this.rows; ii++) { 
-			for (int jj = 0; jj < that.cols; jj++) { //ii, jj loop through new matrix (when multiplying, new matrix has x dimension of the 1st matrix and then y dimension of the 2nd matrix's y dimension)
-				for (int kk = 0; kk < that.rows; kk++) { //loop through each row of this matrix 
-					mult.m[ii][jj] += this.m[ii][kk]*that.m[kk][jj]; //add to get the final product
-				}
-			}
+	/**
+	 * Multiplies two matrices like times, but writes the product into dest. 
+	 * 
+	 * @param that
+	 * 	The matrix used to multiply this one by. 
+	 * @param dest
+	 * 	The matrix the product is written to (rows of this by columns of that; may be this or that). 
+	 */
+	public void timesInto(Matrix that, Matrix dest){
+		if(cols != that.rows){
+			throw new IllegalArgumentException("cannot multiply a " + rows + "x" + cols + " by a " + that.rows + "x" + that.cols + " matrix"); 
 		}
-		return mult; //return multiplied matrix 
+		if(dest.rows != rows || dest.cols != that.cols){
+			throw new IllegalArgumentException("product does not fit in a " + dest.rows + "x" + dest.cols + " matrix"); 
+		}
+		long start = MatrixMetrics.start(); 
+		MatrixEvents.Multiply event = new MatrixEvents.Multiply(); 
+		event.begin(); 
+		if(MatrixMultiply.useStrassen(rows, cols, that.cols)){
+			FlatMatrix a = MatrixPool.flatCopy(this); 
+			FlatMatrix b = MatrixPool.flatCopy(that); 
+			FlatMatrix c = new FlatMatrix(MatrixPool.takeAtLeast(rows*that.cols), 0, that.cols, rows, that.cols); 
+			MatrixMultiply.multiplyAdd(a, b, c); 
+			for (int ii = 0; ii < rows; ii++) 
+				c.copyRow(ii, dest.m[ii], 0); 
+			MatrixPool.release(a.data); 
+			MatrixPool.release(b.data); 
+			MatrixPool.release(c.data); 
+		}
+		else if(dest == this || dest == that){ //the product cannot overwrite an operand it is still reading 
+			FlatMatrix c = new FlatMatrix(MatrixPool.takeAtLeast(rows*that.cols), 0, that.cols, rows, that.cols); 
+			MatrixMultiply.multiplyAdd(1, new Rows(this), new Rows(that), new Rows(c)); 
+			for (int ii = 0; ii < rows; ii++) 
+				c.copyRow(ii, dest.m[ii], 0); 
+			MatrixPool.release(c.data); 
+		}
+		else {
+			for (double[] row : dest.m) 
+				Arrays.fill(row, 0); 
+			MatrixMultiply.multiplyAdd(1, new Rows(this), new Rows(that), new Rows(dest)); 
+		}
+		dest.version++; 
+		event.end(); 
+		if(event.shouldCommit()){
+			event.rows = rows; 
+			event.inner = cols; 
+			event.cols = that.cols; 
+			event.flops = 2L*rows*cols*that.cols; 
+			event.commit(); 
+		}
+		MatrixMetrics.record(MatrixMetrics.Operation.MULTIPLY, start, 2L*rows*cols*that.cols); 
+	}
+
+	/**
+	 * Multiplies this matrix by the transpose of another (this*that^T) without making the transpose 
+	 * (see MatrixMultiply). 
+	 * 
+	 * @param that
+	 * 	Matrix with the same number of columns as this one. 
+	 * @return
+	 * 	New matrix with the product. 
+	 */
+	public Matrix timesTransposed(Matrix that){
+		Matrix product = new Matrix(rows, that.rows); 
+		MatrixMultiply.multiplyTransposedAdd(1, new Rows(this), new Rows(that), new Rows(product)); 
+		return product; 
+	}
+
+	/**
+	 * Multiplies the transpose of this matrix by another (this^T*that) without making the transpose. 
+	 * a.transposeTimes(a) is the Gram matrix and a.transposeTimes(b) the right side of the normal 
+	 * equations. 
+	 * 
+	 * @param that
+	 * 	Matrix with the same number of rows as this one. 
+	 * @return
+	 * 	New matrix with the product. 
+	 */
+	public Matrix transposeTimes(Matrix that){
+		Matrix product = new Matrix(cols, that.cols); 
+		MatrixMultiply.transposeMultiplyAdd(1, new Rows(this), new Rows(that), new Rows(product)); 
+		return product; 
+	}
+
+	/**
+	 * Returns the transpose of this matrix, copied block by block (see Transpose). 
+	 * 
+	 * @return
+	 * 	New matrix with the rows and columns switched. 
+	 */
+	public Matrix transpose(){
+		Matrix transposed = new Matrix(cols, rows); 
+		Transpose.transpose(m, transposed.m); 
+		return transposed; 
+	}
+
+	/**
+	 * Transposes this square matrix in place. 
+	 */
+	public void transposeInPlace(){
+		if(rows != cols){
+			throw new IllegalArgumentException("only a square matrix can be transposed in place, not " + rows + "x" + cols); 
+		}
+		Transpose.transposeInPlace(m); 
+		version++; 
+	}
+
+	/**
+	 * Multiplies two matrices like times, but splits the rows of the product between the threads of 
+	 * a ForkJoinPool (see ParallelMatrixOps). Small products run on one thread. 
+	 * 
+	 * @param that
+	 * 	The matrix used to multiply this one by (remember not commutative) 
+	 * @return
+	 * 	New matrix with multiplied values 
+	 */
+	public Matrix timesParallel(Matrix that){
+		return ParallelMatrixOps.multiply(new FlatMatrix(this), new FlatMatrix(that)).toMatrix(); 
+	}
+
+	/**
+	 * Adds two matrices like plus, but splits the rows between the threads of a ForkJoinPool. 
+	 * 
+	 * @param that
+	 * 	The second matrix to be added. 
+	 * @return
+	 * 	New matrix containing result of added matrices (null if the sizes do not agree). 
+	 */
+	public Matrix plusParallel(Matrix that){
+		FlatMatrix added = ParallelMatrixOps.add(new FlatMatrix(this), new FlatMatrix(that)); 
+		return added == null ? null : added.toMatrix(); 
+	}
+
+	/**
+	 * Starts a lazy expression with this matrix (see MatrixExpression), so that for example 
+	 * a.lazy().times(b).plus(c).evaluate() reads the rows of a, b and c where they are and only 
+	 * allocates the result (evaluateInto does not even allocate that). 
+	 * 
+	 * @return
+	 * 	An expression whose value is this matrix (not copied). 
+	 */
+	public MatrixExpression lazy(){
+		return MatrixExpression.of(this); 
 	}
 
 	/**
@@ -434,5 +775,25 @@ public class Matrix  {
 	 */
 	public void setEntry(int i, int j, double d) {
 		m[i][j] = d; //set a particular entry
+		version++; 
+	}
+
+	/**
+	 * The modification count of this matrix: it changes whenever the matrix is changed through 
+	 * setEntry, fillMatrix or an in-place operation. 
+	 * 
+	 * @return
+	 * 	The current version. 
+	 */
+	public long getVersion(){
+		return version; 
+	}
+
+	/**
+	 * Records that the values were changed from outside (for example by writing into m directly), 
+	 * so that results cached for the old values are not used. 
+	 */
+	public void markModified(){
+		version++; 
 	}
 }
@@ -0,0 +1,117 @@
+package matrixmath;
+
+import java.util.ArrayList;
+
+/**
+ * The MatrixArena class hands out temporary matrices whose arrays come from MatrixPool, and gives
+ * all of them back at once when it is closed. A computation that needs scratch matrices allocates
+ * them from an arena and writes results with the "into" operations (copyInto, plusInto, timesInto
+ * and so on), so once the pool is warm a loop that runs it again allocates nothing:
+ *
+ * 	try (MatrixArena arena = new MatrixArena()) {
+ * 		Matrix tmp = arena.allocate(n, n);
+ * 		a.timesInto(b, tmp);
+ * 		...
+ * 	}
+ *
+ * Matrices from the arena must not be used after it is closed (their arrays are reused by other
+ * matrices); closing empties them so that a mistake fails at once. For the same reason, do not put
+ * arrays that belong to other matrices into a matrix from the arena. An arena is not thread safe.
+ *
+ * @method allocate
+ * 	A Matrix of zeros owned by the arena.
+ * @method allocateFlat
+ * 	A FlatMatrix of zeros owned by the arena.
+ * @method copyOf
+ * 	Copies a Matrix into the arena.
+ * @method close
+ * 	Returns every array to the pool.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixArena implements AutoCloseable {
+	private final ArrayList<Matrix> matrices = new ArrayList<Matrix>();
+	private final ArrayList<FlatMatrix> flats = new ArrayList<FlatMatrix>();
+	private boolean closed;
+
+	/**
+	 * A matrix of zeros that is given back to the pool with the arena.
+	 *
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 * @return
+	 * 	The new matrix.
+	 */
+	public Matrix allocate(int i, int j){
+		return allocate(i, j, true);
+	}
+
+	private Matrix allocate(int i, int j, boolean zero){
+		checkOpen();
+		double[][] values = new double[i][];
+		for (int ii = 0; ii < i; ii++)
+			values[ii] = zero ? MatrixPool.take(j) : MatrixPool.takeDirty(j);
+		Matrix matrix = new Matrix(values, j);
+		matrices.add(matrix);
+		return matrix;
+	}
+
+	/**
+	 * A flat matrix of zeros (packed) that is given back to the pool with the arena.
+	 *
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 * @return
+	 * 	The new matrix.
+	 */
+	public FlatMatrix allocateFlat(int i, int j){
+		checkOpen();
+		FlatMatrix matrix = new FlatMatrix(MatrixPool.takeAtLeast(i*j), 0, j, i, j);
+		flats.add(matrix);
+		return matrix;
+	}
+
+	/**
+	 * Copies a Matrix into the arena.
+	 *
+	 * @param that
+	 * 	The matrix to copy.
+	 * @return
+	 * 	The copy.
+	 */
+	public Matrix copyOf(Matrix that){
+		Matrix copy = allocate(that.rows, that.cols, false); //copyInto writes every value
+		that.copyInto(copy);
+		return copy;
+	}
+
+	private void checkOpen(){
+		if(closed){
+			throw new IllegalStateException("arena has been closed");
+		}
+	}
+
+	/**
+	 * Gives every array allocated from the arena back to the pool. Closing twice does nothing.
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		for (Matrix matrix : matrices) {
+			for (double[] row : matrix.m) //rows switched between arena matrices are still arena rows
+				MatrixPool.release(row);
+			matrix.m = null;
+		}
+		for (FlatMatrix matrix : flats) {
+			MatrixPool.release(matrix.data);
+			matrix.data = null;
+		}
+		matrices.clear();
+		flats.clear();
+	}
+}
@@ -0,0 +1,93 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import matrixmath.FlatMatrix;
+import matrixmath.Matrix;
+import matrixmath.MatrixArena;
+import matrixmath.MatrixPool;
+
+/**
+ * This class tests MatrixArena and MatrixPool: closing an arena empties its matrices and puts their
+ * rows in the pool, the next arena reuses those very arrays and hands them out as zeros, a closed
+ * arena refuses to allocate, another thread does not get this thread's arrays, and with a limit of
+ * 0 bytes nothing is kept.
+ *
+ * @author Andrew M.
+ */
+public class MatrixArenaTest {
+
+	public static void main(String[] args) throws InterruptedException {
+		long limit = MatrixPool.getMaxBytes();
+		MatrixPool.clear();
+		try {
+			int rows = 8, cols = 37; //a row length nothing else uses
+			Set<double[]> used = Collections.newSetFromMap(new IdentityHashMap<double[], Boolean>());
+			Matrix first;
+			MatrixArena arena = new MatrixArena();
+			try {
+				first = arena.allocate(rows, cols);
+				for (int ii = 0; ii < rows; ii++) {
+					used.add(first.m[ii]);
+					for (int jj = 0; jj < cols; jj++)
+						first.m[ii][jj] = ii + jj + 1;
+				}
+				FlatMatrix flat = arena.allocateFlat(5, 5);
+				flat.set(4, 4, 7);
+			}
+			finally {
+				arena.close();
+			}
+			check("closing an arena empties its matrices", first.m == null);
+			check("closing an arena fills the pool", MatrixPool.getPooledBytes() == 8L*(rows*cols + 32)); //the 25 values round up to 32
+			boolean refused = false;
+			try {
+				arena.allocate(2, 2);
+			}
+			catch(IllegalStateException e){
+				refused = true;
+			}
+			check("a closed arena refuses to allocate", refused);
+
+			boolean[] otherReused = {false};
+			Thread other = new Thread(() -> {
+				try (MatrixArena theirs = new MatrixArena()) {
+					otherReused[0] = used.contains(theirs.allocate(1, cols).m[0]);
+				}
+			});
+			other.start();
+			other.join();
+			check("another thread does not get this thread's arrays", !otherReused[0]);
+
+			try (MatrixArena next = new MatrixArena()) {
+				Matrix second = next.allocate(rows, cols);
+				boolean same = true, zero = true;
+				for (int ii = 0; ii < rows; ii++) {
+					same &= used.contains(second.m[ii]);
+					for (int jj = 0; jj < cols; jj++)
+						zero &= second.m[ii][jj] == 0;
+				}
+				FlatMatrix flat = next.allocateFlat(5, 5);
+				check("a new arena reuses the rows", same && MatrixPool.getPooledBytes() == 0);
+				check("reused arrays are zeros", zero && flat.get(4, 4) == 0);
+			}
+
+			MatrixPool.setMaxBytes(0);
+			check("a limit of 0 empties the pool", MatrixPool.getPooledBytes() == 0);
+			try (MatrixArena none = new MatrixArena()) {
+				none.allocate(rows, cols);
+			}
+			check("a limit of 0 keeps nothing", MatrixPool.getPooledBytes() == 0);
+		}
+		finally {
+			MatrixPool.setMaxBytes(limit);
+			MatrixPool.clear();
+		}
+
+		finish();
+	}
+}
@@ -0,0 +1,558 @@
+package matrixmath;
+
+/**
+ * The MatrixBatch class holds many small matrices of the same shape (such as millions of 3x3 or
+ * 4x4 transforms) in one array, and inverts, multiplies or solves all of them in one call. Making a
+ * Matrix object for each tiny matrix costs far more than the arithmetic itself.
+ *
+ * The array is stored "structure of arrays": entry (i, j) of every matrix comes first, then entry
+ * (i, j+1) of every matrix, and so on, so entry (i, j) of matrix b is at (i*cols + j)*count + b.
+ * Every kernel loops over the matrices innermost, doing the same operation on neighbouring values,
+ * which the JIT turns into SIMD code.
+ *
+ * 2x2, 3x3 and 4x4 matrices are inverted with unrolled closed-form (cofactor) formulas, which
+ * need no pivoting; larger matrices use Gauss-Jordan elimination with partial pivoting on blocks of
+ * matrices, still with the matrices innermost. solve runs the same elimination on [A | B] for every
+ * size, so it never forms the inverse. Every size uses the same relative test for a singular matrix
+ * (the largest entry of A times the largest entry of its inverse must stay below 1/(n*eps); solve,
+ * which has no inverse, uses one over its smallest pivot instead); a singular matrix does not stop
+ * the batch: its result is filled with NaN and counted. The elimination's work arrays are kept per
+ * thread, so once they have grown to the batch's size the into-destination overloads allocate
+ * nothing.
+ *
+ * @method get
+ * 	Gets an entry of one matrix.
+ * @method set
+ * 	Sets an entry of one matrix.
+ * @method setMatrix
+ * 	Copies a Matrix into the batch.
+ * @method getMatrix
+ * 	Copies one matrix out of the batch.
+ * @method times
+ * 	Multiplies every matrix by the matching matrix of another batch.
+ * @method invert
+ * 	Inverts every matrix.
+ * @method solve
+ * 	Solves Ax = b for every matrix.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixBatch {
+	final int count; //number of matrices
+	final int rows; //rows in each matrix
+	final int cols; //columns in each matrix
+	final double[] data; //entry (i, j) of matrix b is data[(i*cols + j)*count + b]
+	private static final int BLOCK = 32; //matrices eliminated together (an 8x8 block's work array is 32 KB)
+	private static final double EPS = Math.ulp(1.0);
+
+	/**
+	 * Constructor for a batch of matrices of zeros.
+	 *
+	 * @param count
+	 * 	The number of matrices.
+	 * @param i
+	 * 	The number of rows in each matrix.
+	 * @param j
+	 * 	The number of columns in each matrix.
+	 */
+	public MatrixBatch(int count, int i, int j){
+		this.count = count;
+		this.rows = i;
+		this.cols = j;
+		this.data = new double[count*i*j];
+	}
+
+	/**
+	 * Copies some matrices of the same shape into a batch.
+	 *
+	 * @param mats
+	 * 	The matrices.
+	 * @return
+	 * 	The batch.
+	 */
+	public static MatrixBatch fromMatrices(Matrix... mats){
+		if(mats.length == 0){
+			throw new IllegalArgumentException("need at least one matrix");
+		}
+		MatrixBatch batch = new MatrixBatch(mats.length, mats[0].rows, mats[0].cols);
+		for (int bb = 0; bb < mats.length; bb++)
+			batch.setMatrix(bb, mats[bb]);
+		return batch;
+	}
+
+	public int getCount(){
+		return count;
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * Gets an entry of one matrix.
+	 *
+	 * @param b
+	 * 	Which matrix.
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value.
+	 */
+	public double get(int b, int i, int j){
+		return data[(i*cols + j)*count + b];
+	}
+
+	/**
+	 * Sets an entry of one matrix.
+	 *
+	 * @param b
+	 * 	Which matrix.
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @param d
+	 * 	The value to put in the matrix.
+	 */
+	public void set(int b, int i, int j, double d){
+		data[(i*cols + j)*count + b] = d;
+	}
+
+	/**
+	 * Copies a Matrix into one place in the batch.
+	 *
+	 * @param b
+	 * 	Which matrix.
+	 * @param that
+	 * 	The matrix to copy (same shape as the batch).
+	 */
+	public void setMatrix(int b, Matrix that){
+		if(that.rows != rows || that.cols != cols){
+			throw new IllegalArgumentException("expected a " + rows + "x" + cols + " matrix");
+		}
+		for (int ii = 0; ii < rows; ii++)
+			for (int jj = 0; jj < cols; jj++)
+				data[(ii*cols + jj)*count + b] = that.m[ii][jj];
+	}
+
+	/**
+	 * Copies one matrix out of the batch.
+	 *
+	 * @param b
+	 * 	Which matrix.
+	 * @return
+	 * 	New Matrix with its values.
+	 */
+	public Matrix getMatrix(int b){
+		Matrix mat = new Matrix(rows, cols);
+		for (int ii = 0; ii < rows; ii++)
+			for (int jj = 0; jj < cols; jj++)
+				mat.m[ii][jj] = data[(ii*cols + jj)*count + b];
+		return mat;
+	}
+
+	/**
+	 * Multiplies every matrix by the matching matrix of that.
+	 *
+	 * @param that
+	 * 	Batch with as many matrices, each with as many rows as these have columns.
+	 * @return
+	 * 	New batch with the products.
+	 */
+	public MatrixBatch times(MatrixBatch that){
+		MatrixBatch product = new MatrixBatch(count, rows, that.cols);
+		times(that, product);
+		return product;
+	}
+
+	/**
+	 * Multiplies every matrix by the matching matrix of that, into a batch the caller owns.
+	 *
+	 * @param that
+	 * 	Batch with as many matrices, each with as many rows as these have columns.
+	 * @param dest
+	 * 	Batch to put the products in (overwritten; must not be this or that).
+	 */
+	public void times(MatrixBatch that, MatrixBatch dest){
+		if(that.count != count || that.rows != cols){
+			throw new IllegalArgumentException("cannot multiply " + count + " " + rows + "x" + cols + " matrices by " + that.count + " " + that.rows + "x" + that.cols + " matrices");
+		}
+		if(dest.count != count || dest.rows != rows || dest.cols != that.cols){
+			throw new IllegalArgumentException("destination has the wrong shape");
+		}
+		int n = count;
+		double[] a = data, b = that.data, c = dest.data;
+		java.util.Arrays.fill(c, 0);
+		for (int ii = 0; ii < rows; ii++) {
+			for (int kk = 0; kk < cols; kk++) {
+				int aOff = (ii*cols + kk)*n;
+				for (int jj = 0; jj < that.cols; jj++) {
+					int bOff = (kk*that.cols + jj)*n;
+					int cOff = (ii*that.cols + jj)*n;
+					for (int bb = 0; bb < n; bb++)
+						c[cOff+bb] += a[aOff+bb]*b[bOff+bb];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inverts every matrix.
+	 *
+	 * @return
+	 * 	New batch with the inverses (singular matrices give NaN).
+	 */
+	public MatrixBatch invert(){
+		MatrixBatch inverse = new MatrixBatch(count, rows, cols);
+		invert(inverse);
+		return inverse;
+	}
+
+	/**
+	 * Inverts every matrix into a batch the caller owns.
+	 *
+	 * @param dest
+	 * 	Batch of the same shape to put the inverses in (may be this).
+	 * @return
+	 * 	The number of singular matrices (their inverses are filled with NaN).
+	 */
+	public int invert(MatrixBatch dest){
+		if(rows != cols){
+			throw new IllegalArgumentException("only square matrices can be inverted");
+		}
+		if(dest.count != count || dest.rows != rows || dest.cols != cols){
+			throw new IllegalArgumentException("destination has the wrong shape");
+		}
+		switch(rows){
+			case 1: return invert1(data, dest.data, count);
+			case 2: return invert2(data, dest.data, count);
+			case 3: return invert3(data, dest.data, count);
+			case 4: return invert4(data, dest.data, count);
+			default: return gaussJordan(data, null, dest.data, rows, rows, count);
+		}
+	}
+
+	/**
+	 * Solves Ax = b for every matrix A of this batch and the matching right-hand sides.
+	 *
+	 * @param rhs
+	 * 	Batch of right-hand sides (as many rows as these matrices, any number of columns).
+	 * @return
+	 * 	New batch with the solutions (NaN for singular matrices).
+	 */
+	public MatrixBatch solve(MatrixBatch rhs){
+		MatrixBatch x = new MatrixBatch(count, rows, rhs.cols);
+		solve(rhs, x);
+		return x;
+	}
+
+	/**
+	 * Solves Ax = b for every matrix into a batch the caller owns, by Gauss-Jordan elimination with
+	 * partial pivoting on [A | B].
+	 *
+	 * @param rhs
+	 * 	Batch of right-hand sides (as many rows as these matrices, any number of columns).
+	 * @param dest
+	 * 	Batch to put the solutions in (may be rhs).
+	 * @return
+	 * 	The number of singular matrices (their solutions are filled with NaN).
+	 */
+	public int solve(MatrixBatch rhs, MatrixBatch dest){
+		if(rows != cols){
+			throw new IllegalArgumentException("only square systems can be solved");
+		}
+		if(rhs.count != count || rhs.rows != rows || dest.count != count || dest.rows != rows || dest.cols != rhs.cols){
+			throw new IllegalArgumentException("right-hand side or destination has the wrong shape");
+		}
+		return gaussJordan(data, rhs.data, dest.data, rows, rhs.cols, count);
+	}
+
+	/**
+	 * The one singularity test, used for every size: the largest entry of A times the largest entry
+	 * of its computed inverse (an estimate of the condition number, which does not change when A is
+	 * scaled) must be finite and below 1/(n*eps). solve, which never forms the inverse, passes one
+	 * over its smallest pivot in place of the inverse's largest entry. A zero determinant or pivot
+	 * makes the inverse infinite or NaN, which fails it too.
+	 */
+	private static boolean isSingular(double maxA, double maxInv, int n){
+		return !(maxA*maxInv < 1/(n*EPS));
+	}
+
+	private static double maxAbs(double a, double b){
+		return Math.max(Math.abs(a), Math.abs(b));
+	}
+
+	private static int invert1(double[] a, double[] inv, int n){
+		int singular = 0;
+		for (int bb = 0; bb < n; bb++) {
+			double a00 = a[bb];
+			double r = 1/a00;
+			if(isSingular(Math.abs(a00), Math.abs(r), 1)){
+				r = Double.NaN;
+				singular++;
+			}
+			inv[bb] = r;
+		}
+		return singular;
+	}
+
+	private static int invert2(double[] a, double[] inv, int n){
+		int singular = 0;
+		for (int bb = 0; bb < n; bb++) {
+			double a00 = a[bb], a01 = a[n+bb], a10 = a[2*n+bb], a11 = a[3*n+bb];
+			double scale = 1/Math.max(maxAbs(a00, a01), maxAbs(a10, a11)); //work on A/max|A| so det cannot underflow
+			a00 *= scale; a01 *= scale; a10 *= scale; a11 *= scale;
+			double det = a00*a11 - a01*a10;
+			double r = 1/det;
+			if(isSingular(1, Math.max(maxAbs(a00, a01), maxAbs(a10, a11))*Math.abs(r), 2)){ //the adjugate has the same entries
+				r = Double.NaN;
+				singular++;
+			}
+			r *= scale;
+			inv[bb] = a11*r;
+			inv[n+bb] = -a01*r;
+			inv[2*n+bb] = -a10*r;
+			inv[3*n+bb] = a00*r;
+		}
+		return singular;
+	}
+
+	private static int invert3(double[] a, double[] inv, int n){
+		int singular = 0;
+		for (int bb = 0; bb < n; bb++) {
+			double a00 = a[bb], a01 = a[n+bb], a02 = a[2*n+bb];
+			double a10 = a[3*n+bb], a11 = a[4*n+bb], a12 = a[5*n+bb];
+			double a20 = a[6*n+bb], a21 = a[7*n+bb], a22 = a[8*n+bb];
+			double scale = 1/Math.max(Math.max(maxAbs(a00, a01), maxAbs(a02, a10)), Math.max(Math.max(maxAbs(a11, a12), maxAbs(a20, a21)), Math.abs(a22)));
+			a00 *= scale; a01 *= scale; a02 *= scale; //work on A/max|A| so det cannot underflow
+			a10 *= scale; a11 *= scale; a12 *= scale;
+			a20 *= scale; a21 *= scale; a22 *= scale;
+			double c00 = a11*a22 - a12*a21; //adjugate (transposed cofactors)
+			double c01 = a02*a21 - a01*a22;
+			double c02 = a01*a12 - a02*a11;
+			double c10 = a12*a20 - a10*a22;
+			double c11 = a00*a22 - a02*a20;
+			double c12 = a02*a10 - a00*a12;
+			double c20 = a10*a21 - a11*a20;
+			double c21 = a01*a20 - a00*a21;
+			double c22 = a00*a11 - a01*a10;
+			double det = a00*c00 + a01*c10 + a02*c20;
+			double r = 1/det;
+			double maxC = Math.max(Math.max(maxAbs(c00, c01), maxAbs(c02, c10)), Math.max(Math.max(maxAbs(c11, c12), maxAbs(c20, c21)), Math.abs(c22)));
+			if(isSingular(1, maxC*Math.abs(r), 3)){
+				r = Double.NaN;
+				singular++;
+			}
+			r *= scale;
+			inv[bb] = c00*r;
+			inv[n+bb] = c01*r;
+			inv[2*n+bb] = c02*r;
+			inv[3*n+bb] = c10*r;
+			inv[4*n+bb] = c11*r;
+			inv[5*n+bb] = c12*r;
+			inv[6*n+bb] = c20*r;
+			inv[7*n+bb] = c21*r;
+			inv[8*n+bb] = c22*r;
+		}
+		return singular;
+	}
+
+	private static int invert4(double[] a, double[] inv, int n){
+		int singular = 0;
+		for (int bb = 0; bb < n; bb++) {
+			double a00 = a[bb], a01 = a[n+bb], a02 = a[2*n+bb], a03 = a[3*n+bb];
+			double a10 = a[4*n+bb], a11 = a[5*n+bb], a12 = a[6*n+bb], a13 = a[7*n+bb];
+			double a20 = a[8*n+bb], a21 = a[9*n+bb], a22 = a[10*n+bb], a23 = a[11*n+bb];
+			double a30 = a[12*n+bb], a31 = a[13*n+bb], a32 = a[14*n+bb], a33 = a[15*n+bb];
+			double scale = 1/Math.max(Math.max(Math.max(maxAbs(a00, a01), maxAbs(a02, a03)), Math.max(maxAbs(a10, a11), maxAbs(a12, a13))),
+					Math.max(Math.max(maxAbs(a20, a21), maxAbs(a22, a23)), Math.max(maxAbs(a30, a31), maxAbs(a32, a33))));
+			a00 *= scale; a01 *= scale; a02 *= scale; a03 *= scale; //work on A/max|A| so det cannot underflow
+			a10 *= scale; a11 *= scale; a12 *= scale; a13 *= scale;
+			a20 *= scale; a21 *= scale; a22 *= scale; a23 *= scale;
+			a30 *= scale; a31 *= scale; a32 *= scale; a33 *= scale;
+			double s0 = a00*a11 - a10*a01; //2x2 determinants of the top two rows
+			double s1 = a00*a12 - a10*a02;
+			double s2 = a00*a13 - a10*a03;
+			double s3 = a01*a12 - a11*a02;
+			double s4 = a01*a13 - a11*a03;
+			double s5 = a02*a13 - a12*a03;
+			double c5 = a22*a33 - a32*a23; //and of the bottom two rows
+			double c4 = a21*a33 - a31*a23;
+			double c3 = a21*a32 - a31*a22;
+			double c2 = a20*a33 - a30*a23;
+			double c1 = a20*a32 - a30*a22;
+			double c0 = a20*a31 - a30*a21;
+			double det = s0*c5 - s1*c4 + s2*c3 + s3*c2 - s4*c1 + s5*c0;
+			double r = 1/det;
+			double i00 = a11*c5 - a12*c4 + a13*c3; //adjugate
+			double i01 = -a01*c5 + a02*c4 - a03*c3;
+			double i02 = a31*s5 - a32*s4 + a33*s3;
+			double i03 = -a21*s5 + a22*s4 - a23*s3;
+			double i10 = -a10*c5 + a12*c2 - a13*c1;
+			double i11 = a00*c5 - a02*c2 + a03*c1;
+			double i12 = -a30*s5 + a32*s2 - a33*s1;
+			double i13 = a20*s5 - a22*s2 + a23*s1;
+			double i20 = a10*c4 - a11*c2 + a13*c0;
+			double i21 = -a00*c4 + a01*c2 - a03*c0;
+			double i22 = a30*s4 - a31*s2 + a33*s0;
+			double i23 = -a20*s4 + a21*s2 - a23*s0;
+			double i30 = -a10*c3 + a11*c1 - a12*c0;
+			double i31 = a00*c3 - a01*c1 + a02*c0;
+			double i32 = -a30*s3 + a31*s1 - a32*s0;
+			double i33 = a20*s3 - a21*s1 + a22*s0;
+			double maxI = Math.max(Math.max(Math.max(maxAbs(i00, i01), maxAbs(i02, i03)), Math.max(maxAbs(i10, i11), maxAbs(i12, i13))),
+					Math.max(Math.max(maxAbs(i20, i21), maxAbs(i22, i23)), Math.max(maxAbs(i30, i31), maxAbs(i32, i33))));
+			if(isSingular(1, maxI*Math.abs(r), 4)){
+				r = Double.NaN;
+				singular++;
+			}
+			r *= scale;
+			inv[bb] = i00*r;
+			inv[n+bb] = i01*r;
+			inv[2*n+bb] = i02*r;
+			inv[3*n+bb] = i03*r;
+			inv[4*n+bb] = i10*r;
+			inv[5*n+bb] = i11*r;
+			inv[6*n+bb] = i12*r;
+			inv[7*n+bb] = i13*r;
+			inv[8*n+bb] = i20*r;
+			inv[9*n+bb] = i21*r;
+			inv[10*n+bb] = i22*r;
+			inv[11*n+bb] = i23*r;
+			inv[12*n+bb] = i30*r;
+			inv[13*n+bb] = i31*r;
+			inv[14*n+bb] = i32*r;
+			inv[15*n+bb] = i33*r;
+		}
+		return singular;
+	}
+
+	/**
+	 * The work arrays of gaussJordan, kept by each thread and grown when a bigger batch needs it.
+	 */
+	private static final class Scratch {
+		double[] work = new double[0];
+		final double[] largest = new double[BLOCK], factor = new double[BLOCK], smallest = new double[BLOCK];
+
+		double[] work(int length){
+			if(work.length < length)
+				work = new double[length];
+			return work;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * Gauss-Jordan elimination with partial pivoting on [A | B] (or [A | I] to invert, when rhs is
+	 * null), for BLOCK matrices at a time; the right part ends up holding the solutions (or the
+	 * inverses) and is copied to out. The work array has the batch's layout (entry (i, j) of every
+	 * matrix of the block side by side), so scaling the pivot rows and subtracting them from the other
+	 * rows are loops over the matrices. Each matrix picks its own pivot row, so finding it and
+	 * switching rows are the steps done matrix by matrix. A block is read completely before its
+	 * results are written, so out may be a or rhs.
+	 */
+	private static int gaussJordan(double[] a, double[] rhs, double[] out, int n, int r, int count){
+		int width = n + r;
+		int blk = Math.max(1, Math.min(BLOCK, count));
+		Scratch s = scratch.get();
+		double[] work = s.work(n*width*blk); //entry (i, j) of matrix bb of the block is work[(i*width + j)*blk + bb]
+		double[] largest = s.largest, factor = s.factor, smallest = s.smallest;
+		int singular = 0;
+		for (int b0 = 0; b0 < count; b0 += blk) {
+			int m = Math.min(blk, count - b0);
+			java.util.Arrays.fill(largest, 0);
+			java.util.Arrays.fill(smallest, Double.POSITIVE_INFINITY);
+			for (int ii = 0; ii < n; ii++) {
+				for (int jj = 0; jj < n; jj++) {
+					int src = (ii*n + jj)*count + b0, dst = (ii*width + jj)*blk;
+					for (int bb = 0; bb < m; bb++) {
+						double val = a[src+bb];
+						work[dst+bb] = val;
+						largest[bb] = Math.max(largest[bb], Math.abs(val));
+					}
+				}
+				for (int jj = 0; jj < r; jj++) {
+					int dst = (ii*width + n + jj)*blk;
+					if(rhs == null){
+						java.util.Arrays.fill(work, dst, dst + m, ii == jj ? 1 : 0);
+					}
+					else{
+						System.arraycopy(rhs, (ii*r + jj)*count + b0, work, dst, m);
+					}
+				}
+			}
+
+			for (int col = 0; col < n; col++) {
+				int rowC = col*width*blk;
+				for (int bb = 0; bb < m; bb++) { //pivot of each matrix: largest entry on or below the diagonal
+					double best = Math.abs(work[rowC + col*blk + bb]);
+					int p = col;
+					for (int ii = col+1; ii < n; ii++) {
+						double val = Math.abs(work[(ii*width + col)*blk + bb]);
+						if(val > best){
+							best = val;
+							p = ii;
+						}
+					}
+					smallest[bb] = Math.min(smallest[bb], best); //NaN stays NaN
+					if(p == col)
+						continue;
+					for (int jj = col; jj < width; jj++) {
+						int x = rowC + jj*blk + bb, y = (p*width + jj)*blk + bb;
+						double tmp = work[x];
+						work[x] = work[y];
+						work[y] = tmp;
+					}
+				}
+				for (int bb = 0; bb < m; bb++)
+					factor[bb] = 1/work[rowC + col*blk + bb]; //a zero pivot gives infinity and then NaN, caught below
+				for (int jj = col; jj < width; jj++) {
+					int off = rowC + jj*blk;
+					for (int bb = 0; bb < m; bb++)
+						work[off+bb] *= factor[bb];
+				}
+				for (int ii = 0; ii < n; ii++) {
+					if(ii == col)
+						continue;
+					int rowI = ii*width*blk;
+					for (int bb = 0; bb < m; bb++)
+						factor[bb] = work[rowI + col*blk + bb];
+					for (int jj = col; jj < width; jj++) {
+						int oi = rowI + jj*blk, oc = rowC + jj*blk;
+						for (int bb = 0; bb < m; bb++)
+							work[oi+bb] -= factor[bb]*work[oc+bb];
+					}
+				}
+			}
+
+			java.util.Arrays.fill(factor, 0); //now the largest entry of each inverse (or one over the smallest pivot)
+			for (int ii = 0; ii < n; ii++) {
+				for (int jj = 0; jj < r; jj++) {
+					int src = (ii*width + n + jj)*blk, dst = (ii*r + jj)*count + b0;
+					for (int bb = 0; bb < m; bb++) {
+						double val = work[src+bb];
+						out[dst+bb] = val;
+						if(rhs == null)
+							factor[bb] = Math.max(factor[bb], Math.abs(val)); //NaN stays NaN
+					}
+				}
+			}
+			for (int bb = 0; bb < m; bb++) {
+				if(isSingular(largest[bb], rhs == null ? factor[bb] : 1/smallest[bb], n)){
+					singular++;
+					for (int ee = 0; ee < n*r; ee++)
+						out[ee*count + b0 + bb] = Double.NaN;
+				}
+			}
+		}
+		return singular;
+	}
+}
@@ -0,0 +1,91 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.MatrixBatch;
+
+/**
+ * This class tests MatrixBatch on batches of 100 random matrices of each size from 1 to 7 (the
+ * sizes with their own unrolled inverse, and the Gauss-Jordan path above them), the last matrix of
+ * each batch singular: A A^-1 = I and |b - Ax| / |b| scaled by the condition of each matrix, NaN
+ * for the singular one, a solve written over its own right-hand sides, and the batch product.
+ *
+ * @author Andrew M.
+ */
+public class MatrixBatchTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(31);
+		for (int size = 1; size <= 7; size++)
+			checkBatch(size, rand);
+
+		Matrix[] left = new Matrix[10], right = new Matrix[10];
+		for (int bb = 0; bb < left.length; bb++) {
+			left[bb] = randomMatrix(4, 6, rand);
+			right[bb] = randomMatrix(6, 3, rand);
+		}
+		MatrixBatch product = MatrixBatch.fromMatrices(left).times(MatrixBatch.fromMatrices(right));
+		double error = 0;
+		for (int bb = 0; bb < left.length; bb++)
+			error = Math.max(error, maxDifference(product.getMatrix(bb), left[bb].times(right[bb])));
+		check("batch times", error < 1e-14);
+
+		finish();
+	}
+
+	/**
+	 * Inverts and solves a batch of 100 random matrices of one size, the last of them singular.
+	 */
+	private static void checkBatch(int size, Random rand){
+		int count = 100;
+		Matrix[] mats = new Matrix[count];
+		for (int bb = 0; bb < count; bb++)
+			mats[bb] = randomMatrix(size, size, rand);
+		mats[count-1] = new Matrix(size, size); //all zeros
+		MatrixBatch batch = MatrixBatch.fromMatrices(mats);
+		MatrixBatch inverse = new MatrixBatch(count, size, size);
+		int singular = batch.invert(inverse);
+		MatrixBatch rhs = new MatrixBatch(count, size, 2);
+		for (int bb = 0; bb < count; bb++)
+			for (int ii = 0; ii < size; ii++)
+				for (int jj = 0; jj < 2; jj++)
+					rhs.set(bb, ii, jj, rand.nextDouble()*2 - 1);
+		Matrix[] bs = new Matrix[count];
+		for (int bb = 0; bb < count; bb++)
+			bs[bb] = rhs.getMatrix(bb);
+		MatrixBatch solution = batch.solve(rhs);
+		int solveSingular = batch.solve(rhs, rhs); //overwrites the right-hand sides
+
+		double invError = 0, solveError = 0, inPlace = 0;
+		for (int bb = 0; bb < count-1; bb++) {
+			Matrix inv = inverse.getMatrix(bb);
+			double cond = condition(mats[bb], inv);
+			invError = Math.max(invError, identityError(mats[bb].times(inv)) / cond);
+			solveError = Math.max(solveError, relative(mats[bb], solution.getMatrix(bb), bs[bb]) / cond);
+			inPlace = Math.max(inPlace, maxDifference(rhs.getMatrix(bb), solution.getMatrix(bb)));
+		}
+		boolean nan = Double.isNaN(inverse.get(count-1, 0, 0)) && Double.isNaN(solution.get(count-1, 0, 0)) && Double.isNaN(rhs.get(count-1, 0, 0));
+		check(size + "x" + size + " batch invert", invError < 1e-12 && singular == 1 && nan);
+		check(size + "x" + size + " batch solve", solveError < 1e-12);
+		check(size + "x" + size + " batch solve over its right-hand sides", inPlace == 0 && solveSingular == 1);
+	}
+
+	/**
+	 * max|A| * max|A^-1| * n, which scales the error allowed for random (sometimes badly
+	 * conditioned) small matrices.
+	 */
+	private static double condition(Matrix a, Matrix inv){
+		return maxAbs(a) * maxAbs(inv) * a.m.length;
+	}
+
+	private static double maxAbs(Matrix a){
+		double max = 0;
+		for (double[] row : a.m)
+			for (double d : row)
+				max = Math.max(max, Math.abs(d));
+		return max;
+	}
+}
@@ -0,0 +1,359 @@
+package matrixmath;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MatrixCache class keeps results derived from a Matrix (its LU factors, inverse, determinant,
+ * rank and norms) so that asking for them again does not redo the O(n^3) work, for example when
+ * the same coefficient matrix is solved against many right-hand sides or inverted twice.
+ *
+ * The cache is off until a capacity is set. It holds at most that many matrices and drops the least
+ * recently used one when it is full. A result is only reused while the matrix is unchanged: each
+ * entry remembers the matrix's version (see Matrix.getVersion, bumped by setEntry and the in-place
+ * operations), its array m, the array of every row and a checksum of the values. The checksum is
+ * compared on every lookup, so values written straight into m (a.m[0][0] += 10) are noticed even
+ * without Matrix.markModified; it costs one pass over the matrix, little next to the O(n^3) work a
+ * hit saves.
+ *
+ * With the cache off every method simply computes its result, without taking the cache's lock or
+ * counting a miss, so threads inverting different matrices never wait for each other. When it is on,
+ * matrices are matched by identity, and the cache keeps them reachable until they are evicted or the
+ * cache is cleared.
+ *
+ * @method lu
+ * 	The LU factors of a matrix.
+ * @method inverse
+ * 	The inverse of a matrix (a copy each time).
+ * @method determinant
+ * 	The determinant of a matrix.
+ * @method rank
+ * 	The rank of a matrix.
+ * @method norm1, normInf, normFrobenius
+ * 	Largest column sum, largest row sum and square root of the sum of squares.
+ * @method setCapacity
+ * 	Sets how many matrices are kept (0 turns the cache off).
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixCache {
+	private static volatile int capacity = 0; //matrices kept; 0 means the cache is off
+	private static final LongAdder hits = new LongAdder(), misses = new LongAdder();
+	private static final LinkedHashMap<Matrix, Entry> entries = new LinkedHashMap<Matrix, Entry>(16, 0.75f, true) { //access order gives LRU
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Matrix, Entry> eldest){
+			return size() > capacity;
+		}
+	};
+
+	private MatrixCache(){
+	}
+
+	/**
+	 * Results for one state of a matrix. Fields are filled in as they are asked for.
+	 */
+	private static final class Entry {
+		final long version; //state of the matrix the results belong to
+		final double[][] array;
+		final double[][] rowArrays;
+		final long checksum; //of the values
+		volatile LUDecomposition lu;
+		volatile Matrix inverse;
+		volatile Integer rank;
+		volatile double norm1 = Double.NaN, normInf = Double.NaN, normFrobenius = Double.NaN;
+
+		Entry(Matrix a, long checksum){
+			version = a.getVersion();
+			array = a.m;
+			rowArrays = a.m.clone();
+			this.checksum = checksum;
+		}
+
+		boolean matches(Matrix a, long sum){
+			if(a.getVersion() != version || a.m != array || a.m.length != rowArrays.length || sum != checksum)
+				return false;
+			for (int ii = 0; ii < rowArrays.length; ii++) {
+				if(a.m[ii] != rowArrays[ii])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Sets how many matrices are kept. Making it smaller drops the least recently used ones.
+	 *
+	 * @param n
+	 * 	The number of matrices (0 turns the cache off and empties it).
+	 */
+	public static synchronized void setCapacity(int n){
+		if(n < 0){
+			throw new IllegalArgumentException("capacity cannot be negative");
+		}
+		capacity = n;
+		java.util.Iterator<Matrix> it = entries.keySet().iterator();
+		while(entries.size() > capacity && it.hasNext()){ //oldest first
+			it.next();
+			it.remove();
+		}
+	}
+
+	public static int getCapacity(){
+		return capacity;
+	}
+
+	public static boolean isEnabled(){
+		return capacity > 0;
+	}
+
+	/**
+	 * Empties the cache and resets the hit and miss counts.
+	 */
+	public static synchronized void clear(){
+		entries.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+	/**
+	 * Drops the results for one matrix.
+	 *
+	 * @param a
+	 * 	The matrix.
+	 */
+	public static synchronized void invalidate(Matrix a){
+		entries.remove(a);
+	}
+
+	/**
+	 * @return
+	 * 	How many results were found in the cache since it was last cleared.
+	 */
+	public static long getHits(){
+		return hits.sum();
+	}
+
+	/**
+	 * @return
+	 * 	How many results had to be computed since the cache was last cleared.
+	 */
+	public static long getMisses(){
+		return misses.sum();
+	}
+
+	/**
+	 * Finds the entry for the current state of a matrix, replacing a stale one, or null when the
+	 * cache is off. The checksum is computed before taking the lock.
+	 */
+	private static Entry entry(Matrix a){
+		if(capacity == 0)
+			return null;
+		return entry(a, checksum(a));
+	}
+
+	private static synchronized Entry entry(Matrix a, long sum){
+		if(capacity == 0) //turned off since the check above
+			return null;
+		Entry e = entries.get(a);
+		if(e == null || !e.matches(a, sum)){
+			e = new Entry(a, sum);
+			entries.put(a, e);
+		}
+		return e;
+	}
+
+	/**
+	 * Hash of the bits of every value (a change to any value changes it, barring a collision).
+	 */
+	private static long checksum(Matrix a){
+		long h = 0;
+		for (double[] row : a.m) {
+			for (double d : row) {
+				h = (h ^ Double.doubleToLongBits(d)) * 0x9E3779B97F4A7C15L; //the multiply mixes bits upward,
+				h ^= h >>> 29; //the shift brings the high ones back down
+			}
+		}
+		return h;
+	}
+
+	private static void count(boolean hit){
+		(hit ? hits : misses).increment();
+	}
+
+	/**
+	 * The LU factors of a square matrix (shared, so do not rely on them being a private copy).
+	 *
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The factors.
+	 */
+	public static LUDecomposition lu(Matrix a){
+		Entry e = entry(a);
+		if(e == null)
+			return new LUDecomposition(a);
+		LUDecomposition lu = e.lu;
+		count(lu != null);
+		if(lu == null)
+			e.lu = lu = new LUDecomposition(a);
+		return lu;
+	}
+
+	/**
+	 * The inverse of a square matrix, as Matrix.invert computes it. A new copy is returned every
+	 * time so that callers may change it.
+	 *
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	A new matrix with the inverse.
+	 */
+	public static Matrix inverse(Matrix a){
+		return inverse(a, null);
+	}
+
+	/**
+	 * Like inverse, also filling in the pivoting details of a flight recorder event (if not null).
+	 */
+	static Matrix inverse(Matrix a, MatrixEvents.Invert event){
+		Entry e = entry(a);
+		Matrix inv = e == null ? null : e.inverse;
+		boolean hit = (inv != null);
+		if(e != null)
+			count(hit);
+		LUDecomposition lu = e == null ? null : e.lu;
+		if(!hit){
+			if(lu == null)
+				lu = new LUDecomposition(a);
+			if(e != null)
+				e.lu = lu;
+			inv = lu.isSingular() ? a.invertByRowreduce() : lu.inverse();
+		}
+		if(event != null){
+			event.cached = hit;
+			event.rowSwaps = lu.getRowSwaps(); //a cached inverse always has its factors in the same entry
+			event.singular = lu.isSingular();
+		}
+		if(e == null)
+			return inv;
+		e.inverse = inv;
+		return inv.clone();
+	}
+
+	/**
+	 * The determinant of a square matrix (from its LU factors).
+	 *
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The determinant.
+	 */
+	public static double determinant(Matrix a){
+		return lu(a).determinant();
+	}
+
+	/**
+	 * The rank of a matrix (the number of pivots found by rowreducing it).
+	 *
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The rank.
+	 */
+	public static int rank(Matrix a){
+		Entry e = entry(a);
+		if(e == null)
+			return computeRank(a);
+		Integer rank = e.rank;
+		count(rank != null);
+		if(rank == null)
+			e.rank = rank = computeRank(a);
+		return rank;
+	}
+
+	/**
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The largest sum of absolute values in a column.
+	 */
+	public static double norm1(Matrix a){
+		Entry e = entry(a);
+		if(e == null)
+			return computeNorm1(a);
+		double norm = e.norm1;
+		count(!Double.isNaN(norm));
+		if(Double.isNaN(norm))
+			e.norm1 = norm = computeNorm1(a);
+		return norm;
+	}
+
+	/**
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The largest sum of absolute values in a row.
+	 */
+	public static double normInf(Matrix a){
+		Entry e = entry(a);
+		if(e == null)
+			return computeNormInf(a);
+		double norm = e.normInf;
+		count(!Double.isNaN(norm));
+		if(Double.isNaN(norm))
+			e.normInf = norm = computeNormInf(a);
+		return norm;
+	}
+
+	/**
+	 * @param a
+	 * 	The matrix.
+	 * @return
+	 * 	The square root of the sum of the squares of the entries.
+	 */
+	public static double normFrobenius(Matrix a){
+		Entry e = entry(a);
+		if(e == null)
+			return computeNormFrobenius(a);
+		double norm = e.normFrobenius;
+		count(!Double.isNaN(norm));
+		if(Double.isNaN(norm))
+			e.normFrobenius = norm = computeNormFrobenius(a);
+		return norm;
+	}
+
+	private static int computeRank(Matrix a){
+		return new Elimination(new FlatMatrix(a)).reduce(Math.min(a.rows, a.cols));
+	}
+
+	private static double computeNorm1(Matrix a){
+		double[] sums = new double[a.cols];
+		for (double[] row : a.m)
+			for (int jj = 0; jj < a.cols; jj++)
+				sums[jj] += Math.abs(row[jj]);
+		double norm = 0;
+		for (double sum : sums)
+			norm = Math.max(norm, sum);
+		return norm;
+	}
+
+	private static double computeNormInf(Matrix a){
+		double norm = 0;
+		for (double[] row : a.m) {
+			double sum = 0;
+			for (int jj = 0; jj < a.cols; jj++)
+				sum += Math.abs(row[jj]);
+			norm = Math.max(norm, sum);
+		}
+		return norm;
+	}
+
+	private static double computeNormFrobenius(Matrix a){
+		double sum = 0;
+		for (double[] row : a.m)
+			sum += RowKernels.ACTIVE.dot(row, 0, row, 0, a.cols);
+		return Math.sqrt(sum);
+	}
+}
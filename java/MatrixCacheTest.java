@@ -0,0 +1,63 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.MatrixCache;
+
+/**
+ * This class tests MatrixCache: inverting an unchanged matrix again is a hit and gives the same
+ * inverse, a value written straight into m (not through setEntry) or through setEntry is noticed and
+ * the inverse is computed again, the least recently used matrix is dropped when the cache is full,
+ * and with the cache off nothing is counted.
+ *
+ * @author Andrew M.
+ */
+public class MatrixCacheTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(41);
+		int n = 40;
+		Matrix a = randomMatrix(n, n, rand);
+		MatrixCache.setCapacity(4);
+		MatrixCache.clear();
+		try {
+			Matrix first = a.invert();
+			Matrix again = a.invert();
+			check("an unchanged matrix is a hit", MatrixCache.getHits() == 1 && MatrixCache.getMisses() == 1 && maxDifference(first, again) == 0);
+			again.m[0][0] += 1; //a copy each time, so this must not reach the cache
+			check("the cached inverse is copied", maxDifference(a.invert(), first) == 0);
+
+			a.m[0][0] += 10; //no setEntry, no version bump
+			long misses = MatrixCache.getMisses();
+			Matrix changed = a.invert();
+			check("a direct write into m is noticed", MatrixCache.getMisses() == misses + 1 && identityError(a.times(changed)) < 1e-10);
+			a.setEntry(1, 1, a.m[1][1] - 3);
+			check("a write through setEntry is noticed", identityError(a.times(a.invert())) < 1e-10 && MatrixCache.getMisses() == misses + 2);
+
+			Matrix[] others = new Matrix[4];
+			for (int ii = 0; ii < others.length; ii++) {
+				others[ii] = randomMatrix(5, 5, rand);
+				MatrixCache.determinant(others[ii]);
+			}
+			misses = MatrixCache.getMisses();
+			MatrixCache.determinant(others[3]);
+			a.invert(); //a was the least recently used, so it was dropped
+			check("the least recently used matrix is dropped", MatrixCache.getMisses() == misses + 1);
+
+			MatrixCache.setCapacity(0);
+			MatrixCache.clear();
+			a.invert();
+			a.invert();
+			check("nothing is counted with the cache off", MatrixCache.getHits() == 0 && MatrixCache.getMisses() == 0 && !MatrixCache.isEnabled());
+		}
+		finally {
+			MatrixCache.setCapacity(0);
+			MatrixCache.clear();
+		}
+
+		finish();
+	}
+}
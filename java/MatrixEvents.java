@@ -0,0 +1,101 @@
+package matrixmath;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The MatrixEvents class holds the Java Flight Recorder events written by the long-running
+ * operations, so that in a recording their time is labelled with the size of the problem that
+ * explains it: matrix dimensions, polynomial degree and the pivoting done (row switches, rank,
+ * whether the matrix was singular). Riemann sums have their own event in riemann_sum
+ * (RiemannSumEvent), so that package does not depend on this one.
+ *
+ * Each event has a threshold of 10 ms, so only slow calls are recorded; it can be changed in the
+ * recording settings (for example jdk.jfr's "matrixmath.Invert#threshold=1 ms"). When no
+ * recording is running an event costs little more than a check of whether it is enabled.
+ *
+ * @method Multiply
+ * 	Matrix.times.
+ * @method Invert
+ * 	Matrix.invert.
+ * @method Rowreduce
+ * 	Matrix.rowreduce.
+ * @method Fit
+ * 	Interpolation.fit.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixEvents {
+	private MatrixEvents(){
+	}
+
+	@Name("matrixmath.Multiply")
+	@Label("Matrix Multiply")
+	@Category({"Matrix Math"})
+	@Description("A matrix product (Matrix.times)")
+	@Threshold("10 ms")
+	public static class Multiply extends Event {
+		@Label("Rows")
+		public int rows;
+		@Label("Inner Dimension")
+		public int inner;
+		@Label("Columns")
+		public int cols;
+		@Label("Estimated FLOPs")
+		public long flops;
+	}
+
+	@Name("matrixmath.Invert")
+	@Label("Matrix Invert")
+	@Category({"Matrix Math"})
+	@Description("Inverting a square matrix (Matrix.invert)")
+	@Threshold("10 ms")
+	public static class Invert extends Event {
+		@Label("Size")
+		public int size;
+		@Label("Row Switches")
+		@Description("Row switches done by partial pivoting in the LU factorization")
+		public int rowSwaps;
+		@Label("Singular")
+		@Description("A pivot was zero, so the rowreduced identity was returned")
+		public boolean singular;
+		@Label("From Cache")
+		public boolean cached;
+	}
+
+	@Name("matrixmath.Rowreduce")
+	@Label("Matrix Rowreduce")
+	@Category({"Matrix Math"})
+	@Description("Gauss-Jordan elimination with partial pivoting (Matrix.rowreduce)")
+	@Threshold("10 ms")
+	public static class Rowreduce extends Event {
+		@Label("Rows")
+		public int rows;
+		@Label("Columns")
+		public int cols;
+		@Label("Pivot Columns")
+		@Description("Columns that were reduced")
+		public int pivotColumns;
+		@Label("Rank")
+		public int rank;
+		@Label("Row Switches")
+		public int rowSwaps;
+	}
+
+	@Name("matrixmath.Fit")
+	@Label("Polynomial Fit")
+	@Category({"Matrix Math"})
+	@Description("Interpolating a polynomial through points (Interpolation.fit)")
+	@Threshold("10 ms")
+	public static class Fit extends Event {
+		@Label("Degree")
+		public int degree;
+		@Label("Row Switches")
+		public int rowSwaps;
+	}
+}
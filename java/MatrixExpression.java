@@ -0,0 +1,545 @@
+package matrixmath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MatrixExpression class builds matrix arithmetic lazily: plus, times, scale, transpose and
+ * the row operations only record what to do, as a small graph of operations, and nothing is
+ * computed until evaluate. Because the whole expression is known at that point, evaluate can
+ * avoid most of the temporary matrices that calling Matrix methods one at a time would make:
+ *
+ * 	- a sum is accumulated straight into the result, and a product in a sum is added by the
+ * 	  multiply kernel itself (c + a*b makes no temporary for a*b),
+ * 	- scale is folded into the factor the kernels already multiply by (2*(a*b) costs nothing extra),
+ * 	- a chain of products a*b*c*... is multiplied in the order with the fewest multiply-adds,
+ * 	  found from the shapes (the classic matrix-chain order), so (n x 1)(1 x n)(n x 1) is done
+ * 	  as (n x 1)((1 x n)(n x 1)),
+ * 	- row operations are done in place on the result.
+ *
+ * 	Matrix r = a.lazy().times(b).plus(c.lazy().scale(2)).evaluate();
+ *
+ * Leaves refer to the Matrix or FlatMatrix they were made from (not copies), so change those only
+ * after evaluating. The kernels read the rows of a Matrix where they are (see Rows), so neither kind
+ * of leaf is copied, and evaluate or evaluateInto write the result straight into the destination;
+ * the only temporaries are the intermediate products of a chain of three or more factors, the value
+ * of a transposed sum or product, one of two transposed factors multiplied together, and the value
+ * of row operations added to a sum.
+ *
+ * @method of
+ * 	Starts an expression from a matrix.
+ * @method plus
+ * 	Adds another expression.
+ * @method times
+ * 	Multiplies by another expression.
+ * @method scale
+ * 	Multiplies by a number.
+ * @method transpose
+ * 	Transposes.
+ * @method switchRows, scalarTimesRow, linearCombRows
+ * 	Row operations on the result.
+ * @method evaluate, evaluateFlat
+ * 	Computes the value into a new Matrix or FlatMatrix.
+ * @method evaluateInto
+ * 	Computes the value into a Matrix or FlatMatrix the caller owns.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public abstract class MatrixExpression {
+	final int rows; //shape of the value
+	final int cols;
+
+	MatrixExpression(int rows, int cols){
+		this.rows = rows;
+		this.cols = cols;
+	}
+
+	/**
+	 * @param m
+	 * 	The matrix (referred to, not copied).
+	 * @return
+	 * 	An expression whose value is m.
+	 */
+	public static MatrixExpression of(Matrix m){
+		return new Leaf(m);
+	}
+
+	/**
+	 * @param m
+	 * 	The matrix (referred to, not copied).
+	 * @return
+	 * 	An expression whose value is m.
+	 */
+	public static MatrixExpression of(FlatMatrix m){
+		return new Leaf(m);
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * @param that
+	 * 	Expression of the same shape.
+	 * @return
+	 * 	The expression this + that.
+	 */
+	public MatrixExpression plus(MatrixExpression that){
+		if(rows != that.rows || cols != that.cols){
+			throw new IllegalArgumentException("cannot add a " + rows + "x" + cols + " and a " + that.rows + "x" + that.cols + " matrix");
+		}
+		return new Sum(this, that);
+	}
+
+	/**
+	 * @param that
+	 * 	Expression with as many rows as this has columns.
+	 * @return
+	 * 	The expression this * that.
+	 */
+	public MatrixExpression times(MatrixExpression that){
+		if(cols != that.rows){
+			throw new IllegalArgumentException("cannot multiply a " + rows + "x" + cols + " by a " + that.rows + "x" + that.cols + " matrix");
+		}
+		List<MatrixExpression> factors = new ArrayList<MatrixExpression>();
+		Product.addFactors(this, factors);
+		Product.addFactors(that, factors);
+		return new Product(factors);
+	}
+
+	/**
+	 * @param that
+	 * 	Matrix of the same shape.
+	 * @return
+	 * 	The expression this + that.
+	 */
+	public MatrixExpression plus(Matrix that){
+		return plus(of(that));
+	}
+
+	/**
+	 * @param that
+	 * 	Matrix with as many rows as this has columns.
+	 * @return
+	 * 	The expression this * that.
+	 */
+	public MatrixExpression times(Matrix that){
+		return times(of(that));
+	}
+
+	/**
+	 * @param alpha
+	 * 	The number to multiply by.
+	 * @return
+	 * 	The expression alpha * this.
+	 */
+	public MatrixExpression scale(double alpha){
+		if(this instanceof Scaled){ //2*(3*a) is 6*a
+			Scaled s = (Scaled)this;
+			return new Scaled(alpha*s.alpha, s.inner);
+		}
+		return new Scaled(alpha, this);
+	}
+
+	/**
+	 * @return
+	 * 	The expression this^T.
+	 */
+	public MatrixExpression transpose(){
+		if(this instanceof Transposed) //(a^T)^T is a
+			return ((Transposed)this).inner;
+		return new Transposed(this);
+	}
+
+	/**
+	 * @return
+	 * 	This expression with two rows switched.
+	 */
+	public MatrixExpression switchRows(int firstRow, int secondRow){
+		return RowOps.append(this, RowOps.SWITCH, 0, firstRow, secondRow);
+	}
+
+	/**
+	 * @return
+	 * 	This expression with one row multiplied by a scalar.
+	 */
+	public MatrixExpression scalarTimesRow(double scalar, int rownumber){
+		return RowOps.append(this, RowOps.SCALE, scalar, rownumber, rownumber);
+	}
+
+	/**
+	 * @return
+	 * 	This expression with scalar times firstrow added to secondrow.
+	 */
+	public MatrixExpression linearCombRows(double scalar, int firstrow, int secondrow){
+		return RowOps.append(this, RowOps.COMBINE, scalar, firstrow, secondrow);
+	}
+
+	/**
+	 * Computes the value.
+	 *
+	 * @return
+	 * 	New Matrix with the value.
+	 */
+	public Matrix evaluate(){
+		Matrix dest = new Matrix(rows, cols);
+		evaluateInto(dest);
+		return dest;
+	}
+
+	/**
+	 * Computes the value.
+	 *
+	 * @return
+	 * 	New FlatMatrix with the value.
+	 */
+	public FlatMatrix evaluateFlat(){
+		FlatMatrix dest = new FlatMatrix(rows, cols);
+		evaluateInto(dest);
+		return dest;
+	}
+
+	/**
+	 * Computes the value into a matrix the caller owns (which must not be a leaf of this expression).
+	 *
+	 * @param dest
+	 * 	Matrix of the same shape (overwritten).
+	 */
+	public void evaluateInto(FlatMatrix dest){
+		evaluateInto(new Rows(dest));
+	}
+
+	/**
+	 * Computes the value into a matrix the caller owns (which must not be a leaf of this expression).
+	 *
+	 * @param dest
+	 * 	Matrix of the same shape (overwritten).
+	 */
+	public void evaluateInto(Matrix dest){
+		evaluateInto(new Rows(dest));
+		dest.markModified();
+	}
+
+	private void evaluateInto(Rows dest){
+		if(dest.rows != rows || dest.cols != cols){
+			throw new IllegalArgumentException("destination is " + dest.rows + "x" + dest.cols + ", expected " + rows + "x" + cols);
+		}
+		eval(dest, 1, false);
+	}
+
+	/**
+	 * The fused kernel interface: dest = alpha*value, or dest += alpha*value if accumulate is true.
+	 */
+	abstract void eval(Rows dest, double alpha, boolean accumulate);
+
+	/**
+	 * The value as rows the multiply kernels can read (no copy for leaves).
+	 */
+	Rows operand(){
+		return new Rows(evaluateFlat());
+	}
+
+	/**
+	 * A Matrix or FlatMatrix.
+	 */
+	private static class Leaf extends MatrixExpression {
+		private final Rows value;
+
+		Leaf(Matrix m){
+			super(m.rows, m.cols);
+			value = new Rows(m);
+		}
+
+		Leaf(FlatMatrix m){
+			super(m.rows, m.cols);
+			value = new Rows(m);
+		}
+
+		@Override
+		void eval(Rows dest, double alpha, boolean accumulate){
+			RowKernels kernels = RowKernels.ACTIVE;
+			for (int ii = 0; ii < rows; ii++) {
+				double[] d = dest.array(ii);
+				int start = dest.start(ii);
+				if(!accumulate){
+					System.arraycopy(value.array(ii), value.start(ii), d, start, cols);
+					if(alpha != 1)
+						kernels.scale(alpha, d, start, cols);
+				}
+				else{
+					kernels.axpy(alpha, value.array(ii), value.start(ii), d, start, cols);
+				}
+			}
+		}
+
+		@Override
+		Rows operand(){
+			return value;
+		}
+	}
+
+	/**
+	 * a + b: both are accumulated into the same destination.
+	 */
+	private static class Sum extends MatrixExpression {
+		private final MatrixExpression a, b;
+
+		Sum(MatrixExpression a, MatrixExpression b){
+			super(a.rows, a.cols);
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		void eval(Rows dest, double alpha, boolean accumulate){
+			MatrixExpression first = a, second = b;
+			if(a instanceof Product && !(b instanceof Product)){ //write the other term first, so the product is added instead of zeroing dest
+				first = b;
+				second = a;
+			}
+			first.eval(dest, alpha, accumulate);
+			second.eval(dest, alpha, true);
+		}
+	}
+
+	/**
+	 * alpha * a: the factor is passed down to whatever computes a.
+	 */
+	private static class Scaled extends MatrixExpression {
+		private final double alpha;
+		private final MatrixExpression inner;
+
+		Scaled(double alpha, MatrixExpression inner){
+			super(inner.rows, inner.cols);
+			this.alpha = alpha;
+			this.inner = inner;
+		}
+
+		@Override
+		void eval(Rows dest, double factor, boolean accumulate){
+			inner.eval(dest, factor*alpha, accumulate);
+		}
+	}
+
+	/**
+	 * a^T, copied element by element from the value of a.
+	 */
+	private static class Transposed extends MatrixExpression {
+		private final MatrixExpression inner;
+
+		Transposed(MatrixExpression inner){
+			super(inner.cols, inner.rows);
+			this.inner = inner;
+		}
+
+		@Override
+		void eval(Rows dest, double alpha, boolean accumulate){
+			Rows value = inner.operand();
+			if(!accumulate && value.isFlat() && dest.isFlat()){
+				FlatMatrix d = dest.toFlatView();
+				Transpose.transpose(value.toFlatView(), d); //cache-oblivious copy, then scale in place
+				if(alpha != 1){
+					for (int ii = 0; ii < rows; ii++)
+						RowKernels.ACTIVE.scale(alpha, d.data, d.offset + ii*d.stride, cols);
+				}
+				return;
+			}
+			for (int ii = 0; ii < rows; ii++) {
+				double[] d = dest.array(ii);
+				int start = dest.start(ii);
+				if(accumulate){
+					for (int jj = 0; jj < cols; jj++)
+						d[start+jj] += alpha*value.get(jj, ii);
+				}
+				else{
+					for (int jj = 0; jj < cols; jj++)
+						d[start+jj] = alpha*value.get(jj, ii);
+				}
+			}
+		}
+
+		/**
+		 * The transpose as a new FlatMatrix.
+		 */
+		static Rows copy(Rows value){
+			FlatMatrix t = new FlatMatrix(value.cols, value.rows);
+			if(value.isFlat()){
+				Transpose.transpose(value.toFlatView(), t);
+			}
+			else{
+				for (int ii = 0; ii < value.rows; ii++) {
+					double[] row = value.array(ii);
+					for (int jj = 0; jj < value.cols; jj++)
+						t.data[jj*t.stride + ii] = row[jj];
+				}
+			}
+			return new Rows(t);
+		}
+	}
+
+	/**
+	 * A chain of two or more factors multiplied together.
+	 */
+	private static class Product extends MatrixExpression {
+		private final List<MatrixExpression> factors;
+
+		Product(List<MatrixExpression> factors){
+			super(factors.get(0).rows, factors.get(factors.size()-1).cols);
+			this.factors = factors;
+		}
+
+		/**
+		 * Flattens nested products so the whole chain can be reordered.
+		 */
+		static void addFactors(MatrixExpression e, List<MatrixExpression> factors){
+			if(e instanceof Product)
+				factors.addAll(((Product)e).factors);
+			else
+				factors.add(e);
+		}
+
+		@Override
+		void eval(Rows dest, double alpha, boolean accumulate){
+			int k = factors.size();
+			int[] dims = new int[k+1];
+			for (int ii = 0; ii < k; ii++)
+				dims[ii] = factors.get(ii).rows;
+			dims[k] = factors.get(k-1).cols;
+			int[][] split = chainOrder(dims);
+			Rows[] values = new Rows[k];
+			boolean[] transposed = new boolean[k]; //values[i] is then the matrix before transposing
+			for (int ii = 0; ii < k; ii++) {
+				MatrixExpression f = factors.get(ii);
+				transposed[ii] = f instanceof Transposed;
+				values[ii] = transposed[ii] ? ((Transposed)f).inner.operand() : f.operand();
+			}
+			if(!accumulate)
+				dest.zero();
+			multiplyChain(values, transposed, split, 0, k-1, alpha, dest);
+		}
+
+		/**
+		 * Adds alpha times the product of values[i..j], in the order chosen by split, to dest.
+		 * A transposed factor multiplied on its own is never copied: the transpose-aware kernels of
+		 * MatrixMultiply read it as stored.
+		 */
+		private static void multiplyChain(Rows[] values, boolean[] transposed, int[][] split, int i, int j, double alpha, Rows dest){
+			int s = split[i][j];
+			boolean leftT = (s == i && transposed[i]);
+			boolean rightT = (s+1 == j && transposed[j]);
+			if(leftT){
+				MatrixMultiply.transposeMultiplyAdd(alpha, values[i], value(values, transposed, split, s+1, j), dest);
+			}
+			else if(rightT){
+				MatrixMultiply.multiplyTransposedAdd(alpha, value(values, transposed, split, i, s), values[j], dest);
+			}
+			else{
+				MatrixMultiply.multiplyAdd(alpha, value(values, transposed, split, i, s), value(values, transposed, split, s+1, j), dest);
+			}
+		}
+
+		/**
+		 * The product of values[i..j] as a new matrix (or the factor itself if i == j).
+		 */
+		private static Rows value(Rows[] values, boolean[] transposed, int[][] split, int i, int j){
+			if(i == j)
+				return transposed[i] ? Transposed.copy(values[i]) : values[i];
+			int rows = transposed[i] ? values[i].cols : values[i].rows;
+			int cols = transposed[j] ? values[j].rows : values[j].cols;
+			Rows product = new Rows(new FlatMatrix(rows, cols));
+			multiplyChain(values, transposed, split, i, j, 1, product);
+			return product;
+		}
+
+		/**
+		 * Matrix-chain ordering by dynamic programming: cost[i][j] is the fewest multiply-adds for
+		 * factors i..j, and split[i][j] is where that product is best split.
+		 */
+		private static int[][] chainOrder(int[] dims){
+			int k = dims.length - 1;
+			long[][] cost = new long[k][k];
+			int[][] split = new int[k][k];
+			for (int len = 2; len <= k; len++) {
+				for (int ii = 0; ii + len - 1 < k; ii++) {
+					int jj = ii + len - 1;
+					cost[ii][jj] = Long.MAX_VALUE;
+					for (int ss = ii; ss < jj; ss++) {
+						long c = cost[ii][ss] + cost[ss+1][jj] + (long)dims[ii]*dims[ss+1]*dims[jj+1];
+						if(c < cost[ii][jj]){
+							cost[ii][jj] = c;
+							split[ii][jj] = ss;
+						}
+					}
+				}
+			}
+			return split;
+		}
+	}
+
+	/**
+	 * Row operations applied in order, in place, to the value of an expression.
+	 */
+	private static class RowOps extends MatrixExpression {
+		static final int SWITCH = 0, SCALE = 1, COMBINE = 2;
+		private final MatrixExpression inner;
+		private final int[] kind, first, second;
+		private final double[] scalar;
+
+		private RowOps(MatrixExpression inner, int[] kind, double[] scalar, int[] first, int[] second){
+			super(inner.rows, inner.cols);
+			this.inner = inner;
+			this.kind = kind;
+			this.scalar = scalar;
+			this.first = first;
+			this.second = second;
+		}
+
+		/**
+		 * Adds one operation, merging with an existing list so long sequences stay one node.
+		 */
+		static RowOps append(MatrixExpression e, int op, double s, int r1, int r2){
+			if(r1 < 0 || r2 < 0 || r1 >= e.rows || r2 >= e.rows){
+				throw new IndexOutOfBoundsException("row outside of a " + e.rows + "x" + e.cols + " matrix");
+			}
+			if(e instanceof RowOps){
+				RowOps ops = (RowOps)e;
+				int n = ops.kind.length;
+				int[] kind = java.util.Arrays.copyOf(ops.kind, n+1);
+				double[] scalar = java.util.Arrays.copyOf(ops.scalar, n+1);
+				int[] first = java.util.Arrays.copyOf(ops.first, n+1);
+				int[] second = java.util.Arrays.copyOf(ops.second, n+1);
+				kind[n] = op;
+				scalar[n] = s;
+				first[n] = r1;
+				second[n] = r2;
+				return new RowOps(ops.inner, kind, scalar, first, second);
+			}
+			return new RowOps(e, new int[]{op}, new double[]{s}, new int[]{r1}, new int[]{r2});
+		}
+
+		@Override
+		void eval(Rows dest, double alpha, boolean accumulate){
+			Rows target = accumulate ? new Rows(new FlatMatrix(rows, cols)) : dest; //row ops cannot be applied to a sum in progress
+			inner.eval(target, alpha, false); //row operations are linear, so alpha can go first
+			RowKernels kernels = RowKernels.ACTIVE;
+			for (int ii = 0; ii < kind.length; ii++) {
+				int r1 = first[ii], r2 = second[ii];
+				if(kind[ii] == SWITCH)
+					target.switchRows(r1, r2);
+				else if(kind[ii] == SCALE)
+					kernels.scale(scalar[ii], target.array(r1), target.start(r1), cols);
+				else
+					kernels.axpy(scalar[ii], target.array(r1), target.start(r1), target.array(r2), target.start(r2), cols);
+			}
+			if(accumulate){
+				for (int ii = 0; ii < rows; ii++)
+					kernels.axpy(1, target.array(ii), target.start(ii), dest.array(ii), dest.start(ii), cols);
+			}
+		}
+	}
+}
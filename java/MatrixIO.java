@@ -0,0 +1,379 @@
+package matrixmath;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The MatrixIO class saves and loads matrices in a compact binary format. A file is a 64 byte
+ * header followed by the values as little-endian doubles, row by row:
+ *
+ * 	offset  size  field
+ * 	0       4     magic number "MXMB"
+ * 	4       2     format version (1)
+ * 	6       1     dtype (0 = 64 bit double)
+ * 	7       1     layout (0 = row-major, 1 = tiled)
+ * 	8       4     rows
+ * 	12      4     columns
+ * 	16      4     tile rows (0 unless tiled)
+ * 	20      4     tile columns (0 unless tiled)
+ * 	24      8     offset of the first value (a multiple of 64)
+ * 	32      8     CRC32 of the values
+ * 	40      24    reserved (0)
+ *
+ * read copies the file into a Matrix and checks the checksum. map memory-maps the values into an
+ * OffHeapMatrix without copying them, so even a very large file opens at once; pages are only read
+ * from disk when they are used. Because of that, map does not check the checksum (see verify).
+ *
+ * @method write
+ * 	Saves a matrix to a file.
+ * @method read
+ * 	Loads a file into a Matrix.
+ * @method map
+ * 	Memory-maps a file as an OffHeapMatrix.
+ * @method readHeader
+ * 	Reads only the header of a file.
+ * @method verify
+ * 	Checks the checksum of a file.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixIO {
+	static final int MAGIC = 0x4D584D42; //"MXMB"
+	static final short VERSION = 1;
+	static final byte DTYPE_FLOAT64 = 0;
+	static final byte LAYOUT_ROW_MAJOR = 0;
+	static final byte LAYOUT_TILED = 1; //square tiles in row-major order, each tile row-major (see TiledMatrix)
+	static final int HEADER_SIZE = 64;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	private static final int IO_BUFFER = 1 << 20; //bytes copied per read or write call
+
+	private MatrixIO(){
+	}
+
+	/**
+	 * The fields of a file header.
+	 */
+	public static class Header {
+		final short version;
+		final byte dtype;
+		final byte layout;
+		final int rows, cols;
+		final int tileRows, tileCols;
+		final long dataOffset;
+		final long checksum;
+
+		Header(short version, byte dtype, byte layout, int rows, int cols, int tileRows, int tileCols, long dataOffset, long checksum){
+			this.version = version;
+			this.dtype = dtype;
+			this.layout = layout;
+			this.rows = rows;
+			this.cols = cols;
+			this.tileRows = tileRows;
+			this.tileCols = tileCols;
+			this.dataOffset = dataOffset;
+			this.checksum = checksum;
+		}
+
+		public int getRows(){
+			return rows;
+		}
+
+		public int getCols(){
+			return cols;
+		}
+
+		public int getLayout(){
+			return layout;
+		}
+
+		public long getChecksum(){
+			return checksum;
+		}
+
+		/**
+		 * @return
+		 * 	Size of the values in bytes (tiled files store every tile whole, so edge tiles are padded).
+		 */
+		long dataBytes(){
+			if(layout == LAYOUT_TILED){
+				long tilesDown = (rows + tileRows - 1) / tileRows;
+				long tilesAcross = (cols + tileCols - 1) / tileCols;
+				return tilesDown*tilesAcross*tileRows*tileCols*Double.BYTES;
+			}
+			return (long)rows*cols*Double.BYTES;
+		}
+
+		void writeTo(FileChannel channel) throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+			buf.putInt(MAGIC).putShort(version).put(dtype).put(layout);
+			buf.putInt(rows).putInt(cols).putInt(tileRows).putInt(tileCols);
+			buf.putLong(dataOffset).putLong(checksum);
+			buf.rewind();
+			while(buf.hasRemaining())
+				channel.write(buf, buf.position());
+		}
+
+		static Header readFrom(FileChannel channel) throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+			while(buf.hasRemaining()){
+				if(channel.read(buf, buf.position()) < 0){
+					throw new IOException("file is too short to be a matrix file");
+				}
+			}
+			buf.flip();
+			if(buf.getInt() != MAGIC){
+				throw new IOException("not a matrix file (bad magic number)");
+			}
+			short version = buf.getShort();
+			if(version != VERSION){
+				throw new IOException("unsupported matrix file version " + version);
+			}
+			byte dtype = buf.get();
+			if(dtype != DTYPE_FLOAT64){
+				throw new IOException("unsupported dtype " + dtype);
+			}
+			Header header = new Header(version, dtype, buf.get(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getLong(), buf.getLong());
+			if(header.rows < 0 || header.cols < 0 || header.dataOffset < HEADER_SIZE
+					|| (header.layout == LAYOUT_TILED && (header.tileRows <= 0 || header.tileCols <= 0))
+					|| channel.size() < header.dataOffset + header.dataBytes()){
+				throw new IOException("matrix file is truncated or has a corrupt header");
+			}
+			return header;
+		}
+	}
+
+	/**
+	 * Saves a Matrix.
+	 *
+	 * @param mat
+	 * 	The matrix to save.
+	 * @param file
+	 * 	The file to write (replaced if it exists).
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	public static void write(Matrix mat, Path file) throws IOException {
+		double[] row = new double[mat.cols];
+		try (FileChannel channel = open(file)) {
+			writeRows(channel, mat.rows, mat.cols, (ii, dest) -> System.arraycopy(mat.m[ii], 0, dest, 0, mat.cols), row);
+		}
+	}
+
+	/**
+	 * Saves a FlatMatrix.
+	 *
+	 * @param mat
+	 * 	The matrix to save.
+	 * @param file
+	 * 	The file to write (replaced if it exists).
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	public static void write(FlatMatrix mat, Path file) throws IOException {
+		double[] row = new double[mat.cols];
+		try (FileChannel channel = open(file)) {
+			writeRows(channel, mat.rows, mat.cols, (ii, dest) -> System.arraycopy(mat.data, mat.offset + ii*mat.stride, dest, 0, mat.cols), row);
+		}
+	}
+
+	/**
+	 * Saves an OffHeapMatrix.
+	 *
+	 * @param mat
+	 * 	The matrix to save.
+	 * @param file
+	 * 	The file to write (replaced if it exists).
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	public static void write(OffHeapMatrix mat, Path file) throws IOException {
+		double[] row = new double[mat.cols];
+		try (FileChannel channel = open(file)) {
+			writeRows(channel, mat.rows, mat.cols, mat::getRow, row);
+		}
+	}
+
+	private interface RowSource {
+		void copyRow(int i, double[] dest);
+	}
+
+	private static FileChannel open(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Writes the values after the header, then the header with the checksum of what was written.
+	 */
+	private static void writeRows(FileChannel channel, int rows, int cols, RowSource source, double[] row) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(IO_BUFFER, cols*Double.BYTES)).order(ORDER);
+		CRC32 crc = new CRC32();
+		long pos = HEADER_SIZE;
+		for (int ii = 0; ii < rows; ii++) {
+			if(buf.remaining() < cols*Double.BYTES)
+				pos = flush(channel, buf, pos, crc);
+			source.copyRow(ii, row);
+			buf.asDoubleBuffer().put(row, 0, cols);
+			buf.position(buf.position() + cols*Double.BYTES);
+		}
+		flush(channel, buf, pos, crc);
+		new Header(VERSION, DTYPE_FLOAT64, LAYOUT_ROW_MAJOR, rows, cols, 0, 0, HEADER_SIZE, crc.getValue()).writeTo(channel);
+	}
+
+	private static long flush(FileChannel channel, ByteBuffer buf, long pos, CRC32 crc) throws IOException {
+		buf.flip();
+		crc.update(buf.duplicate());
+		while(buf.hasRemaining())
+			pos += channel.write(buf, pos);
+		buf.clear();
+		return pos;
+	}
+
+	/**
+	 * Reads only the header of a file.
+	 *
+	 * @param file
+	 * 	The file to read.
+	 * @return
+	 * 	The header.
+	 * @throws IOException
+	 * 	If the file cannot be read or is not a matrix file.
+	 */
+	public static Header readHeader(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return Header.readFrom(channel);
+		}
+	}
+
+	/**
+	 * Loads a file into a Matrix, checking the checksum.
+	 *
+	 * @param file
+	 * 	The file to read.
+	 * @return
+	 * 	The matrix.
+	 * @throws IOException
+	 * 	If the file cannot be read, is not a row-major matrix file, or fails the checksum.
+	 */
+	public static Matrix read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = Header.readFrom(channel);
+			requireRowMajor(header);
+			Matrix mat = new Matrix(header.rows, header.cols);
+			int rowBytes = header.cols*Double.BYTES;
+			ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(IO_BUFFER, rowBytes)).order(ORDER);
+			buf.limit(0);
+			CRC32 crc = new CRC32();
+			long pos = header.dataOffset;
+			for (int ii = 0; ii < header.rows; ii++) {
+				if(buf.remaining() < rowBytes){
+					buf.compact();
+					while(buf.position() < rowBytes){
+						int count = channel.read(buf, pos);
+						if(count < 0){
+							throw new IOException("matrix file is truncated");
+						}
+						pos += count;
+					}
+					buf.flip();
+				}
+				crc.update(buf.duplicate().limit(buf.position() + rowBytes));
+				buf.asDoubleBuffer().get(mat.m[ii], 0, header.cols);
+				buf.position(buf.position() + rowBytes);
+			}
+			if(crc.getValue() != header.checksum){
+				throw new IOException("matrix file fails its checksum");
+			}
+			return mat;
+		}
+	}
+
+	/**
+	 * Memory-maps a file read-only. The values are not copied; the checksum is not checked.
+	 *
+	 * @param file
+	 * 	The file to map.
+	 * @return
+	 * 	An OffHeapMatrix backed by the file (close it to unmap).
+	 * @throws IOException
+	 * 	If the file cannot be mapped or is not a row-major matrix file.
+	 */
+	public static OffHeapMatrix map(Path file) throws IOException {
+		return map(file, false);
+	}
+
+	/**
+	 * Memory-maps a file. When writable, set changes the file itself (the checksum in the header is
+	 * then out of date until the matrix is written again).
+	 *
+	 * @param file
+	 * 	The file to map.
+	 * @param writable
+	 * 	True to allow set and setRow.
+	 * @return
+	 * 	An OffHeapMatrix backed by the file (close it to unmap).
+	 * @throws IOException
+	 * 	If the file cannot be mapped or is not a row-major matrix file.
+	 */
+	public static OffHeapMatrix map(Path file, boolean writable) throws IOException {
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		try (FileChannel channel = writable ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = Header.readFrom(channel);
+			requireRowMajor(header);
+			int perChunk = OffHeapMatrix.rowsPerChunk(header.cols);
+			int count = (header.rows + perChunk - 1) / perChunk;
+			ByteBuffer[] chunks = new ByteBuffer[count];
+			long rowBytes = (long)header.cols*Double.BYTES;
+			for (int cc = 0; cc < count; cc++) {
+				int chunkRows = Math.min(perChunk, header.rows - cc*perChunk);
+				MappedByteBuffer mapped = channel.map(mode, header.dataOffset + cc*perChunk*rowBytes, chunkRows*rowBytes);
+				chunks[cc] = mapped.order(ORDER);
+			}
+			return new OffHeapMatrix(header.rows, header.cols, chunks, true); //the mapping outlives the channel
+		}
+	}
+
+	/**
+	 * Reads the whole file and checks its checksum.
+	 *
+	 * @param file
+	 * 	The file to check.
+	 * @return
+	 * 	True if the values match the checksum in the header.
+	 * @throws IOException
+	 * 	If the file cannot be read or is not a matrix file.
+	 */
+	public static boolean verify(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = Header.readFrom(channel);
+			ByteBuffer buf = ByteBuffer.allocateDirect(IO_BUFFER);
+			CRC32 crc = new CRC32();
+			long pos = header.dataOffset;
+			long end = pos + header.dataBytes();
+			while(pos < end){
+				buf.clear();
+				buf.limit((int)Math.min(buf.capacity(), end - pos));
+				int count = channel.read(buf, pos);
+				if(count < 0)
+					return false;
+				pos += count;
+				buf.flip();
+				crc.update(buf);
+			}
+			return crc.getValue() == header.checksum;
+		}
+	}
+
+	private static void requireRowMajor(Header header) throws IOException {
+		if(header.layout != LAYOUT_ROW_MAJOR){
+			throw new IOException("expected a row-major matrix file, found layout " + header.layout);
+		}
+	}
+}
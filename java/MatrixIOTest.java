@@ -0,0 +1,75 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.MatrixIO;
+import matrixmath.OffHeapMatrix;
+
+/**
+ * This class tests MatrixIO: a written matrix must read back (and map) exactly, the header must
+ * describe it, and a file changed behind the checksum's back must fail verify and be refused by
+ * read with an IOException.
+ *
+ * @author Andrew M.
+ */
+public class MatrixIOTest {
+
+	public static void main(String[] args) throws IOException {
+		Random rand = new Random(23);
+		Path dir = Files.createTempDirectory("matrixio");
+		Path file = dir.resolve("a.mxb");
+		Path copy = dir.resolve("b.mxb");
+		try {
+			Matrix a = randomMatrix(130, 70, rand);
+			MatrixIO.write(a, file);
+			MatrixIO.Header header = MatrixIO.readHeader(file);
+			check("header describes the matrix", header.getRows() == 130 && header.getCols() == 70);
+			check("write then read is exact", maxDifference(MatrixIO.read(file), a) == 0);
+			check("a written file verifies", MatrixIO.verify(file));
+			try (OffHeapMatrix mapped = MatrixIO.map(file)) {
+				check("map gives the written values", maxDifference(mapped.toMatrix(), a) == 0);
+				MatrixIO.write(mapped, copy);
+			}
+			check("an off-heap matrix writes the same file", MatrixIO.verify(copy) && maxDifference(MatrixIO.read(copy), a) == 0);
+
+			try (OffHeapMatrix mapped = MatrixIO.map(file, true)) {
+				mapped.set(64, 35, mapped.get(64, 35) + 1); //changes the file, not its checksum
+			}
+			check("a changed file fails verify", !MatrixIO.verify(file));
+			check("read refuses a changed file", throwsIOException(file));
+
+			byte[] bytes = Files.readAllBytes(copy);
+			bytes[0] ^= 1;
+			Files.write(copy, bytes);
+			check("read refuses a file that is not a matrix file", throwsIOException(copy));
+
+			bytes[0] ^= 1;
+			Files.write(copy, Arrays.copyOf(bytes, bytes.length - 8));
+			check("read refuses a truncated file", throwsIOException(copy));
+		}
+		finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(copy);
+			Files.deleteIfExists(dir);
+		}
+
+		finish();
+	}
+
+	private static boolean throwsIOException(Path file){
+		try {
+			MatrixIO.read(file);
+			return false;
+		}
+		catch(IOException e){
+			return true;
+		}
+	}
+}
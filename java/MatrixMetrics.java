@@ -0,0 +1,346 @@
+package matrixmath;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import riemann_sum.Riemann;
+
+/**
+ * The MatrixMetrics class counts where time goes in the library. For each kind of operation
+ * (multiply, invert, rowreduce, fit, Riemann sum) it records the number of calls, the total time
+ * and a histogram of call times, an estimate of the floating point operations done and the bytes
+ * allocated by the calling thread. The counters are LongAdders, so threads recording at the same
+ * time do not contend.
+ *
+ * Recording is off until setEnabled(true); while it is off an instrumented operation only reads
+ * one volatile flag. The counts can be read as a Snapshot, or a Listener can be told about every
+ * call as it finishes. Instrumented code does:
+ *
+ * 	long start = MatrixMetrics.start();
+ * 	... the operation ...
+ * 	MatrixMetrics.record(MatrixMetrics.Operation.INVERT, start, flops);
+ *
+ * The histogram buckets are powers of two of nanoseconds (bucket b holds calls that took from
+ * 2^(b-1) up to 2^b - 1 ns). FLOP counts are the textbook estimates for the algorithm, not counts
+ * of the instructions run. Allocation is measured with the per-thread allocation counter of
+ * com.sun.management.ThreadMXBean, and reported as -1 on JVMs that do not have it. The counter (and
+ * JMX) is only loaded and switched on the first time recording is turned on.
+ *
+ * Riemann sums are in another package, which does not depend on this one: turning recording on
+ * installs a Riemann.Observer that records them, and turning it off removes it.
+ *
+ * @method setEnabled
+ * 	Turns recording on or off.
+ * @method start, record
+ * 	Bracket an operation that is being measured.
+ * @method snapshot
+ * 	A copy of the counts so far.
+ * @method addListener, removeListener
+ * 	Registers code that is told about every recorded call.
+ * @method reset
+ * 	Sets every count back to zero.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixMetrics {
+	private static volatile boolean enabled = false; //checked first by every instrumented operation
+	private static final int BUCKETS = 64; //latency histogram: one bucket per power of two of nanoseconds
+	private static final EnumMap<Operation, Counters> counters = new EnumMap<Operation, Counters>(Operation.class);
+	private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private static volatile com.sun.management.ThreadMXBean threads; //set up by the first setEnabled(true)
+	private static boolean threadsChecked = false; //whether that was tried (guarded by the class lock)
+	private static final Riemann.Observer RIEMANN = new Riemann.Observer() {
+		@Override
+		public long begin(){
+			return start();
+		}
+
+		@Override
+		public void end(long token, int degree, int subintervals){
+			record(Operation.RIEMANN_SUM, token, 2L*(degree+1)*subintervals); //about one evaluation per slice
+		}
+	};
+	//per thread: [0] is how many measured calls are running, then the bytes allocated when each began
+	//(so a measured call inside another, such as rowreduce inside invert, is counted right)
+	private static final ThreadLocal<long[]> allocationStack = ThreadLocal.withInitial(() -> new long[17]);
+
+	static {
+		for (Operation op : Operation.values())
+			counters.put(op, new Counters());
+	}
+
+	/**
+	 * The kinds of operation that are measured.
+	 */
+	public enum Operation {
+		MULTIPLY, //Matrix.times
+		INVERT, //Matrix.invert
+		ROWREDUCE, //Matrix.rowreduce
+		FIT, //Interpolation.fit
+		RIEMANN_SUM //Riemann.rs
+	}
+
+	/**
+	 * Told about every call that is recorded, on the thread that made it (keep it quick).
+	 */
+	public interface Listener {
+		/**
+		 * @param op
+		 * 	The kind of operation.
+		 * @param nanos
+		 * 	How long the call took.
+		 * @param flops
+		 * 	Estimated floating point operations.
+		 * @param bytes
+		 * 	Bytes allocated by the call (-1 if unknown).
+		 */
+		void operationFinished(Operation op, long nanos, long flops, long bytes);
+	}
+
+	private static class Counters {
+		final LongAdder calls = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder flops = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+		Counters(){
+			for (int ii = 0; ii < BUCKETS; ii++)
+				histogram[ii] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Turns recording on or off.
+	 *
+	 * @param on
+	 * 	Whether operations are recorded.
+	 */
+	public static synchronized void setEnabled(boolean on){
+		if(on && !threadsChecked){
+			threads = allocationCounter();
+			threadsChecked = true;
+		}
+		Riemann.setObserver(on ? RIEMANN : null);
+		enabled = on;
+	}
+
+	public static boolean isEnabled(){
+		return enabled;
+	}
+
+	/**
+	 * Called when an operation begins.
+	 *
+	 * @return
+	 * 	A token to pass to record: 0 when recording is off.
+	 */
+	public static long start(){
+		if(!enabled)
+			return 0;
+		long[] stack = allocationStack.get();
+		int depth = (int)stack[0];
+		if(depth == stack.length-1) //calls that threw before record left entries behind; start over
+			depth = 0;
+		stack[++depth] = allocatedBytes();
+		stack[0] = depth;
+		return Math.max(1, System.nanoTime()); //never 0, which means "not recording"
+	}
+
+	/**
+	 * Called when an operation ends.
+	 *
+	 * @param op
+	 * 	The kind of operation.
+	 * @param start
+	 * 	The value start returned (nothing is recorded if it is 0).
+	 * @param flops
+	 * 	Estimated floating point operations of the call.
+	 */
+	public static void record(Operation op, long start, long flops){
+		if(start == 0)
+			return;
+		long nanos = Math.max(0, System.nanoTime() - start);
+		long[] stack = allocationStack.get();
+		int depth = (int)stack[0];
+		long before = depth > 0 ? stack[depth] : -1, after = allocatedBytes();
+		stack[0] = Math.max(0, depth-1);
+		long bytes = (before < 0 || after < 0) ? -1 : after - before;
+		Counters c = counters.get(op);
+		c.calls.increment();
+		c.nanos.add(nanos);
+		c.flops.add(flops);
+		if(bytes > 0)
+			c.bytes.add(bytes);
+		c.histogram[Math.min(BUCKETS-1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+		for (Listener listener : listeners)
+			listener.operationFinished(op, nanos, flops, bytes);
+	}
+
+	public static void addListener(Listener listener){
+		listeners.add(listener);
+	}
+
+	public static void removeListener(Listener listener){
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sets every count back to zero. Calls that are recorded at the same time may be partly lost.
+	 */
+	public static void reset(){
+		for (Counters c : counters.values()) {
+			c.calls.reset();
+			c.nanos.reset();
+			c.flops.reset();
+			c.bytes.reset();
+			for (LongAdder bucket : c.histogram)
+				bucket.reset();
+		}
+	}
+
+	/**
+	 * A copy of the counts so far.
+	 *
+	 * @return
+	 * 	The snapshot.
+	 */
+	public static Snapshot snapshot(){
+		EnumMap<Operation, Stats> stats = new EnumMap<Operation, Stats>(Operation.class);
+		for (Map.Entry<Operation, Counters> e : counters.entrySet()) {
+			Counters c = e.getValue();
+			long[] histogram = new long[BUCKETS];
+			for (int ii = 0; ii < BUCKETS; ii++)
+				histogram[ii] = c.histogram[ii].sum();
+			stats.put(e.getKey(), new Stats(c.calls.sum(), c.nanos.sum(), c.flops.sum(), c.bytes.sum(), histogram));
+		}
+		return new Snapshot(stats);
+	}
+
+	/**
+	 * The counts for every operation at one moment.
+	 */
+	public static class Snapshot {
+		private final EnumMap<Operation, Stats> stats;
+
+		private Snapshot(EnumMap<Operation, Stats> stats){
+			this.stats = stats;
+		}
+
+		/**
+		 * @param op
+		 * 	The kind of operation.
+		 * @return
+		 * 	Its counts.
+		 */
+		public Stats get(Operation op){
+			return stats.get(op);
+		}
+
+		/**
+		 * One line per operation that was called: calls, total and mean time, median and 99th
+		 * percentile (to a power of two), GFLOP/s and bytes allocated.
+		 */
+		@Override
+		public String toString(){
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<Operation, Stats> e : stats.entrySet()) {
+				Stats s = e.getValue();
+				if(s.getCalls() == 0)
+					continue;
+				sb.append(String.format(java.util.Locale.ROOT, "%-12s calls=%d total=%.3fms mean=%.0fns p50<%dns p99<%dns gflops=%.3f bytes=%d%n",
+						e.getKey(), s.getCalls(), s.getTotalNanos()/1e6, s.getMeanNanos(), s.percentile(0.5), s.percentile(0.99),
+						s.getTotalNanos() == 0 ? 0 : (double)s.getFlops()/s.getTotalNanos(), s.getBytes()));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The counts for one kind of operation.
+	 */
+	public static class Stats {
+		private final long calls, nanos, flops, bytes;
+		private final long[] histogram;
+
+		private Stats(long calls, long nanos, long flops, long bytes, long[] histogram){
+			this.calls = calls;
+			this.nanos = nanos;
+			this.flops = flops;
+			this.bytes = bytes;
+			this.histogram = histogram;
+		}
+
+		public long getCalls(){
+			return calls;
+		}
+
+		public long getTotalNanos(){
+			return nanos;
+		}
+
+		public double getMeanNanos(){
+			return calls == 0 ? 0 : (double)nanos/calls;
+		}
+
+		public long getFlops(){
+			return flops;
+		}
+
+		public long getBytes(){
+			return bytes;
+		}
+
+		/**
+		 * @return
+		 * 	Copy of the histogram: entry b counts calls that took less than 2^b ns (and at least 2^(b-1)).
+		 */
+		public long[] getHistogram(){
+			return histogram.clone();
+		}
+
+		/**
+		 * The time that a fraction of the calls were faster than, to the next power of two.
+		 *
+		 * @param p
+		 * 	The fraction (for example 0.99).
+		 * @return
+		 * 	Upper bound of the bucket in nanoseconds (0 if there were no calls).
+		 */
+		public long percentile(double p){
+			long target = (long)Math.ceil(p*calls), seen = 0;
+			for (int ii = 0; ii < histogram.length; ii++) {
+				seen += histogram[ii];
+				if(seen >= target && seen > 0)
+					return ii >= 63 ? Long.MAX_VALUE : 1L << ii;
+			}
+			return 0;
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter(){
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(bean instanceof com.sun.management.ThreadMXBean){
+				com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean)bean;
+				if(t.isThreadAllocatedMemorySupported()){
+					t.setThreadAllocatedMemoryEnabled(true);
+					return t;
+				}
+			}
+		}
+		catch(UnsupportedOperationException | SecurityException | NoClassDefFoundError e){
+			//no allocation counts on this JVM
+		}
+		return null;
+	}
+
+	private static long allocatedBytes(){
+		com.sun.management.ThreadMXBean t = threads;
+		return t == null ? -1 : t.getCurrentThreadAllocatedBytes();
+	}
+}
@@ -0,0 +1,399 @@
+package matrixmath;
+
+/**
+ * The MatrixMultiply class holds the multiplication kernels used by Matrix.times and
+ * FlatMatrix.times.
+ *
+ * The textbook ii/jj/kk loop walks down a column of the second matrix, which touches a new cache
+ * line on every step once the matrices are bigger than the cache. The kernel here runs the loops
+ * in i-k-j order, so the innermost loop walks along a row of both the second matrix and the
+ * product, and it cuts the matrices into tiles (blocks of rows, of the inner dimension and of
+ * columns) so that the tile of the second matrix being used stays in cache while every row of the
+ * first matrix's tile is multiplied with it. The block sizes can be tuned for a particular machine.
+ *
+ * A product with a single column (matrix times vector) uses its own loop that takes a dot product
+ * along each row. The innermost loops are the axpy and dot kernels of RowKernels.
+ *
+ * The products a*b^T and a^T*b (normal equations, Gram matrices) have their own kernels that read
+ * the transposed matrix in the order it is stored: an entry of a*b^T is a dot product of a row of a
+ * with a row of b, and a^T*b is a sum of rank-1 updates, row k of b scaled by the entries of row k
+ * of a. Neither makes a copy of the transpose.
+ *
+ * The kernels read and write rows through Rows, so the rows of a Matrix are used where they are,
+ * without copying the matrix into flat storage first (Matrix.times and MatrixExpression use this).
+ *
+ * For large square products the mode can be switched to Strassen's method (see StrassenMultiply),
+ * either always or automatically once every dimension reaches a size.
+ *
+ * @method multiply
+ * 	Returns the product of two matrices.
+ * @method multiplyAdd
+ * 	Adds the product of two matrices (times a factor) to a third matrix.
+ * @method multiplyVector
+ * 	Matrix times a column vector.
+ * @method multiplyTransposed, transposeMultiply
+ * 	a*b^T and a^T*b without making the transpose.
+ * @method setBlockSizes
+ * 	Sets the tile sizes used by the blocked kernel.
+ * @method setMode
+ * 	Chooses between the classical kernel and Strassen's method.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixMultiply {
+	private static int rowBlock = 64; //rows of the first matrix per tile
+	private static int innerBlock = 128; //inner dimension per tile (rows of the second matrix)
+	private static int colBlock = 256; //columns of the second matrix per tile (innerBlock*colBlock doubles should fit in L2)
+	private static Mode mode = Mode.AUTO; //which algorithm multiply uses
+	private static int strassenSize = 4096; //in AUTO mode, square products at least this big use Strassen
+
+	/**
+	 * The algorithm used for matrix products.
+	 */
+	public enum Mode {
+		CLASSICAL, //always the blocked i-k-j kernel
+		STRASSEN, //Strassen's method for every roughly square product (see StrassenMultiply)
+		AUTO //Strassen for square products of at least strassenSize, classical otherwise
+	}
+
+	/**
+	 * Chooses the algorithm used for matrix products.
+	 *
+	 * @param m
+	 * 	The mode to use.
+	 */
+	public static void setMode(Mode m){
+		mode = m;
+	}
+
+	public static Mode getMode(){
+		return mode;
+	}
+
+	/**
+	 * Sets the size at which AUTO mode switches to Strassen's method.
+	 *
+	 * @param size
+	 * 	Smallest square size multiplied with Strassen's method.
+	 */
+	public static void setStrassenSize(int size){
+		strassenSize = size;
+	}
+
+	/**
+	 * Sets the tile sizes used by the blocked kernel.
+	 *
+	 * @param rows
+	 * 	Rows of the first matrix per tile.
+	 * @param inner
+	 * 	Inner dimension per tile.
+	 * @param cols
+	 * 	Columns of the second matrix per tile.
+	 */
+	public static void setBlockSizes(int rows, int inner, int cols){
+		if(rows < 1 || inner < 1 || cols < 1){
+			throw new IllegalArgumentException("block sizes must be positive");
+		}
+		rowBlock = rows;
+		innerBlock = inner;
+		colBlock = cols;
+	}
+
+	/**
+	 * @return
+	 * 	The current tile sizes {rows, inner, cols}.
+	 */
+	public static int[] getBlockSizes(){
+		return new int[] {rowBlock, innerBlock, colBlock};
+	}
+
+	/**
+	 * Multiplies two matrices.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix (remember not commutative).
+	 * @return
+	 * 	New matrix with the product.
+	 */
+	public static FlatMatrix multiply(FlatMatrix a, FlatMatrix b){
+		checkSizes(a, b);
+		FlatMatrix c = new FlatMatrix(a.rows, b.cols);
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Adds the product a*b to c (c += a*b).
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix.
+	 * @param c
+	 * 	The matrix the product is added to (a.rows x b.cols).
+	 */
+	public static void multiplyAdd(FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		checkSizes(a, b);
+		if(c.rows != a.rows || c.cols != b.cols){
+			throw new IllegalArgumentException("product does not fit in a " + c.rows + "x" + c.cols + " matrix");
+		}
+		if(b.cols == 1){
+			multiplyVector(a, b, c, 0, a.rows);
+		}
+		else if(useStrassen(a.rows, a.cols, b.cols)){
+			StrassenMultiply.multiplyAdd(a, b, c);
+		}
+		else {
+			multiplyBlocked(a, b, c, 0, a.rows);
+		}
+	}
+
+	/**
+	 * Adds a multiple of the product to c (c += alpha*a*b). The factor is applied inside the kernel,
+	 * so scaling a product costs nothing extra (MatrixExpression folds scale into this).
+	 *
+	 * @param alpha
+	 * 	The factor.
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix.
+	 * @param c
+	 * 	The matrix the product is added to (a.rows x b.cols).
+	 */
+	public static void multiplyAdd(double alpha, FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		if(alpha == 1){
+			multiplyAdd(a, b, c);
+			return;
+		}
+		multiplyAdd(alpha, new Rows(a), new Rows(b), new Rows(c));
+	}
+
+	/**
+	 * c += alpha*a*b on rows of any storage, with the classical kernels (Strassen's method needs
+	 * flat storage).
+	 */
+	static void multiplyAdd(double alpha, Rows a, Rows b, Rows c){
+		if(a.cols != b.rows){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix");
+		}
+		if(c.rows != a.rows || c.cols != b.cols){
+			throw new IllegalArgumentException("product does not fit in a " + c.rows + "x" + c.cols + " matrix");
+		}
+		if(b.cols == 1)
+			multiplyVector(alpha, a, b, c, 0, a.rows);
+		else
+			multiplyBlocked(alpha, a, b, c, 0, a.rows);
+	}
+
+	/**
+	 * Multiplies a matrix by the transpose of another, a*b^T, without making the transpose.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The matrix whose transpose is used (same number of columns as a).
+	 * @return
+	 * 	New a.rows x b.rows matrix with the product.
+	 */
+	public static FlatMatrix multiplyTransposed(FlatMatrix a, FlatMatrix b){
+		FlatMatrix c = new FlatMatrix(a.rows, b.rows);
+		multiplyTransposedAdd(1, a, b, c);
+		return c;
+	}
+
+	/**
+	 * Adds a multiple of a*b^T to c (c += alpha*a*b^T). Each entry is a dot product of a row of a
+	 * with a row of b; a tile of rows of b (and a range of the inner dimension) is kept in cache
+	 * while every row of a is run past it.
+	 *
+	 * @param alpha
+	 * 	The factor.
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The matrix whose transpose is used (same number of columns as a).
+	 * @param c
+	 * 	The matrix the product is added to (a.rows x b.rows).
+	 */
+	public static void multiplyTransposedAdd(double alpha, FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		multiplyTransposedAdd(alpha, new Rows(a), new Rows(b), new Rows(c));
+	}
+
+	static void multiplyTransposedAdd(double alpha, Rows a, Rows b, Rows c){
+		if(a.cols != b.cols){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by the transpose of a " + b.rows + "x" + b.cols + " matrix");
+		}
+		if(c.rows != a.rows || c.cols != b.rows){
+			throw new IllegalArgumentException("product does not fit in a " + c.rows + "x" + c.cols + " matrix");
+		}
+		int inner = a.cols;
+		int kb = colBlock, jb = rowBlock;
+		RowKernels kernels = RowKernels.ACTIVE;
+
+		for (int k0 = 0; k0 < inner; k0 += kb) {
+			int k1 = Math.min(k0 + kb, inner);
+			for (int j0 = 0; j0 < b.rows; j0 += jb) { //rows j0..j1 of b (columns k0..k1) stay in cache
+				int j1 = Math.min(j0 + jb, b.rows);
+				for (int ii = 0; ii < a.rows; ii++) {
+					double[] ad = a.array(ii), cd = c.array(ii);
+					int aRow = a.start(ii) + k0;
+					int cRow = c.start(ii);
+					for (int jj = j0; jj < j1; jj++)
+						cd[cRow + jj] += alpha*kernels.dot(ad, aRow, b.array(jj), b.start(jj) + k0, k1 - k0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multiplies the transpose of a matrix by another, a^T*b, without making the transpose.
+	 *
+	 * @param a
+	 * 	The matrix whose transpose is used.
+	 * @param b
+	 * 	The second matrix (same number of rows as a).
+	 * @return
+	 * 	New a.cols x b.cols matrix with the product.
+	 */
+	public static FlatMatrix transposeMultiply(FlatMatrix a, FlatMatrix b){
+		FlatMatrix c = new FlatMatrix(a.cols, b.cols);
+		transposeMultiplyAdd(1, a, b, c);
+		return c;
+	}
+
+	/**
+	 * Adds a multiple of a^T*b to c (c += alpha*a^T*b). The product is summed as rank-1 updates:
+	 * for each k, row i of c gets a[k][i] times row k of b. A tile of c is kept in cache while all
+	 * k are run over it, and both a and b are read along their rows.
+	 *
+	 * @param alpha
+	 * 	The factor.
+	 * @param a
+	 * 	The matrix whose transpose is used.
+	 * @param b
+	 * 	The second matrix (same number of rows as a).
+	 * @param c
+	 * 	The matrix the product is added to (a.cols x b.cols).
+	 */
+	public static void transposeMultiplyAdd(double alpha, FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		transposeMultiplyAdd(alpha, new Rows(a), new Rows(b), new Rows(c));
+	}
+
+	static void transposeMultiplyAdd(double alpha, Rows a, Rows b, Rows c){
+		if(a.rows != b.rows){
+			throw new IllegalArgumentException("cannot multiply the transpose of a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix");
+		}
+		if(c.rows != a.cols || c.cols != b.cols){
+			throw new IllegalArgumentException("product does not fit in a " + c.rows + "x" + c.cols + " matrix");
+		}
+		int inner = a.rows;
+		int ib = rowBlock, nb = colBlock;
+		RowKernels kernels = RowKernels.ACTIVE;
+
+		for (int j0 = 0; j0 < b.cols; j0 += nb) {
+			int j1 = Math.min(j0 + nb, b.cols);
+			for (int i0 = 0; i0 < a.cols; i0 += ib) { //tile i0..i1 x j0..j1 of c stays in cache
+				int i1 = Math.min(i0 + ib, a.cols);
+				for (int kk = 0; kk < inner; kk++) {
+					double[] ad = a.array(kk), bd = b.array(kk);
+					int aRow = a.start(kk);
+					int bRow = b.start(kk) + j0;
+					for (int ii = i0; ii < i1; ii++) {
+						double aki = alpha*ad[aRow + ii];
+						if(aki == 0)
+							continue;
+						kernels.axpy(aki, bd, bRow, c.array(ii), c.start(ii) + j0, j1 - j0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Matrix times a column vector: c += a*b where b and c have one column. Each entry of c is
+	 * a dot product along a row of a.
+	 *
+	 * @param a
+	 * 	The matrix.
+	 * @param b
+	 * 	The column vector (a.cols x 1).
+	 * @return
+	 * 	New column vector with the product.
+	 */
+	public static FlatMatrix multiplyVector(FlatMatrix a, FlatMatrix b){
+		checkSizes(a, b);
+		FlatMatrix c = new FlatMatrix(a.rows, 1);
+		multiplyVector(a, b, c, 0, a.rows);
+		return c;
+	}
+
+	/**
+	 * Matrix-vector kernel on the rows rowStart to rowEnd of a.
+	 */
+	static void multiplyVector(FlatMatrix a, FlatMatrix b, FlatMatrix c, int rowStart, int rowEnd){
+		multiplyVector(1, new Rows(a), new Rows(b), new Rows(c), rowStart, rowEnd);
+	}
+
+	static void multiplyVector(double alpha, Rows a, Rows b, Rows c, int rowStart, int rowEnd){
+		int n = a.cols;
+		int[] bStart = new int[1];
+		double[] bd = b.column(0, bStart); //the dot product needs the vector packed (stride 1)
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int ii = rowStart; ii < rowEnd; ii++)
+			c.array(ii)[c.start(ii)] += alpha*kernels.dot(a.array(ii), a.start(ii), bd, bStart[0], n);
+	}
+
+	/**
+	 * Tiled i-k-j kernel on the rows rowStart to rowEnd of a (and of c).
+	 */
+	static void multiplyBlocked(FlatMatrix a, FlatMatrix b, FlatMatrix c, int rowStart, int rowEnd){
+		multiplyBlocked(1, new Rows(a), new Rows(b), new Rows(c), rowStart, rowEnd);
+	}
+
+	static void multiplyBlocked(double alpha, Rows a, Rows b, Rows c, int rowStart, int rowEnd){
+		int inner = a.cols;
+		int cols = b.cols;
+		int mb = rowBlock, kb = innerBlock, nb = colBlock;
+		RowKernels kernels = RowKernels.ACTIVE;
+
+		for (int j0 = 0; j0 < cols; j0 += nb) { //column tile of b and c
+			int j1 = Math.min(j0 + nb, cols);
+			for (int k0 = 0; k0 < inner; k0 += kb) { //this tile of b (k0..k1 x j0..j1) is reused by every row below
+				int k1 = Math.min(k0 + kb, inner);
+				for (int i0 = rowStart; i0 < rowEnd; i0 += mb) {
+					int i1 = Math.min(i0 + mb, rowEnd);
+					for (int ii = i0; ii < i1; ii++) {
+						double[] ad = a.array(ii), cd = c.array(ii);
+						int aRow = a.start(ii);
+						int cRow = c.start(ii) + j0;
+						for (int kk = k0; kk < k1; kk++) {
+							double aik = alpha*ad[aRow+kk];
+							if(aik == 0)
+								continue;
+							kernels.axpy(aik, b.array(kk), b.start(kk) + j0, cd, cRow, j1 - j0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether a (rows x inner) times (inner x cols) product is done with Strassen's method.
+	 */
+	static boolean useStrassen(int rows, int inner, int cols){
+		if(mode == Mode.STRASSEN)
+			return true;
+		return mode == Mode.AUTO && rows == inner && inner == cols && rows >= strassenSize;
+	}
+
+	private static void checkSizes(FlatMatrix a, FlatMatrix b){
+		if(a.cols != b.rows){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix");
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package matrixmath;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The MatrixPool class keeps arrays of doubles that are no longer needed so that the next matrix of
+ * the same size can reuse them instead of allocating (and later garbage collecting) a new array.
+ * Arrays are kept in buckets by length: row arrays of a Matrix are looked up by their exact length,
+ * and flat storage (for a FlatMatrix) is rounded up to a power of two so that matrices of similar
+ * sizes share a bucket, unless the rounded array would fill all the pool may hold (then the exact
+ * length is used, so a 2049x2049 matrix does not take a 64 MB array that could not be kept anyway).
+ *
+ * Every thread has its own pool, so taking and releasing arrays needs no lock and threads never
+ * wait for each other; each pool holds at most a fixed number of bytes, and arrays released beyond
+ * that are left for the garbage collector. An array released by one thread is reused by that
+ * thread. Arrays handed out by take are filled with zeros (outside any lock, by the thread that
+ * takes them); the package's own callers that overwrite every value skip that. Most code uses the
+ * pool through a MatrixArena, which returns everything it took when it is closed.
+ *
+ * @method take
+ * 	An array of zeros of exactly a length.
+ * @method takeAtLeast
+ * 	An array of zeros of at least a length (a power of two when that fits in the pool).
+ * @method release
+ * 	Gives an array back to the pool.
+ * @method setMaxBytes
+ * 	Sets how many bytes each thread's pool may hold.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MatrixPool {
+	private static volatile long maxBytes = 64L << 20; //largest amount kept for reuse by each thread
+	private static volatile int generation = 0; //bumped by clear; a pool from an older generation empties itself
+	private static final ThreadLocal<Buckets> pools = ThreadLocal.withInitial(Buckets::new);
+
+	private MatrixPool(){
+	}
+
+	/**
+	 * The arrays kept by one thread.
+	 */
+	private static final class Buckets {
+		final HashMap<Integer, ArrayDeque<double[]>> byLength = new HashMap<Integer, ArrayDeque<double[]>>();
+		long pooledBytes = 0; //bytes now waiting in the buckets
+		int generation = MatrixPool.generation;
+	}
+
+	/**
+	 * The calling thread's pool, emptied first if clear was called since it was last used.
+	 */
+	private static Buckets pool(){
+		Buckets pool = pools.get();
+		int current = generation;
+		if(pool.generation != current){
+			pool.byLength.clear();
+			pool.pooledBytes = 0;
+			pool.generation = current;
+		}
+		return pool;
+	}
+
+	/**
+	 * Sets how many bytes of arrays each thread's pool may hold. Making it smaller empties the pools.
+	 *
+	 * @param bytes
+	 * 	The limit (0 turns pooling off).
+	 */
+	public static synchronized void setMaxBytes(long bytes){
+		if(bytes < 0){
+			throw new IllegalArgumentException("limit cannot be negative");
+		}
+		if(bytes < maxBytes)
+			clear();
+		maxBytes = bytes;
+	}
+
+	public static long getMaxBytes(){
+		return maxBytes;
+	}
+
+	/**
+	 * @return
+	 * 	How many bytes of arrays are waiting in the calling thread's pool.
+	 */
+	public static long getPooledBytes(){
+		return pool().pooledBytes;
+	}
+
+	/**
+	 * Drops every array in the pools (each thread's pool is emptied the next time it is used).
+	 */
+	public static synchronized void clear(){
+		generation++;
+		pool(); //the calling thread's pool at once
+	}
+
+	/**
+	 * An array of zeros of exactly the given length, from the pool if one is there.
+	 *
+	 * @param length
+	 * 	The length.
+	 * @return
+	 * 	The array.
+	 */
+	public static double[] take(int length){
+		double[] a = poll(length);
+		if(a == null)
+			return new double[length];
+		Arrays.fill(a, 0);
+		return a;
+	}
+
+	/**
+	 * An array of zeros whose length is the given length rounded up to a power of two (for flat
+	 * storage, where a bigger array is fine), or exactly the length when the rounded array would fill
+	 * the pool.
+	 *
+	 * @param length
+	 * 	The smallest length needed.
+	 * @return
+	 * 	The array.
+	 */
+	public static double[] takeAtLeast(int length){
+		return take(roundedLength(length));
+	}
+
+	/**
+	 * Like take, but the values of a reused array are left as they were (for callers that
+	 * overwrite every value).
+	 */
+	static double[] takeDirty(int length){
+		double[] a = poll(length);
+		return a == null ? new double[length] : a;
+	}
+
+	/**
+	 * Like takeAtLeast, but the values of a reused array are left as they were.
+	 */
+	static double[] takeAtLeastDirty(int length){
+		return takeDirty(roundedLength(length));
+	}
+
+	private static int roundedLength(int length){
+		int rounded = length <= 1 ? length : Integer.highestOneBit(length - 1) << 1;
+		if(rounded <= 0) //above 2^30 there is no power of two to round to
+			return length;
+		if(8L*rounded >= maxBytes) //could only be kept in an empty pool
+			return length;
+		return rounded;
+	}
+
+	private static double[] poll(int length){
+		Buckets pool = pool();
+		ArrayDeque<double[]> bucket = pool.byLength.get(length);
+		double[] a = bucket == null ? null : bucket.poll();
+		if(a != null)
+			pool.pooledBytes -= 8L*length;
+		return a;
+	}
+
+	/**
+	 * Gives an array back to the calling thread's pool. The caller must not use it afterwards.
+	 *
+	 * @param a
+	 * 	The array (null is ignored).
+	 */
+	public static void release(double[] a){
+		if(a == null)
+			return;
+		Buckets pool = pool();
+		if(pool.pooledBytes + 8L*a.length > maxBytes)
+			return;
+		pool.byLength.computeIfAbsent(a.length, k -> new ArrayDeque<double[]>()).push(a); //last in, first out: the warmest array is reused first
+		pool.pooledBytes += 8L*a.length;
+	}
+
+	/**
+	 * Copies a Matrix into a FlatMatrix whose storage comes from the pool.
+	 */
+	static FlatMatrix flatCopy(Matrix that){
+		FlatMatrix copy = new FlatMatrix(takeAtLeastDirty(that.rows*that.cols), 0, that.cols, that.rows, that.cols); //every value is written below
+		for (int ii = 0; ii < that.rows; ii++)
+			copy.setRow(ii, that.m[ii], 0);
+		return copy;
+	}
+}
@@ -0,0 +1,250 @@
+package matrixmath;
+
+/**
+ * The MixedPrecisionSolver class solves Ax = b by factoring A in single precision (float), which
+ * moves half as many bytes through memory and fits twice as many values in each SIMD register, and
+ * then making the answer as accurate as a double solve with iterative refinement:
+ *
+ * 	x = solve with the float factors
+ * 	repeat: r = b - Ax (in double, with the original matrix); x = x + (solve Ad = r with the float factors)
+ *
+ * The loop stops when the residual is as small as a double solve would leave it
+ * (|r| <= tolerance * |A| |x|, in the infinity norm). For a well-conditioned matrix that takes a
+ * few steps, each only O(n^2). If it does not converge (the residual stops halving because the
+ * matrix is too ill-conditioned for float, or its values do not fit in a float) the solver falls
+ * back to a double LUDecomposition.
+ *
+ * The matrix is not copied in double: do not change it while the solver is in use. Each solve
+ * records how many refinement steps it took, its final residual and whether it fell back.
+ *
+ * @method solve
+ * 	Solves Ax = b.
+ * @method getRefinementSteps
+ * 	Number of refinement steps of the last solve.
+ * @method getResidualNorm
+ * 	Final residual of the last solve.
+ * @method usedFallback
+ * 	Whether the last solve used double LU.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class MixedPrecisionSolver {
+	private final Matrix a; //the original matrix, used for residuals
+	private final int n; //size of the matrix
+	private final float[] lu; //L and U packed together (row-major), in single precision
+	private final int[] piv; //piv[i] is the original row that ended up in row i
+	private final double normA; //infinity norm of A
+	private boolean floatFailed; //a zero pivot or overflow while factoring in float
+	private LUDecomposition fallback; //double factors, made only when needed
+	private int maxSteps = 30; //refinement steps before giving up
+	private double tolerance; //relative residual to stop at
+
+	private int steps; //results of the last solve
+	private double residual;
+	private boolean usedFallback;
+
+	/**
+	 * Factors a square Matrix in single precision.
+	 *
+	 * @param a
+	 * 	The matrix (kept, not copied, for computing residuals).
+	 */
+	public MixedPrecisionSolver(Matrix a){
+		if(a.rows != a.cols){
+			throw new IllegalArgumentException("can only solve with a square matrix, not " + a.rows + "x" + a.cols);
+		}
+		this.a = a;
+		this.n = a.rows;
+		this.lu = new float[n*n];
+		this.piv = new int[n];
+		this.tolerance = Math.sqrt(Math.max(1, n)) * Math.ulp(1.0);
+		double norm = 0;
+		for (int ii = 0; ii < n; ii++) {
+			double sum = 0;
+			for (int jj = 0; jj < n; jj++) {
+				double val = a.m[ii][jj];
+				sum += Math.abs(val);
+				lu[ii*n + jj] = (float)val;
+			}
+			norm = Math.max(norm, sum);
+		}
+		normA = norm;
+		factor();
+	}
+
+	/**
+	 * Right-looking LU with partial pivoting, as in LUDecomposition, on floats.
+	 */
+	private void factor(){
+		for (int ii = 0; ii < n; ii++)
+			piv[ii] = ii;
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int kk = 0; kk < n; kk++) {
+			int p = kk;
+			float best = Math.abs(lu[kk*n + kk]);
+			for (int ii = kk+1; ii < n; ii++) {
+				float val = Math.abs(lu[ii*n + kk]);
+				if(val > best){
+					best = val;
+					p = ii;
+				}
+			}
+			if(!(best > 0) || Float.isInfinite(best)){
+				floatFailed = true;
+				return;
+			}
+			if(p != kk){
+				for (int jj = 0; jj < n; jj++) {
+					float tmp = lu[kk*n + jj];
+					lu[kk*n + jj] = lu[p*n + jj];
+					lu[p*n + jj] = tmp;
+				}
+				int tmp = piv[kk];
+				piv[kk] = piv[p];
+				piv[p] = tmp;
+			}
+			float pivot = lu[kk*n + kk];
+			int rowK = kk*n;
+			for (int ii = kk+1; ii < n; ii++) {
+				int rowI = ii*n;
+				float mult = lu[rowI + kk] / pivot;
+				lu[rowI + kk] = mult;
+				if(mult != 0) //float axpy: twice as many lanes as double
+					kernels.axpy(-mult, lu, rowK + kk+1, lu, rowI + kk+1, n-kk-1);
+			}
+		}
+	}
+
+	/**
+	 * Sets the most refinement steps before falling back to double LU.
+	 *
+	 * @param steps
+	 * 	The limit (default 30).
+	 */
+	public void setMaxSteps(int steps){
+		if(steps < 0){
+			throw new IllegalArgumentException("step limit cannot be negative");
+		}
+		maxSteps = steps;
+	}
+
+	/**
+	 * Sets the relative residual |b - Ax| / (|A| |x|) to stop at.
+	 *
+	 * @param tol
+	 * 	The tolerance (default sqrt(n) times the double precision epsilon).
+	 */
+	public void setTolerance(double tol){
+		if(!(tol > 0)){
+			throw new IllegalArgumentException("tolerance must be positive");
+		}
+		tolerance = tol;
+	}
+
+	/**
+	 * Solves Ax = b.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		if(b.length != n){
+			throw new IllegalArgumentException("right-hand side has length " + b.length + ", expected " + n);
+		}
+		steps = 0;
+		usedFallback = false;
+		if(!floatFailed){
+			double[] x = new double[n];
+			double[] r = b.clone();
+			float[] work = new float[n];
+			for (int step = 0; step <= maxSteps; step++) {
+				substitute(r, work);
+				for (int ii = 0; ii < n; ii++)
+					x[ii] += work[ii];
+				double previous = residual;
+				residual = residual(b, x, r); //r is now the new residual
+				steps = step;
+				if(!Double.isFinite(residual))
+					break;
+				if(residual <= tolerance * normA * normInf(x))
+					return x;
+				if(step > 0 && residual > previous/2) //stalled: too ill-conditioned for float
+					break;
+			}
+		}
+		return solveFallback(b);
+	}
+
+	/**
+	 * Solves with the float factors: work = (LU)^-1 P r.
+	 */
+	private void substitute(double[] r, float[] work){
+		for (int ii = 0; ii < n; ii++)
+			work[ii] = (float)r[piv[ii]];
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int ii = 0; ii < n; ii++) //L y = Pb
+			work[ii] -= kernels.dot(lu, ii*n, work, 0, ii);
+		for (int ii = n-1; ii >= 0; ii--) { //U x = y
+			int row = ii*n;
+			work[ii] = (work[ii] - kernels.dot(lu, row + ii+1, work, ii+1, n-ii-1)) / lu[row + ii];
+		}
+	}
+
+	/**
+	 * r = b - Ax in double with the original matrix.
+	 *
+	 * @return
+	 * 	The infinity norm of r.
+	 */
+	private double residual(double[] b, double[] x, double[] r){
+		double norm = 0;
+		for (int ii = 0; ii < n; ii++) {
+			r[ii] = b[ii] - RowKernels.ACTIVE.dot(a.m[ii], 0, x, 0, n);
+			norm = Math.max(norm, Math.abs(r[ii]));
+		}
+		return norm;
+	}
+
+	private static double normInf(double[] x){
+		double norm = 0;
+		for (double val : x)
+			norm = Math.max(norm, Math.abs(val));
+		return norm;
+	}
+
+	private double[] solveFallback(double[] b){
+		if(fallback == null)
+			fallback = MatrixCache.lu(a); //shared with other solvers of the same matrix when the cache is on
+		usedFallback = true;
+		double[] x = fallback.solve(b);
+		residual = residual(b, x, new double[n]);
+		return x;
+	}
+
+	/**
+	 * @return
+	 * 	The number of refinement steps the last solve took (after the first float solve).
+	 */
+	public int getRefinementSteps(){
+		return steps;
+	}
+
+	/**
+	 * @return
+	 * 	The infinity norm of b - Ax for the answer of the last solve.
+	 */
+	public double getResidualNorm(){
+		return residual;
+	}
+
+	/**
+	 * @return
+	 * 	True if the last solve did not converge in float and used double LU instead.
+	 */
+	public boolean usedFallback(){
+		return usedFallback;
+	}
+}
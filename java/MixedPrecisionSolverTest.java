@@ -0,0 +1,40 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.MixedPrecisionSolver;
+
+/**
+ * This class tests MixedPrecisionSolver: a well-conditioned solve must reach double precision by
+ * refinement (checked by |b - Ax| / |b|) without falling back, and the 12x12 Hilbert matrix, too
+ * ill-conditioned for a single precision factorization, must fall back to double precision LU with
+ * a small backward error.
+ *
+ * @author Andrew M.
+ */
+public class MixedPrecisionSolverTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(37);
+		int n = 60;
+		Matrix a = randomMatrix(n, n, rand);
+		double[] b = randomVector(n, rand);
+		MixedPrecisionSolver mixed = new MixedPrecisionSolver(a);
+		check("mixed precision solve", relative(a, mixed.solve(b), b) < 1e-10 && !mixed.usedFallback() && mixed.getRefinementSteps() > 0);
+
+		Matrix hilbert = new Matrix(12, 12); //too ill-conditioned for single precision
+		for (int ii = 0; ii < 12; ii++)
+			for (int jj = 0; jj < 12; jj++)
+				hilbert.setEntry(ii, jj, 1.0/(ii + jj + 1));
+		double[] hb = randomVector(12, rand);
+		MixedPrecisionSolver ill = new MixedPrecisionSolver(hilbert);
+		double[] hx = ill.solve(hb);
+		double backward = norm(subtract(hb, times(hilbert, hx))) / (norm(hx)*Math.sqrt(12)); //|r| / (|A| |x|), and |A| <= sqrt(n) for this matrix
+		check("mixed precision falls back on an ill-conditioned matrix", ill.usedFallback() && backward < 1e-12);
+
+		finish();
+	}
+}
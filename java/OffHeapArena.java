@@ -0,0 +1,79 @@
+package matrixmath;
+
+import java.util.ArrayList;
+
+/**
+ * The OffHeapArena class ties the lifetime of a group of OffHeapMatrix objects together: every
+ * matrix allocated from the arena (including the results of plus and times on those matrices) is
+ * freed when the arena is closed. Use it with try-with-resources:
+ *
+ * 	try (OffHeapArena arena = new OffHeapArena()) {
+ * 		OffHeapMatrix a = arena.allocate(n, n);
+ * 		...
+ * 	}
+ *
+ * An arena is not thread safe.
+ *
+ * @method allocate
+ * 	Allocates a matrix of zeros owned by the arena.
+ * @method copyOf
+ * 	Copies a Matrix into the arena.
+ * @method close
+ * 	Frees every matrix in the arena.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class OffHeapArena implements AutoCloseable {
+	private final ArrayList<OffHeapMatrix> matrices = new ArrayList<OffHeapMatrix>();
+	private boolean closed;
+
+	/**
+	 * Allocates a matrix of zeros that is freed with the arena.
+	 *
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 * @return
+	 * 	The new matrix.
+	 */
+	public OffHeapMatrix allocate(int i, int j){
+		return register(new OffHeapMatrix(i, j));
+	}
+
+	/**
+	 * Copies a Matrix into native memory owned by the arena.
+	 *
+	 * @param that
+	 * 	The matrix to copy.
+	 * @return
+	 * 	The off-heap copy.
+	 */
+	public OffHeapMatrix copyOf(Matrix that){
+		OffHeapMatrix copy = allocate(that.rows, that.cols);
+		for (int ii = 0; ii < that.rows; ii++)
+			copy.setRow(ii, that.m[ii]);
+		return copy;
+	}
+
+	OffHeapMatrix register(OffHeapMatrix matrix){
+		if(closed){
+			throw new IllegalStateException("arena has been closed");
+		}
+		matrix.setArena(this);
+		matrices.add(matrix);
+		return matrix;
+	}
+
+	/**
+	 * Frees every matrix allocated from the arena. Closing twice does nothing.
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		for (OffHeapMatrix matrix : matrices)
+			matrix.close();
+		matrices.clear();
+	}
+}
@@ -0,0 +1,541 @@
+package matrixmath;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The OffHeapMatrix class keeps its values outside the Java heap, in direct (native) memory, so
+ * very large matrices do not have to be scanned or copied by the garbage collector. Values are
+ * stored row by row; because one buffer can hold at most 2 GB, the rows are spread over several
+ * chunks, each holding a whole number of rows.
+ *
+ * Direct memory is limited by the JVM option -XX:MaxDirectMemorySize (by default the same as the
+ * maximum heap size, -Xmx); allocating past it throws OutOfMemoryError ("Direct buffer memory").
+ * Raise the option for matrices larger than the heap, or use a file mapped by MatrixIO.map, which
+ * does not count against it.
+ *
+ * The memory is released by close (directly, without waiting for the garbage collector), or by the
+ * OffHeapArena that allocated the matrix when the arena is closed. Using a matrix after it is closed
+ * throws an IllegalStateException. Every operation counts itself in while it runs, so closing a
+ * matrix that another thread is still using is safe: the memory is freed when the last running
+ * operation finishes.
+ *
+ * plus and times work one row (or one block of rows) at a time through small on-heap buffers:
+ * times multiplies a block of rows of this matrix with every row of the second matrix in turn.
+ * rowreduce does Gauss-Jordan elimination with partial pivoting exactly as Elimination does, on the
+ * rows where they are in native memory; only the pivot row of each column is copied to the heap.
+ *
+ * @method get
+ * 	Gets a particular entry of the matrix.
+ * @method set
+ * 	Sets a particular entry of the matrix.
+ * @method getRow
+ * 	Copies one row into an array.
+ * @method setRow
+ * 	Copies an array into one row.
+ * @method plus
+ * 	Adds two matrices.
+ * @method times
+ * 	Multiplies two matrices.
+ * @method rowreduce
+ * 	Rowreduces the matrix in place.
+ * @method toMatrix
+ * 	Copies the values into a (heap) Matrix.
+ * @method close
+ * 	Frees the native memory.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class OffHeapMatrix implements AutoCloseable {
+	private static final int MAX_CHUNK_DOUBLES = 1 << 27; //1 GB per chunk
+	private static final int ROW_BLOCK = 64; //rows of this matrix multiplied at once in times
+	private static final int CLOSED = 1 << 30; //bit of users set by close
+
+	final int rows; //number of rows
+	final int cols; //number of columns
+	final int rowsPerChunk; //whole rows stored in each chunk
+	private ByteBuffer[] chunks; //native memory (null once closed)
+	private DoubleBuffer[] views; //the chunks seen as doubles
+	private final boolean owned; //false when the memory belongs to someone else
+	private OffHeapArena arena; //arena that allocated this matrix, if any
+	private final AtomicInteger users = new AtomicInteger(); //operations running, plus CLOSED once closed
+
+	/**
+	 * Allocates a matrix of zeros in native memory.
+	 *
+	 * @param i
+	 * 	The number of rows.
+	 * @param j
+	 * 	The number of columns.
+	 */
+	public OffHeapMatrix(int i, int j){
+		this(i, j, allocate(i, j), true);
+	}
+
+	/**
+	 * Wraps buffers that already hold the rows (for example memory-mapped from a file), in the
+	 * byte order each buffer is set to.
+	 *
+	 * @param owned
+	 * 	True if close should free (or unmap) the buffers.
+	 */
+	OffHeapMatrix(int i, int j, ByteBuffer[] chunks, boolean owned){
+		this.rows = i;
+		this.cols = j;
+		this.rowsPerChunk = rowsPerChunk(j);
+		this.chunks = chunks;
+		this.views = new DoubleBuffer[chunks.length];
+		for (int cc = 0; cc < chunks.length; cc++) {
+			views[cc] = chunks[cc].asDoubleBuffer();
+		}
+		this.owned = owned;
+	}
+
+	/**
+	 * @return
+	 * 	Number of whole rows that fit in one chunk.
+	 */
+	static int rowsPerChunk(int cols){
+		return Math.max(1, MAX_CHUNK_DOUBLES / Math.max(1, cols));
+	}
+
+	private static ByteBuffer[] allocate(int i, int j){
+		if(j > MAX_CHUNK_DOUBLES){
+			throw new IllegalArgumentException("rows longer than " + MAX_CHUNK_DOUBLES + " doubles are not supported");
+		}
+		int perChunk = rowsPerChunk(j);
+		int count = (i + perChunk - 1) / perChunk;
+		ByteBuffer[] chunks = new ByteBuffer[count];
+		for (int cc = 0; cc < count; cc++) {
+			int chunkRows = Math.min(perChunk, i - cc*perChunk);
+			chunks[cc] = ByteBuffer.allocateDirect(chunkRows * j * Double.BYTES).order(ByteOrder.nativeOrder());
+		}
+		return chunks;
+	}
+
+	/**
+	 * Copies a Matrix into native memory.
+	 *
+	 * @param that
+	 * 	The matrix to copy.
+	 * @return
+	 * 	The off-heap copy.
+	 */
+	public static OffHeapMatrix fromMatrix(Matrix that){
+		OffHeapMatrix copy = new OffHeapMatrix(that.rows, that.cols);
+		for (int ii = 0; ii < that.rows; ii++)
+			copy.setRow(ii, that.m[ii]);
+		return copy;
+	}
+
+	void setArena(OffHeapArena arena){
+		this.arena = arena;
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * Counts an operation in; the memory is not freed until it is counted out by release.
+	 */
+	private void acquire(){
+		for (;;) {
+			int u = users.get();
+			if((u & CLOSED) != 0){
+				throw new IllegalStateException("matrix has been closed");
+			}
+			if(users.compareAndSet(u, u+1))
+				return;
+		}
+	}
+
+	private void release(){
+		if(users.decrementAndGet() == CLOSED) //last operation to finish after close frees the memory
+			freeChunks();
+	}
+
+	private DoubleBuffer chunk(int i){
+		DoubleBuffer[] v = views;
+		if(v == null){
+			throw new IllegalStateException("matrix has been closed");
+		}
+		return v[i / rowsPerChunk];
+	}
+
+	private int index(int i, int j){
+		return (i % rowsPerChunk)*cols + j;
+	}
+
+	/**
+	 * Gets an entry of the matrix.
+	 *
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value at (i, j).
+	 */
+	public double get(int i, int j){
+		acquire();
+		try {
+			return chunk(i).get(index(i, j));
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Sets an entry of the matrix with value d.
+	 *
+	 * @param i
+	 * 	Row of new entry
+	 * @param j
+	 * 	Column of new entry
+	 * @param d
+	 * 	The value to put in the matrix.
+	 */
+	public void set(int i, int j, double d){
+		acquire();
+		try {
+			chunk(i).put(index(i, j), d);
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Copies one row into an array (at least cols long).
+	 *
+	 * @param i
+	 * 	The row to copy.
+	 * @param dest
+	 * 	The array to copy into.
+	 */
+	public void getRow(int i, double[] dest){
+		acquire();
+		try {
+			readRow(i, dest);
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Copies an array into one row.
+	 *
+	 * @param i
+	 * 	The row to fill.
+	 * @param src
+	 * 	The array to copy from.
+	 */
+	public void setRow(int i, double[] src){
+		acquire();
+		try {
+			writeRow(i, src);
+		}
+		finally {
+			release();
+		}
+	}
+
+	//the row and entry access used inside an operation that has already called acquire
+	private void readRow(int i, double[] dest){
+		chunk(i).get(index(i, 0), dest, 0, cols);
+	}
+
+	private void writeRow(int i, double[] src){
+		chunk(i).put(index(i, 0), src, 0, cols);
+	}
+
+	private double read(int i, int j){
+		return chunk(i).get(index(i, j));
+	}
+
+	/**
+	 * Adds two matrices, one row at a time.
+	 *
+	 * @param that
+	 * 	The second matrix to be added.
+	 * @return
+	 * 	New off-heap matrix with the sum (in the same arena as this one), or null if the sizes do not agree.
+	 */
+	public OffHeapMatrix plus(OffHeapMatrix that){
+		if(rows != that.rows || cols != that.cols){
+			return null; //if does not agree in size
+		}
+		acquire();
+		try {
+			that.acquire();
+			try {
+				OffHeapMatrix added = newResult(rows, cols);
+				double[] a = new double[cols], b = new double[cols];
+				for (int ii = 0; ii < rows; ii++) {
+					readRow(ii, a);
+					that.readRow(ii, b);
+					RowKernels.ACTIVE.add(a, 0, b, 0, a, 0, cols);
+					added.writeRow(ii, a);
+				}
+				return added;
+			}
+			finally {
+				that.release();
+			}
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Multiplies two matrices. A block of rows of this matrix (and of the product) is copied into
+	 * heap buffers, and every row of that is read once per block and added into the product rows.
+	 *
+	 * @param that
+	 * 	The matrix used to multiply this one by (remember not commutative)
+	 * @return
+	 * 	New off-heap matrix with the product (in the same arena as this one).
+	 */
+	public OffHeapMatrix times(OffHeapMatrix that){
+		if(cols != that.rows){
+			throw new IllegalArgumentException("cannot multiply a " + rows + "x" + cols + " by a " + that.rows + "x" + that.cols + " matrix");
+		}
+		acquire();
+		try {
+			that.acquire();
+			try {
+				return timesAcquired(that);
+			}
+			finally {
+				that.release();
+			}
+		}
+		finally {
+			release();
+		}
+	}
+
+	private OffHeapMatrix timesAcquired(OffHeapMatrix that){
+		OffHeapMatrix mult = newResult(rows, that.cols);
+		int block = Math.min(ROW_BLOCK, Math.max(1, rows));
+		double[] a = new double[block*cols]; //block of rows of this matrix
+		double[] c = new double[block*that.cols]; //same rows of the product
+		double[] bRow = new double[that.cols];
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int i0 = 0; i0 < rows; i0 += block) {
+			int count = Math.min(block, rows - i0);
+			for (int ii = 0; ii < count; ii++)
+				chunk(i0+ii).get(index(i0+ii, 0), a, ii*cols, cols);
+			java.util.Arrays.fill(c, 0);
+			for (int kk = 0; kk < cols; kk++) {
+				that.readRow(kk, bRow);
+				for (int ii = 0; ii < count; ii++) {
+					double aik = a[ii*cols + kk];
+					if(aik != 0)
+						kernels.axpy(aik, bRow, 0, c, ii*that.cols, that.cols);
+				}
+			}
+			for (int ii = 0; ii < count; ii++)
+				mult.chunk(i0+ii).put(mult.index(i0+ii, 0), c, ii*that.cols, that.cols);
+		}
+		return mult;
+	}
+
+	/**
+	 * Rowreduces the first max columns in place (Gauss-Jordan with partial pivoting, giving the same
+	 * result as Elimination: the same tolerance, and exact zeros below the pivots of a column that has
+	 * none).
+	 *
+	 * @param max
+	 * 	Number of columns to reduce.
+	 * @return
+	 * 	The rank of those columns.
+	 */
+	public int rowreduce(int max){
+		acquire();
+		try {
+			return rowreduceAcquired(max);
+		}
+		finally {
+			release();
+		}
+	}
+
+	private int rowreduceAcquired(int max){
+		double largest = 0;
+		for (int ii = 0; ii < rows; ii++) {
+			DoubleBuffer buf = chunk(ii);
+			int row = index(ii, 0);
+			for (int jj = 0; jj < cols; jj++)
+				largest = Math.max(largest, Math.abs(buf.get(row+jj)));
+		}
+		double tolerance = Math.max(rows, cols) * Math.ulp(largest);
+
+		double[] pivotRow = new double[cols]; //heap copy of the pivot row, read by every other row
+		int rank = 0;
+		for (int col = 0; col < max && rank < rows; col++) {
+			int pivot = -1;
+			double best = tolerance;
+			for (int ii = rank; ii < rows; ii++) { //partial pivoting: biggest entry is the most stable pivot
+				double val = Math.abs(read(ii, col));
+				if(val > best){
+					best = val;
+					pivot = ii;
+				}
+			}
+			if(pivot < 0){ //column is all (numerically) zero below the pivots found so far
+				for (int ii = rank; ii < rows; ii++)
+					chunk(ii).put(index(ii, col), 0);
+				continue;
+			}
+			if(pivot != rank){ //entries left of col are zero in both rows
+				DoubleBuffer a = chunk(pivot), b = chunk(rank);
+				int ra = index(pivot, 0), rb = index(rank, 0);
+				for (int jj = col; jj < cols; jj++) {
+					double tmp = a.get(ra+jj);
+					a.put(ra+jj, b.get(rb+jj));
+					b.put(rb+jj, tmp);
+				}
+			}
+
+			DoubleBuffer pbuf = chunk(rank);
+			int prow = index(rank, 0);
+			double inv = 1/pbuf.get(prow+col);
+			for (int jj = col+1; jj < cols; jj++) { //entries left of col are already zero
+				double val = pbuf.get(prow+jj)*inv;
+				pivotRow[jj] = val;
+				pbuf.put(prow+jj, val);
+			}
+			pbuf.put(prow+col, 1);
+
+			for (int ii = 0; ii < rows; ii++) {
+				DoubleBuffer buf = chunk(ii);
+				int row = index(ii, 0);
+				double factor = buf.get(row+col);
+				if(ii == rank || factor == 0)
+					continue;
+				for (int jj = col+1; jj < cols; jj++) //row ii -= factor * pivot row
+					buf.put(row+jj, buf.get(row+jj) - factor*pivotRow[jj]);
+				buf.put(row+col, 0); //exactly zero instead of rounding error
+			}
+			rank++;
+		}
+		return rank;
+	}
+
+	/**
+	 * Rowreduces as many columns as possible, in place.
+	 *
+	 * @return
+	 * 	The rank of the matrix.
+	 */
+	public int rowreduce(){
+		return rowreduce(Math.min(rows, cols));
+	}
+
+	/**
+	 * Copies the values into a Matrix.
+	 *
+	 * @return
+	 * 	A heap Matrix with the same values.
+	 */
+	public Matrix toMatrix(){
+		acquire();
+		try {
+			Matrix mat = new Matrix(rows, cols);
+			for (int ii = 0; ii < rows; ii++)
+				readRow(ii, mat.m[ii]);
+			return mat;
+		}
+		finally {
+			release();
+		}
+	}
+
+	private OffHeapMatrix newResult(int i, int j){
+		return arena != null ? arena.allocate(i, j) : new OffHeapMatrix(i, j);
+	}
+
+	/**
+	 * @return
+	 * 	True once close has been called.
+	 */
+	public boolean isClosed(){
+		return (users.get() & CLOSED) != 0;
+	}
+
+	/**
+	 * Frees the native memory: right away, or if other threads are in the middle of operations on
+	 * this matrix, as soon as the last of them finishes. Closing twice does nothing.
+	 */
+	@Override
+	public void close(){
+		for (;;) {
+			int u = users.get();
+			if((u & CLOSED) != 0)
+				return;
+			if(users.compareAndSet(u, u | CLOSED)){
+				if(u == 0) //nothing running
+					freeChunks();
+				return;
+			}
+		}
+	}
+
+	private void freeChunks(){
+		ByteBuffer[] old = chunks;
+		chunks = null;
+		views = null;
+		if(owned){
+			for (ByteBuffer chunk : old)
+				free(chunk);
+		}
+	}
+
+	private static final Object UNSAFE; //sun.misc.Unsafe, used only to free direct buffers early
+	private static final Method INVOKE_CLEANER;
+	static {
+		Object unsafe = null;
+		Method cleaner = null;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			cleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		}
+		catch(Exception e){ //not available: memory is freed when the buffer is garbage collected
+			unsafe = null;
+			cleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = cleaner;
+	}
+
+	/**
+	 * Frees a direct buffer now instead of when it is garbage collected.
+	 */
+	static void free(ByteBuffer buffer){
+		if(INVOKE_CLEANER == null || !buffer.isDirect())
+			return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		}
+		catch(Exception e){
+			//leave it to the garbage collector
+		}
+	}
+}
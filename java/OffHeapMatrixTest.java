@@ -0,0 +1,85 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.OffHeapArena;
+import matrixmath.OffHeapMatrix;
+
+/**
+ * This class tests OffHeapMatrix: plus and times against the heap Matrix, rowreduce giving exactly
+ * the result of Matrix.rowreduce (on a matrix with a dependent row and a column without a pivot),
+ * closing a matrix while another thread is multiplying with it (the multiply must either finish
+ * with the right product or be refused, never read freed memory), and an arena freeing everything
+ * it allocated.
+ *
+ * @author Andrew M.
+ */
+public class OffHeapMatrixTest {
+
+	public static void main(String[] args) throws InterruptedException {
+		Random rand = new Random(19);
+		Matrix a = randomMatrix(70, 50, rand), b = randomMatrix(50, 60, rand);
+		try (OffHeapArena arena = new OffHeapArena()) {
+			OffHeapMatrix oa = arena.copyOf(a), ob = arena.copyOf(b);
+			check("off-heap times", maxDifference(oa.times(ob).toMatrix(), a.times(b)) < 1e-12);
+			check("off-heap plus", maxDifference(oa.plus(oa).toMatrix(), a.plus(a)) == 0);
+		}
+
+		int[][] shapes = {{40, 40}, {30, 50}, {50, 30}};
+		for (int[] shape : shapes) {
+			Matrix m = new Matrix(shape[0], shape[1]);
+			for (int ii = 0; ii < shape[0]; ii++)
+				for (int jj = 0; jj < shape[1]; jj++)
+					m.setEntry(ii, jj, rand.nextInt(5) - 2);
+			for (int jj = 0; jj < shape[1]; jj++)
+				m.setEntry(3, jj, 2*m.m[1][jj] - m.m[2][jj]); //a dependent row
+			for (int ii = 0; ii < shape[0]; ii++)
+				m.setEntry(ii, 5, 3*m.m[ii][4]); //a column with no pivot of its own
+			try (OffHeapMatrix off = OffHeapMatrix.fromMatrix(m)) {
+				off.rowreduce();
+				check(shape[0] + "x" + shape[1] + " off-heap rowreduce matches Matrix.rowreduce", maxDifference(off.toMatrix(), m.rowreduce()) == 0);
+			}
+		}
+
+		Matrix big = randomMatrix(300, 300, rand);
+		Matrix expected = big.times(big);
+		boolean safe = true;
+		for (int delay = 0; delay < 4; delay++) {
+			OffHeapMatrix shared = OffHeapMatrix.fromMatrix(big);
+			boolean[] ok = {false};
+			Thread user = new Thread(() -> {
+				try (OffHeapMatrix product = shared.times(shared)) {
+					ok[0] = maxDifference(product.toMatrix(), expected) < 1e-10;
+				}
+				catch(IllegalStateException e){
+					ok[0] = true; //closed before the multiply started
+				}
+			});
+			user.start();
+			Thread.sleep(delay*5);
+			shared.close(); //the memory must stay until the multiply is done with it
+			user.join();
+			boolean refused = false;
+			try {
+				shared.get(0, 0);
+			}
+			catch(IllegalStateException e){
+				refused = true;
+			}
+			safe &= ok[0] && shared.isClosed() && refused;
+		}
+		check("close while another thread multiplies", safe);
+
+		OffHeapMatrix inArena, result;
+		try (OffHeapArena arena = new OffHeapArena()) {
+			inArena = arena.allocate(10, 10);
+			result = inArena.times(inArena); //results belong to the same arena
+		}
+		check("arena frees its matrices and their results", inArena.isClosed() && result.isClosed());
+
+		finish();
+	}
+}
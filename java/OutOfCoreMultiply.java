@@ -0,0 +1,203 @@
+package matrixmath;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The OutOfCoreMultiply class multiplies matrices that live in TiledMatrix files, for matrices too
+ * large to fit in memory. Each tile of the product is computed as the sum over k of
+ * A(bi, k) * B(k, bj) and written to disk once; only a fixed number of tiles are in memory at any
+ * time: the product tile being summed plus a small pool of A and B tile pairs.
+ *
+ * Reading is overlapped with computing: a reader task on an executor loads the next tile pairs into
+ * free buffers from the pool (up to the read-ahead depth) while the current pair is multiplied. When
+ * the pool is empty the reader waits for the multiply to hand a buffer back, so memory stays
+ * bounded however large the files are. With tile size t and read-ahead d, about (2d + 3)*t*t
+ * doubles are used. The tile multiply itself uses ParallelMatrixOps, so all cores are busy.
+ *
+ * @method multiply
+ * 	Multiplies two tiled matrices into a third.
+ * @method setReadAhead
+ * 	Sets how many tile pairs are read ahead.
+ * @method setExecutor
+ * 	Sets the executor the reader task runs on.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class OutOfCoreMultiply {
+	private static int readAhead = 2; //tile pairs loaded ahead of the one being multiplied
+	private static ExecutorService executor; //runs the reader task; null means one made per multiply
+
+	/**
+	 * Sets how many tile pairs are read ahead of the multiply (more hides slower disks, at the cost
+	 * of two tiles of memory each).
+	 *
+	 * @param pairs
+	 * 	The read-ahead depth (at least 1).
+	 */
+	public static void setReadAhead(int pairs){
+		if(pairs < 1){
+			throw new IllegalArgumentException("read-ahead must be at least 1");
+		}
+		readAhead = pairs;
+	}
+
+	public static int getReadAhead(){
+		return readAhead;
+	}
+
+	/**
+	 * Sets the executor the reader task runs on (null to use a new thread for each multiply).
+	 *
+	 * @param e
+	 * 	The executor to use.
+	 */
+	public static void setExecutor(ExecutorService e){
+		executor = e;
+	}
+
+	/**
+	 * A pair of A and B tiles, or (with done set) the end of the stream.
+	 */
+	private static class TilePair {
+		final FlatMatrix a, b;
+		boolean last; //last pair for the current product tile
+		boolean done; //no more pairs (the reader finished or failed)
+		Throwable error; //why the reader stopped, null if it just ran out
+
+		TilePair(int tile){
+			a = new FlatMatrix(tile, tile);
+			b = new FlatMatrix(tile, tile);
+		}
+
+		TilePair(Throwable error){
+			a = null;
+			b = null;
+			done = true;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Multiplies two tiled files into a new tiled file.
+	 *
+	 * @param a
+	 * 	File with the left matrix.
+	 * @param b
+	 * 	File with the right matrix (same tile size).
+	 * @param c
+	 * 	File to write the product to (replaced if it exists).
+	 * @throws IOException
+	 * 	If a file cannot be read or written.
+	 */
+	public static void multiply(Path a, Path b, Path c) throws IOException {
+		try (TiledMatrix left = TiledMatrix.open(a, false); TiledMatrix right = TiledMatrix.open(b, false)) {
+			try (TiledMatrix product = TiledMatrix.create(c, left.rows, right.cols, left.tile)) {
+				multiply(left, right, product);
+			}
+		}
+	}
+
+	/**
+	 * Multiplies two tiled matrices, writing every tile of c.
+	 *
+	 * @param a
+	 * 	The left matrix.
+	 * @param b
+	 * 	The right matrix (a's columns must equal b's rows).
+	 * @param c
+	 * 	Where to put the product (a's rows by b's columns, opened for writing).
+	 * @throws IOException
+	 * 	If a file cannot be read or written.
+	 */
+	public static void multiply(TiledMatrix a, TiledMatrix b, TiledMatrix c) throws IOException {
+		if(a.cols != b.rows || c.rows != a.rows || c.cols != b.cols){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix into a " + c.rows + "x" + c.cols + " matrix");
+		}
+		if(a.tile != b.tile || a.tile != c.tile){
+			throw new IllegalArgumentException("all three matrices must use the same tile size");
+		}
+		int tile = a.tile;
+		BlockingQueue<TilePair> free = new ArrayBlockingQueue<TilePair>(readAhead + 1);
+		BlockingQueue<TilePair> ready = new ArrayBlockingQueue<TilePair>(readAhead + 2);
+		for (int pp = 0; pp <= readAhead; pp++)
+			free.add(new TilePair(tile));
+
+		ExecutorService runner = executor != null ? executor : Executors.newSingleThreadExecutor();
+		Future<?> reader = runner.submit(() -> readTiles(a, b, c, free, ready));
+		FlatMatrix sum = new FlatMatrix(tile, tile);
+		try {
+			for (int bi = 0; bi < c.tilesDown; bi++) {
+				for (int bj = 0; bj < c.tilesAcross; bj++) {
+					java.util.Arrays.fill(sum.data, 0);
+					boolean last = (a.tilesAcross == 0); //nothing to sum
+					while(!last){
+						TilePair pair = ready.take();
+						if(pair.done){
+							throw readerFailure(pair.error);
+						}
+						ParallelMatrixOps.multiplyAdd(pair.a, pair.b, sum);
+						last = pair.last;
+						free.put(pair);
+					}
+					c.writeTile(bi, bj, sum.data);
+				}
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while multiplying", e);
+		}
+		finally {
+			reader.cancel(true);
+			if(runner != executor)
+				runner.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reader task: loads A(bi, k) and B(k, bj) in the order the multiply uses them.
+	 */
+	private static void readTiles(TiledMatrix a, TiledMatrix b, TiledMatrix c, BlockingQueue<TilePair> free, BlockingQueue<TilePair> ready){
+		try {
+			int inner = a.tilesAcross;
+			for (int bi = 0; bi < c.tilesDown; bi++) {
+				for (int bj = 0; bj < c.tilesAcross; bj++) {
+					for (int kk = 0; kk < inner; kk++) {
+						TilePair pair = free.take();
+						a.readTile(bi, kk, pair.a.data);
+						b.readTile(kk, bj, pair.b.data);
+						pair.last = (kk == inner-1);
+						ready.put(pair);
+					}
+				}
+			}
+		}
+		catch(InterruptedException e){
+			//the multiply is finished or failed
+		}
+		catch(Throwable e){ //anything else must still wake the multiply, or it waits for tiles forever
+			ready.offer(new TilePair(e)); //there is always room for this one (see the queue sizes)
+		}
+	}
+
+	/**
+	 * The exception to throw for a reader that stopped: its IOException, RuntimeException or Error
+	 * itself, anything else wrapped in an IOException.
+	 */
+	private static IOException readerFailure(Throwable error){
+		if(error instanceof IOException)
+			return (IOException)error;
+		if(error instanceof RuntimeException)
+			throw (RuntimeException)error;
+		if(error instanceof Error)
+			throw (Error)error;
+		return new IOException("tile reader stopped early", error);
+	}
+}
@@ -0,0 +1,107 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import matrixmath.Matrix;
+import matrixmath.OutOfCoreMultiply;
+import matrixmath.TiledMatrix;
+
+/**
+ * This class tests OutOfCoreMultiply: the tiled product (with tiles that do not divide the
+ * matrices) against Matrix.times for two read-ahead depths, shapes that do not match, and a tile
+ * reader that fails, with an IOException (a truncated file) or a RuntimeException, which must make
+ * multiply throw instead of waiting forever for tiles (a watchdog ends the test if it hangs).
+ *
+ * @author Andrew M.
+ */
+public class OutOfCoreMultiplyTest {
+
+	public static void main(String[] args) throws Exception {
+		Thread watchdog = new Thread(() -> {
+			try {
+				Thread.sleep(60000);
+			}
+			catch(InterruptedException e){
+				return;
+			}
+			System.out.println("FAILED out-of-core multiply hung");
+			System.exit(1);
+		});
+		watchdog.setDaemon(true);
+		watchdog.start();
+
+		Random rand = new Random(29);
+		Path dir = Files.createTempDirectory("outofcore");
+		Path fa = dir.resolve("a.mxb"), fb = dir.resolve("b.mxb"), fc = dir.resolve("c.mxb");
+		try {
+			Matrix a = randomMatrix(100, 70, rand), b = randomMatrix(70, 90, rand);
+			TiledMatrix.fromMatrix(a, fa, 32).close();
+			TiledMatrix.fromMatrix(b, fb, 32).close();
+			Matrix expected = a.times(b);
+			int depth = OutOfCoreMultiply.getReadAhead();
+			for (int ahead : new int[]{1, 4}) {
+				OutOfCoreMultiply.setReadAhead(ahead);
+				OutOfCoreMultiply.multiply(fa, fb, fc);
+				try (TiledMatrix c = TiledMatrix.open(fc, false)) {
+					check("out-of-core product, read-ahead " + ahead, maxDifference(c.toMatrix(), expected) < 1e-12);
+				}
+			}
+			OutOfCoreMultiply.setReadAhead(depth);
+
+			boolean refused = false;
+			try {
+				OutOfCoreMultiply.multiply(fa, fa, fc); //100x70 times 100x70
+			}
+			catch(IllegalArgumentException e){
+				refused = true;
+			}
+			check("out-of-core multiply refuses mismatched shapes", refused);
+
+			try (TiledMatrix left = TiledMatrix.open(fa, false); TiledMatrix right = TiledMatrix.open(fb, false);
+					TiledMatrix c = TiledMatrix.create(fc, 100, 90, 32)) {
+				Field buffers = TiledMatrix.class.getDeclaredField("buffers");
+				buffers.setAccessible(true);
+				buffers.set(right, ThreadLocal.withInitial(() -> {
+					throw new IllegalStateException("reader bug");
+				}));
+				boolean thrown = false;
+				try {
+					OutOfCoreMultiply.multiply(left, right, c);
+				}
+				catch(IllegalStateException e){
+					thrown = true;
+				}
+				check("a reader RuntimeException reaches the multiply", thrown);
+			}
+
+			try (FileChannel channel = FileChannel.open(fb, StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() / 2);
+			}
+			boolean thrown = false;
+			try {
+				OutOfCoreMultiply.multiply(fa, fb, fc);
+			}
+			catch(IOException e){
+				thrown = true;
+			}
+			check("a truncated file reaches the multiply as an IOException", thrown);
+		}
+		finally {
+			Files.deleteIfExists(fa);
+			Files.deleteIfExists(fb);
+			Files.deleteIfExists(fc);
+			Files.deleteIfExists(dir);
+		}
+
+		watchdog.interrupt();
+		finish();
+	}
+}
@@ -0,0 +1,240 @@
+package matrixmath;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * The ParallelMatrixOps class multiplies and adds matrices on several cores. The output matrix is
+ * split into blocks of rows with fork/join tasks: a task with too many rows splits itself in half,
+ * and a task small enough runs the serial kernel (MatrixMultiply) on its rows. Each task writes to
+ * its own rows of the output, so no locking is needed.
+ *
+ * Below a size threshold the serial kernel is used directly, because starting tasks costs more than
+ * it saves for small matrices. The pool (and so the number of cores used) can be changed.
+ *
+ * @method multiply
+ * 	Multiplies two matrices in parallel.
+ * @method add
+ * 	Adds two matrices in parallel.
+ * @method setPool
+ * 	Sets the ForkJoinPool the tasks run in.
+ * @method setParallelism
+ * 	Uses a new pool with the given number of threads.
+ * @method setThreshold
+ * 	Sets the amount of work below which the serial kernel is used.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class ParallelMatrixOps {
+	private static volatile ForkJoinPool pool = ForkJoinPool.commonPool(); //where the tasks run
+	private static boolean ownPool = false; //whether pool was made by setParallelism (and so is shut down here)
+	private static long threshold = 1L << 18; //multiply-adds (or additions) below which to stay serial
+	private static final int MIN_ROWS = 8; //tasks are never split below this many rows
+
+	/**
+	 * Sets the pool the tasks run in. A pool made by setParallelism that is replaced is shut down
+	 * (tasks already running in it finish first, and a call that reached it just after the shutdown
+	 * runs again in the new pool); a pool passed in here is left to the caller.
+	 *
+	 * @param p
+	 * 	The pool to use.
+	 */
+	public static void setPool(ForkJoinPool p){
+		if(p == null){
+			throw new IllegalArgumentException("pool cannot be null");
+		}
+		replacePool(p, false);
+	}
+
+	private static synchronized void replacePool(ForkJoinPool p, boolean own){
+		ForkJoinPool old = pool;
+		boolean ownedOld = ownPool;
+		pool = p;
+		ownPool = own;
+		if(ownedOld && old != p)
+			old.shutdown();
+	}
+
+	/**
+	 * @return
+	 * 	The pool the tasks run in.
+	 */
+	public static ForkJoinPool getPool(){
+		return pool;
+	}
+
+	/**
+	 * Runs the tasks in a new pool with a given number of threads.
+	 *
+	 * @param threads
+	 * 	The number of threads (cores) to use.
+	 */
+	public static void setParallelism(int threads){
+		replacePool(new ForkJoinPool(threads), true);
+	}
+
+	/**
+	 * Sets the amount of work below which the serial kernel is used.
+	 *
+	 * @param work
+	 * 	Number of multiply-adds (for multiply) or additions (for add).
+	 */
+	public static void setThreshold(long work){
+		threshold = work;
+	}
+
+	public static long getThreshold(){
+		return threshold;
+	}
+
+	/**
+	 * Multiplies two matrices, splitting the rows of the product between tasks.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix (remember not commutative).
+	 * @return
+	 * 	New matrix with the product.
+	 */
+	public static FlatMatrix multiply(FlatMatrix a, FlatMatrix b){
+		if(a.cols != b.rows){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix");
+		}
+		FlatMatrix c = new FlatMatrix(a.rows, b.cols);
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Adds the product a*b to c, splitting the rows of c between tasks.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix.
+	 * @param c
+	 * 	The matrix the product is added to.
+	 */
+	public static void multiplyAdd(FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		long work = (long)a.rows * a.cols * b.cols;
+		if(work < threshold || a.rows < 2*MIN_ROWS){
+			MatrixMultiply.multiplyAdd(a, b, c); //too small to be worth splitting
+			return;
+		}
+		if(a.cols != b.rows || c.rows != a.rows || c.cols != b.cols){
+			throw new IllegalArgumentException("dimensions do not agree");
+		}
+		long rowsPerTask = Math.max(MIN_ROWS, threshold / Math.max(1, (long)a.cols * b.cols));
+		invoke(() -> new MultiplyTask(a, b, c, 0, a.rows, (int)Math.min(rowsPerTask, a.rows)));
+	}
+
+	/**
+	 * Adds two matrices, splitting the rows between tasks.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix (same dimensions).
+	 * @return
+	 * 	New matrix with the sum, or null if the sizes do not agree.
+	 */
+	public static FlatMatrix add(FlatMatrix a, FlatMatrix b){
+		if(a.rows != b.rows || a.cols != b.cols){
+			return null; //if does not agree in size (same as plus)
+		}
+		long work = (long)a.rows * a.cols;
+		if(work < threshold || a.rows < 2*MIN_ROWS){
+			return a.plus(b);
+		}
+		FlatMatrix c = new FlatMatrix(a.rows, a.cols);
+		long rowsPerTask = Math.max(MIN_ROWS, threshold / Math.max(1, a.cols));
+		invoke(() -> new AddTask(a, b, c, 0, a.rows, (int)Math.min(rowsPerTask, a.rows)));
+		return c;
+	}
+
+	/**
+	 * Runs a task in the current pool. replacePool may shut the pool down between reading it and
+	 * submitting the task; the task was then never started, so a new one is run in the pool that
+	 * replaced it. A rejection by the pool still in use is a real failure and is thrown.
+	 */
+	private static void invoke(Supplier<RecursiveAction> task){
+		while(true){
+			ForkJoinPool p = pool;
+			try{
+				p.invoke(task.get());
+				return;
+			}
+			catch(RejectedExecutionException e){
+				if(p == pool)
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * Computes rows start to end of c += a*b, splitting in half until the block is small enough.
+	 */
+	private static class MultiplyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FlatMatrix a, b, c;
+		private final int start, end, grain;
+
+		MultiplyTask(FlatMatrix a, FlatMatrix b, FlatMatrix c, int start, int end, int grain){
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute(){
+			if(end - start <= grain){
+				if(b.cols == 1)
+					MatrixMultiply.multiplyVector(a, b, c, start, end);
+				else
+					MatrixMultiply.multiplyBlocked(a, b, c, start, end);
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new MultiplyTask(a, b, c, start, mid, grain), new MultiplyTask(a, b, c, mid, end, grain));
+		}
+	}
+
+	/**
+	 * Computes rows start to end of c = a + b, splitting in half until the block is small enough.
+	 */
+	private static class AddTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FlatMatrix a, b, c;
+		private final int start, end, grain;
+
+		AddTask(FlatMatrix a, FlatMatrix b, FlatMatrix c, int start, int end, int grain){
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute(){
+			if(end - start <= grain){
+				for (int ii = start; ii < end; ii++) {
+					int aRow = a.offset + ii*a.stride;
+					int bRow = b.offset + ii*b.stride;
+					RowKernels.ACTIVE.add(a.data, aRow, b.data, bRow, c.data, c.offset + ii*c.stride, a.cols);
+				}
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new AddTask(a, b, c, start, mid, grain), new AddTask(a, b, c, mid, end, grain));
+		}
+	}
+}
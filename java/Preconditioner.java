@@ -0,0 +1,29 @@
+package matrixmath;
+
+/**
+ * The Preconditioner interface approximates the inverse of A: z = M^-1 r for some M close to A
+ * that is much cheaper to solve with. A good preconditioner makes the iterative solvers converge in
+ * far fewer iterations. See JacobiPreconditioner and ILUPreconditioner.
+ *
+ * @method apply
+ * 	Computes z = M^-1 r.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public interface Preconditioner {
+	/**
+	 * No preconditioning (M = I).
+	 */
+	Preconditioner NONE = (r, z) -> System.arraycopy(r, 0, z, 0, r.length);
+
+	/**
+	 * Computes z = M^-1 r.
+	 *
+	 * @param r
+	 * 	The vector to precondition.
+	 * @param z
+	 * 	Where to put the result (never the same array as r).
+	 */
+	void apply(double[] r, double[] z);
+}
@@ -0,0 +1,215 @@
+package matrixmath;
+
+/**
+ * The QRDecomposition class factors an m x n matrix (m >= n) as A = QR with Householder
+ * reflections, Q orthogonal and R upper triangular. It solves least-squares problems (find the x
+ * that makes |Ax - b| as small as possible) without forming A^T A or an inverse, which keeps the
+ * accuracy of the original problem. This is what an overdetermined polynomial fit needs.
+ *
+ * The matrix is stored transposed (one row per column of A), so that every Householder reflection
+ * and every update of a column walks along contiguous memory even when A has millions of rows.
+ * Factoring takes O(m*n^2) work.
+ *
+ * @method solve
+ * 	Returns the least-squares solution of Ax = b.
+ * @method residualNorm
+ * 	Returns |Ax - b| for the least-squares solution.
+ * @method isFullRank
+ * 	Whether the columns of A are independent.
+ * @method getR
+ * 	Returns the factor R.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class QRDecomposition {
+	private final FlatMatrix qrT; //row j holds column j of A: Householder vectors below the diagonal, R above it
+	private final double[] rDiag; //diagonal of R
+	private final int m; //rows of A
+	private final int n; //columns of A
+
+	/**
+	 * Factors a Matrix. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The matrix to factor (at least as many rows as columns).
+	 */
+	public QRDecomposition(Matrix a){
+		this(transpose(new FlatMatrix(a)), a.rows, a.cols);
+	}
+
+	/**
+	 * Factors a FlatMatrix. The matrix itself is not changed.
+	 *
+	 * @param a
+	 * 	The matrix to factor (at least as many rows as columns).
+	 */
+	public QRDecomposition(FlatMatrix a){
+		this(transpose(a), a.rows, a.cols);
+	}
+
+	/**
+	 * Factors a matrix that is already stored transposed (n x m); the array becomes the working
+	 * copy. Used when the caller can build A^T directly, such as a Vandermonde matrix in
+	 * Interpolation.
+	 *
+	 * @param transposed
+	 * 	A^T, which is overwritten.
+	 * @return
+	 * 	The decomposition of A.
+	 */
+	static QRDecomposition fromTransposed(FlatMatrix transposed){
+		return new QRDecomposition(transposed, transposed.cols, transposed.rows);
+	}
+
+	/**
+	 * Factors A^T in place; rows and cols are the size of A (the transposed matrix is cols x rows).
+	 */
+	private QRDecomposition(FlatMatrix transposed, int rows, int cols){
+		qrT = transposed;
+		m = rows;
+		n = cols;
+		if(m < n){
+			throw new IllegalArgumentException("QR decomposition needs at least as many rows as columns, not " + m + "x" + n);
+		}
+		rDiag = new double[n];
+		factor();
+	}
+
+	private static FlatMatrix transpose(FlatMatrix a){
+		FlatMatrix t = new FlatMatrix(a.cols, a.rows);
+		for (int ii = 0; ii < a.rows; ii++)
+			for (int jj = 0; jj < a.cols; jj++)
+				t.data[jj*t.stride + ii] = a.get(ii, jj);
+		return t;
+	}
+
+	private void factor(){
+		double[] a = qrT.data;
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int kk = 0; kk < n; kk++) {
+			int colK = qrT.offset + kk*qrT.stride;
+			double nrm = norm(a, colK + kk, m - kk);
+			if(nrm != 0){
+				if(a[colK+kk] < 0) //pick the sign that avoids cancellation
+					nrm = -nrm;
+				kernels.scale(1/nrm, a, colK + kk, m - kk);
+				a[colK+kk] += 1;
+				for (int jj = kk+1; jj < n; jj++) { //apply the reflection to the remaining columns
+					int colJ = qrT.offset + jj*qrT.stride;
+					double s = -kernels.dot(a, colK + kk, a, colJ + kk, m - kk) / a[colK+kk];
+					kernels.axpy(s, a, colK + kk, a, colJ + kk, m - kk);
+				}
+			}
+			rDiag[kk] = -nrm;
+		}
+	}
+
+	/**
+	 * 2-norm of a run of entries, scaled by the largest entry so squares do not overflow.
+	 */
+	private static double norm(double[] a, int off, int len){
+		double scale = 0;
+		for (int ii = 0; ii < len; ii++)
+			scale = Math.max(scale, Math.abs(a[off+ii]));
+		if(scale == 0)
+			return 0;
+		double sum = 0;
+		for (int ii = 0; ii < len; ii++) {
+			double val = a[off+ii] / scale;
+			sum += val*val;
+		}
+		return scale*Math.sqrt(sum);
+	}
+
+	/**
+	 * @return
+	 * 	True if R has no zero on its diagonal (the columns of A are independent).
+	 */
+	public boolean isFullRank(){
+		double largest = 0;
+		for (int jj = 0; jj < n; jj++)
+			largest = Math.max(largest, Math.abs(rDiag[jj]));
+		double tolerance = m * Math.ulp(largest);
+		for (int jj = 0; jj < n; jj++) {
+			if(Math.abs(rDiag[jj]) <= tolerance)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns Q^T b by applying the stored reflections in order.
+	 */
+	private double[] applyQT(double[] b){
+		if(b.length != m){
+			throw new IllegalArgumentException("right-hand side has length " + b.length + ", expected " + m);
+		}
+		double[] y = b.clone();
+		double[] a = qrT.data;
+		RowKernels kernels = RowKernels.ACTIVE;
+		for (int kk = 0; kk < n; kk++) {
+			int colK = qrT.offset + kk*qrT.stride;
+			if(a[colK+kk] == 0)
+				continue;
+			double s = -kernels.dot(a, colK + kk, y, kk, m - kk) / a[colK+kk];
+			kernels.axpy(s, a, colK + kk, y, kk, m - kk);
+		}
+		return y;
+	}
+
+	/**
+	 * Finds the least-squares solution of Ax = b (the exact solution if A is square).
+	 *
+	 * @param b
+	 * 	The right-hand side (length m).
+	 * @return
+	 * 	The solution x (length n).
+	 */
+	public double[] solve(double[] b){
+		if(!isFullRank()){
+			throw new ArithmeticException("matrix is rank deficient");
+		}
+		double[] y = applyQT(b);
+		double[] x = new double[n];
+		System.arraycopy(y, 0, x, 0, n);
+		for (int kk = n-1; kk >= 0; kk--) { //back substitution with R (R's column kk is row kk of qrT)
+			x[kk] /= rDiag[kk];
+			int colK = qrT.offset + kk*qrT.stride;
+			for (int ii = 0; ii < kk; ii++) {
+				x[ii] -= x[kk]*qrT.data[colK+ii];
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Returns |Ax - b| for the least-squares solution x. Since Q is orthogonal this is the norm of
+	 * the last m-n entries of Q^T b, so x does not need to be found.
+	 *
+	 * @param b
+	 * 	The right-hand side (length m).
+	 * @return
+	 * 	The norm of the residual.
+	 */
+	public double residualNorm(double[] b){
+		double[] y = applyQT(b);
+		return norm(y, n, m - n);
+	}
+
+	/**
+	 * Returns R (n x n upper triangular).
+	 *
+	 * @return
+	 * 	New matrix with R.
+	 */
+	public Matrix getR(){
+		Matrix r = new Matrix(n, n);
+		for (int ii = 0; ii < n; ii++) {
+			r.m[ii][ii] = rDiag[ii];
+			for (int jj = ii+1; jj < n; jj++)
+				r.m[ii][jj] = qrT.get(jj, ii);
+		}
+		return r;
+	}
+}
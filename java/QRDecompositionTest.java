@@ -0,0 +1,48 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.Interpolation;
+import matrixmath.LeastSquaresFit;
+import matrixmath.Matrix;
+import matrixmath.QRDecomposition;
+
+/**
+ * This class tests Householder QR: a least-squares solution must satisfy the normal equations
+ * A^T (b - Ax) = 0, a square solve is checked by |b - Ax| / |b|, and the least-squares polynomial
+ * fit must recover the coefficients of a cubic sampled exactly.
+ *
+ * @author Andrew M.
+ */
+public class QRDecompositionTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(17);
+
+		int m = 200;
+		Matrix tall = randomMatrix(m, 5, rand);
+		double[] y = randomVector(m, rand);
+		double[] x = new QRDecomposition(tall).solve(y);
+		double[] r = subtract(y, times(tall, x));
+		double[] normal = times(tall.transpose(), r); //A^T (y - Ax) is 0 at the least-squares solution
+		check("QR least squares (normal equations hold)", norm(normal) < 1e-10*norm(y));
+
+		int n = 60;
+		Matrix a = randomMatrix(n, n, rand);
+		double[] b = randomVector(n, rand);
+		check("QR square solve", relative(a, new QRDecomposition(a).solve(b), b) < 1e-10);
+
+		double[] px = new double[50], py = new double[50];
+		for (int ii = 0; ii < px.length; ii++) {
+			px[ii] = ii/10.0 - 2;
+			py[ii] = 3 - 2*px[ii] + 0.5*px[ii]*px[ii]*px[ii];
+		}
+		LeastSquaresFit fit = new Interpolation().fitLeastSquares(px, py, 3);
+		double[] coefs = fit.getCoefficients();
+		check("least-squares fit of an exact cubic", Math.abs(coefs[0] - 3) + Math.abs(coefs[1] + 2) + Math.abs(coefs[2]) + Math.abs(coefs[3] - 0.5) < 1e-9 && fit.getResidualNorm() < 1e-9);
+
+		finish();
+	}
+}
@@ -0,0 +1,106 @@
+package matrixmath;
+
+/**
+ * The RowKernels class holds the innermost loops of the matrix operations: adding a multiple of one
+ * row to another (axpy), multiplying a row by a scalar, adding two rows, and the dot product of two
+ * rows. Every row operation, product and elimination in this package ends up in one of these loops.
+ *
+ * There are two versions. VectorRowKernels uses the Java Vector API (jdk.incubator.vector) to work
+ * on several doubles at once, with fused multiply-add for axpy. ScalarRowKernels is a plain loop used
+ * when the Vector API module is not available at runtime (the JVM has to be started with
+ * --add-modules jdk.incubator.vector) or when the system property matrixmath.vector is set to false.
+ * The version is picked once, when this class is loaded; isVectorized tells which one is active.
+ * VectorRowKernels is kept in java-vector/ and compiled on its own with the module added (see
+ * matrixmath/pom.xml), so the rest of the package builds with plain javac.
+ *
+ * axpy and dot also come in float versions, for MixedPrecisionSolver, which fit twice as many
+ * values in each vector.
+ *
+ * @method axpy
+ * 	y += alpha*x over a run of entries.
+ * @method scale
+ * 	x *= alpha over a run of entries.
+ * @method add
+ * 	z = x + y over a run of entries.
+ * @method dot
+ * 	Dot product of two runs of entries.
+ * @method isVectorized
+ * 	Whether the Vector API version is active.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public abstract class RowKernels {
+	/**
+	 * The version used by every matrix operation.
+	 */
+	static final RowKernels ACTIVE = load();
+
+	/**
+	 * y[yOff..yOff+n) += alpha * x[xOff..xOff+n)
+	 */
+	public abstract void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n);
+
+	/**
+	 * x[off..off+n) *= alpha
+	 */
+	public abstract void scale(double alpha, double[] x, int off, int n);
+
+	/**
+	 * z[zOff..zOff+n) = x[xOff..xOff+n) + y[yOff..yOff+n)
+	 */
+	public abstract void add(double[] x, int xOff, double[] y, int yOff, double[] z, int zOff, int n);
+
+	/**
+	 * Returns the sum of x[xOff+i]*y[yOff+i] for i from 0 to n-1.
+	 */
+	public abstract double dot(double[] x, int xOff, double[] y, int yOff, int n);
+
+	/**
+	 * y[yOff..yOff+n) += alpha * x[xOff..xOff+n), in single precision.
+	 */
+	public abstract void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n);
+
+	/**
+	 * Returns the sum of x[xOff+i]*y[yOff+i] for i from 0 to n-1, in single precision.
+	 */
+	public abstract float dot(float[] x, int xOff, float[] y, int yOff, int n);
+
+	/**
+	 * @return
+	 * 	Name of this version (for logging).
+	 */
+	public abstract String getName();
+
+	/**
+	 * @return
+	 * 	The version used by every matrix operation.
+	 */
+	public static RowKernels get(){
+		return ACTIVE;
+	}
+
+	/**
+	 * @return
+	 * 	True if the Vector API version is active, false if the scalar loops are used.
+	 */
+	public static boolean isVectorized(){
+		return !(ACTIVE instanceof ScalarRowKernels);
+	}
+
+	/**
+	 * Tries to load the Vector API version; any failure (module not added, class missing, disabled
+	 * by the system property) falls back to the scalar loops.
+	 */
+	private static RowKernels load(){
+		if(!Boolean.parseBoolean(System.getProperty("matrixmath.vector", "true"))){
+			return new ScalarRowKernels();
+		}
+		try {
+			return (RowKernels)Class.forName("matrixmath.VectorRowKernels").getDeclaredConstructor().newInstance();
+		}
+		catch(Exception | LinkageError e){ //jdk.incubator.vector is not available
+			return new ScalarRowKernels();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package test_classes;
+
+import java.util.Arrays;
+
+import matrixmath.Matrix;
+
+/**
+ * This class tests zerosDown against results worked out with the original row-by-row code, on
+ * matrices whose earlier columns are not reduced yet, and checks that zerosDownInto gives the
+ * same matrix (also when the result goes back into the input).
+ *
+ * @author Andrew M.
+ */
+public class RowOperationTest {
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		check(new double[][]{{1, 2}, {3, 4}}, 0, new double[][]{{1, 2}, {0, -2}});
+		check(new double[][]{{1, 2}, {3, 4}}, 1, new double[][]{{-0.5, 0}, {3, 4}});
+		check(new double[][]{{0, 2, 1}, {3, 4, 5}, {6, 1, 0}}, 0, new double[][]{{-3, -4, -5}, {0, 2, 1}, {0, -7, -10}});
+		check(new double[][]{{0, 2, 1}, {3, 4, 5}, {6, 1, 0}}, 1, new double[][]{{-1.5, 0, -1.5}, {3, 4, 5}, {5.25, 0, -1.25}});
+		check(new double[][]{{0, 2, 1}, {3, 4, 5}, {6, 1, 0}}, 2, new double[][]{{0, 2, 1}, {3, -6, 0}, {6, 1, 0}});
+		check(new double[][]{{2, 1, 3}, {4, 1, 1}, {0, 5, 2}}, 1, new double[][]{{-2, 0, 2}, {4, 1, 1}, {-20, 0, -3}});
+		check(new double[][]{{2, 1, 3}, {4, 1, 1}, {0, 5, 2}}, 2, new double[][]{{2, -6.5, 0}, {4, -1.5, 0}, {0, 5, 2}});
+		if(failures > 0){
+			System.out.println(failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("all passed");
+	}
+
+	private static void check(double[][] values, int col, double[][] expected){
+		Matrix a = matrix(values);
+		Matrix down = a.zerosDown(a, col);
+		Matrix into = new Matrix(values.length, values[0].length);
+		a = matrix(values);
+		a.zerosDownInto(a, col, into);
+		Matrix same = matrix(values);
+		same.zerosDownInto(same, col, same);
+		boolean ok = equal(down, expected) && equal(into, expected) && equal(same, expected);
+		if(!ok)
+			failures++;
+		System.out.println((ok ? "ok     " : "FAILED ") + "zerosDown column " + col + " of " + Arrays.deepToString(values) + " = " + Arrays.deepToString(down.m));
+	}
+
+	private static Matrix matrix(double[][] values){
+		Matrix a = new Matrix(values.length, values[0].length);
+		for (int ii = 0; ii < values.length; ii++)
+			for (int jj = 0; jj < values[0].length; jj++)
+				a.setEntry(ii, jj, values[ii][jj]);
+		return a;
+	}
+
+	private static boolean equal(Matrix a, double[][] expected){
+		for (int ii = 0; ii < expected.length; ii++)
+			for (int jj = 0; jj < expected[0].length; jj++)
+				if(Math.abs(a.m[ii][jj] - expected[ii][jj]) > 1e-12)
+					return false;
+		return true;
+	}
+}
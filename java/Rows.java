@@ -0,0 +1,111 @@
+package matrixmath;
+
+/**
+ * The Rows class lets the multiply kernels and MatrixExpression read and write the rows of a Matrix
+ * (one array per row) or of a FlatMatrix (one array, rows stride apart) without copying either into
+ * the other. Row i is array(i) starting at start(i), which is all the RowKernels need.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+final class Rows {
+	final int rows; //number of rows
+	final int cols; //number of columns
+	private final double[][] m; //the rows of a Matrix, or null
+	private final double[] data; //the array of a FlatMatrix, or null
+	private final int offset, stride;
+	private final Matrix matrix; //told about writes so MatrixCache drops its results
+
+	Rows(Matrix a){
+		rows = a.rows;
+		cols = a.cols;
+		m = a.m;
+		data = null;
+		offset = 0;
+		stride = 0;
+		matrix = a;
+	}
+
+	Rows(FlatMatrix a){
+		rows = a.rows;
+		cols = a.cols;
+		m = null;
+		data = a.data;
+		offset = a.offset;
+		stride = a.stride;
+		matrix = null;
+	}
+
+	/**
+	 * @return
+	 * 	The array that holds row i.
+	 */
+	double[] array(int i){
+		return m != null ? m[i] : data;
+	}
+
+	/**
+	 * @return
+	 * 	The index of entry (i, 0) in array(i).
+	 */
+	int start(int i){
+		return m != null ? 0 : offset + i*stride;
+	}
+
+	double get(int i, int j){
+		return m != null ? m[i][j] : data[offset + i*stride + j];
+	}
+
+	/**
+	 * True if the storage is a FlatMatrix (so it can be wrapped as one again).
+	 */
+	boolean isFlat(){
+		return data != null;
+	}
+
+	/**
+	 * The same storage as a FlatMatrix (only for isFlat).
+	 */
+	FlatMatrix toFlatView(){
+		return new FlatMatrix(data, offset, stride, rows, cols);
+	}
+
+	/**
+	 * Column j packed into a new array (or the storage itself for a packed single-column FlatMatrix),
+	 * with the index of entry (0, j) in columnStart.
+	 */
+	double[] column(int j, int[] columnStart){
+		if(data != null && (stride == 1 || rows == 1) && cols == 1){
+			columnStart[0] = offset;
+			return data;
+		}
+		double[] c = new double[rows];
+		for (int ii = 0; ii < rows; ii++)
+			c[ii] = get(ii, j);
+		columnStart[0] = 0;
+		return c;
+	}
+
+	void zero(){
+		for (int ii = 0; ii < rows; ii++)
+			java.util.Arrays.fill(array(ii), start(ii), start(ii) + cols, 0);
+	}
+
+	void switchRows(int first, int second){
+		double[] a = array(first), b = array(second);
+		int sa = start(first), sb = start(second);
+		for (int jj = 0; jj < cols; jj++) {
+			double tmp = a[sa+jj];
+			a[sa+jj] = b[sb+jj];
+			b[sb+jj] = tmp;
+		}
+	}
+
+	/**
+	 * Marks a Matrix as changed after its rows were written.
+	 */
+	void modified(){
+		if(matrix != null)
+			matrix.markModified();
+	}
+}
@@ -0,0 +1,68 @@
+package matrixmath;
+
+/**
+ * Plain-loop version of RowKernels, used when the Vector API is not available.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+class ScalarRowKernels extends RowKernels {
+	@Override
+	public void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n){
+		for (int ii = 0; ii < n; ii++) {
+			y[yOff+ii] += alpha*x[xOff+ii];
+		}
+	}
+
+	@Override
+	public void scale(double alpha, double[] x, int off, int n){
+		for (int ii = 0; ii < n; ii++) {
+			x[off+ii] *= alpha;
+		}
+	}
+
+	@Override
+	public void add(double[] x, int xOff, double[] y, int yOff, double[] z, int zOff, int n){
+		for (int ii = 0; ii < n; ii++) {
+			z[zOff+ii] = x[xOff+ii] + y[yOff+ii];
+		}
+	}
+
+	@Override
+	public double dot(double[] x, int xOff, double[] y, int yOff, int n){
+		double sum0 = 0, sum1 = 0; //two sums so the additions do not all wait on each other
+		int ii = 0;
+		for (; ii+1 < n; ii += 2) {
+			sum0 += x[xOff+ii]*y[yOff+ii];
+			sum1 += x[xOff+ii+1]*y[yOff+ii+1];
+		}
+		if(ii < n)
+			sum0 += x[xOff+ii]*y[yOff+ii];
+		return sum0 + sum1;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n){
+		for (int ii = 0; ii < n; ii++) {
+			y[yOff+ii] += alpha*x[xOff+ii];
+		}
+	}
+
+	@Override
+	public float dot(float[] x, int xOff, float[] y, int yOff, int n){
+		float sum0 = 0, sum1 = 0;
+		int ii = 0;
+		for (; ii+1 < n; ii += 2) {
+			sum0 += x[xOff+ii]*y[yOff+ii];
+			sum1 += x[xOff+ii+1]*y[yOff+ii+1];
+		}
+		if(ii < n)
+			sum0 += x[xOff+ii]*y[yOff+ii];
+		return sum0 + sum1;
+	}
+
+	@Override
+	public String getName(){
+		return "scalar";
+	}
+}
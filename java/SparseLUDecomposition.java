@@ -0,0 +1,338 @@
+package matrixmath;
+
+import java.util.Arrays;
+
+/**
+ * The SparseLUDecomposition class factors a square SparseMatrix as PAQ = LU with partial pivoting
+ * without ever forming a dense matrix, so systems with hundreds of thousands of unknowns (and a few
+ * nonzeros per row) can be solved directly. L and U are kept sparse, column by column; their size
+ * is the nonzeros of A plus the fill-in, the entries that elimination turns from zero to nonzero.
+ *
+ * The factorization is left-looking (Gilbert-Peierls): column k of L and U is found by solving a
+ * sparse triangular system with the k columns of L already computed. A depth-first search through
+ * the graph of L first finds which rows of the column can become nonzero, in the order they have to
+ * be eliminated in, so the work for each column is proportional to the arithmetic actually done and
+ * never to n. The column is built in a dense accumulator (one array of n values, of which only the
+ * entries found by the search are touched) and then split into its part of U (rows that already
+ * hold pivots) and of L (the rest, divided by the pivot).
+ *
+ * The pivot of each column is its largest entry among the rows that do not hold a pivot yet. A
+ * pivot threshold below 1 keeps the diagonal entry whenever it is at least that fraction of the
+ * largest, which usually gives much less fill for matrices that are nearly diagonally dominant.
+ * The fill also depends on the order of the columns: Q is the matrix's own order unless a column
+ * order is passed in (for example a nested dissection order for a grid). A column with nothing
+ * larger than n*ulp(max|A|) left to pivot on makes the matrix singular, as in LUDecomposition.
+ *
+ * @method solve
+ * 	Solves Ax = b.
+ * @method isSingular
+ * 	Whether a zero pivot was found while factoring.
+ * @method nonZeros
+ * 	Number of nonzeros stored in L and U together.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class SparseLUDecomposition {
+	private final int n; //size of the matrix
+	private int[] lp, li, up, ui; //column pointers and row numbers (in pivot order) of L and U
+	private double[] lx, ux; //their values; each column of L starts with its unit diagonal, each column of U ends with its pivot
+	private final int[] prow; //prow[k] is the original row that holds pivot k
+	private final int[] q; //q[k] is the original column factored in step k
+	private boolean singular = false;
+
+	/**
+	 * Factors a sparse matrix with partial pivoting, columns in their own order. The matrix itself
+	 * is not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 */
+	public SparseLUDecomposition(SparseMatrix a){
+		this(a, null, 1);
+	}
+
+	/**
+	 * Factors a sparse matrix with threshold pivoting and a given column order. The matrix itself is
+	 * not changed.
+	 *
+	 * @param a
+	 * 	The square matrix to factor.
+	 * @param columnOrder
+	 * 	The order to factor the columns in (a permutation of 0 to n-1), or null for 0 to n-1.
+	 * @param pivotThreshold
+	 * 	Between 0 (exclusive) and 1: the diagonal entry is the pivot whenever it is at least this
+	 * 	fraction of the largest candidate (1 is plain partial pivoting).
+	 */
+	public SparseLUDecomposition(SparseMatrix a, int[] columnOrder, double pivotThreshold){
+		if(a.rows != a.cols){
+			throw new IllegalArgumentException("LU decomposition needs a square matrix, not " + a.rows + "x" + a.cols);
+		}
+		if(!(pivotThreshold > 0 && pivotThreshold <= 1)){
+			throw new IllegalArgumentException("pivot threshold must be in (0, 1]");
+		}
+		n = a.rows;
+		q = columnOrder == null ? identity(n) : checkPermutation(columnOrder, n);
+		prow = new int[n];
+		factor(a.transpose(), pivotThreshold); //the transpose's CSR arrays are A's columns
+	}
+
+	private static int[] identity(int n){
+		int[] p = new int[n];
+		for (int ii = 0; ii < n; ii++)
+			p[ii] = ii;
+		return p;
+	}
+
+	private static int[] checkPermutation(int[] p, int n){
+		if(p.length != n){
+			throw new IllegalArgumentException("column order has length " + p.length + ", expected " + n);
+		}
+		boolean[] seen = new boolean[n];
+		for (int k : p) {
+			if(k < 0 || k >= n || seen[k]){
+				throw new IllegalArgumentException("column order is not a permutation of 0 to " + (n-1));
+			}
+			seen[k] = true;
+		}
+		return p.clone();
+	}
+
+	/**
+	 * Computes L and U one column at a time.
+	 *
+	 * @param at
+	 * 	The transpose of A: row j of it is column j of A.
+	 */
+	private void factor(SparseMatrix at, double threshold){
+		double largest = 0;
+		for (int kk = 0; kk < at.nonZeros(); kk++)
+			largest = Math.max(largest, Math.abs(at.values[kk]));
+		double tolerance = n * Math.ulp(largest); //anything this small is a zero pivot
+
+		int cap = 4*at.nonZeros() + n; //grown when a column might not fit
+		lp = new int[n+1];
+		li = new int[cap];
+		lx = new double[cap];
+		up = new int[n+1];
+		ui = new int[cap];
+		ux = new double[cap];
+		int[] pinv = new int[n]; //pinv[i] is the pivot step of original row i, or -1
+		Arrays.fill(pinv, -1);
+		double[] x = new double[n]; //the sparse accumulator, indexed by original row
+		int[] xi = new int[n]; //rows of the column's nonzero pattern in xi[top..n-1]; also the search stack
+		int[] stack = new int[n]; //where the search is in each column of L on the stack
+		int[] mark = new int[n]; //mark[i] == k+1 once row i has been reached for column k
+		int lnz = 0, unz = 0;
+
+		for (int k = 0; k < n; k++) {
+			lp[k] = lnz;
+			up[k] = unz;
+			if(lnz + n > li.length){
+				li = Arrays.copyOf(li, 2*li.length + n);
+				lx = Arrays.copyOf(lx, li.length);
+			}
+			if(unz + n > ui.length){
+				ui = Arrays.copyOf(ui, 2*ui.length + n);
+				ux = Arrays.copyOf(ux, ui.length);
+			}
+			int col = q[k];
+			int top = solveColumn(at, col, pinv, x, xi, stack, mark, k+1);
+
+			int ipiv = -1;
+			double best = tolerance;
+			for (int pp = top; pp < n; pp++) { //split the column into U (pivot rows) and candidates
+				int i = xi[pp];
+				if(pinv[i] < 0){
+					double val = Math.abs(x[i]);
+					if(val > best){
+						best = val;
+						ipiv = i;
+					}
+				}
+				else {
+					ui[unz] = pinv[i];
+					ux[unz++] = x[i];
+				}
+			}
+			if(ipiv < 0){
+				singular = true; //nothing left to pivot on in this column
+				break;
+			}
+			if(pinv[col] < 0 && mark[col] == k+1 && Math.abs(x[col]) >= threshold*best && Math.abs(x[col]) > tolerance)
+				ipiv = col; //keep the diagonal
+			double pivot = x[ipiv];
+			ui[unz] = k;
+			ux[unz++] = pivot;
+			pinv[ipiv] = k;
+			prow[k] = ipiv;
+			li[lnz] = ipiv;
+			lx[lnz++] = 1;
+			for (int pp = top; pp < n; pp++) {
+				int i = xi[pp];
+				if(pinv[i] < 0){
+					li[lnz] = i;
+					lx[lnz++] = x[i] / pivot;
+				}
+			}
+		}
+		if(singular)
+			return;
+		lp[n] = lnz;
+		up[n] = unz;
+		for (int pp = 0; pp < lnz; pp++) //row numbers of L in pivot order, like U's
+			li[pp] = pinv[li[pp]];
+		li = Arrays.copyOf(li, lnz);
+		lx = Arrays.copyOf(lx, lnz);
+		ui = Arrays.copyOf(ui, unz);
+		ux = Arrays.copyOf(ux, unz);
+	}
+
+	/**
+	 * Solves L x = A(:, col) with the columns of L found so far, leaving x in the accumulator and its
+	 * nonzero rows in xi[top..n-1] in the order they were eliminated in.
+	 *
+	 * @return
+	 * 	top
+	 */
+	private int solveColumn(SparseMatrix at, int col, int[] pinv, double[] x, int[] xi, int[] stack, int[] mark, int stamp){
+		int top = n;
+		for (int pp = at.rowPtr[col]; pp < at.rowPtr[col+1]; pp++) {
+			int i = at.colIdx[pp];
+			if(mark[i] != stamp)
+				top = reach(i, pinv, xi, stack, mark, stamp, top);
+		}
+		for (int pp = top; pp < n; pp++)
+			x[xi[pp]] = 0;
+		for (int pp = at.rowPtr[col]; pp < at.rowPtr[col+1]; pp++)
+			x[at.colIdx[pp]] = at.values[pp];
+		for (int pp = top; pp < n; pp++) {
+			int j = xi[pp];
+			int jcol = pinv[j];
+			if(jcol < 0)
+				continue; //not a pivot row yet: nothing to eliminate with
+			double xj = x[j];
+			if(xj == 0)
+				continue;
+			for (int ll = lp[jcol]+1; ll < lp[jcol+1]; ll++) //the unit diagonal comes first
+				x[li[ll]] -= lx[ll]*xj;
+		}
+		return top;
+	}
+
+	/**
+	 * Depth-first search from row i through the columns of L (row j that holds pivot k leads to
+	 * the rows of column k of L). Rows are put in xi below top as the search finishes with them,
+	 * which is the order the triangular solve must use. The stack shares xi from the bottom; the two
+	 * never hold more than n rows together.
+	 */
+	private int reach(int i, int[] pinv, int[] xi, int[] stack, int[] mark, int stamp, int top){
+		int head = 0;
+		xi[0] = i;
+		while(head >= 0){
+			int j = xi[head];
+			int jcol = pinv[j];
+			if(mark[j] != stamp){
+				mark[j] = stamp;
+				stack[head] = jcol < 0 ? 0 : lp[jcol];
+			}
+			boolean done = true;
+			int end = jcol < 0 ? 0 : lp[jcol+1]; //columns of L before the current one are finished
+			for (int pp = stack[head]; pp < end; pp++) {
+				int r = li[pp];
+				if(mark[r] == stamp)
+					continue;
+				stack[head] = pp; //come back here after r
+				xi[++head] = r;
+				done = false;
+				break;
+			}
+			if(done){
+				head--;
+				xi[--top] = j;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * @return
+	 * 	True if the matrix has no inverse (a pivot was zero).
+	 */
+	public boolean isSingular(){
+		return singular;
+	}
+
+	/**
+	 * @return
+	 * 	The size of the factored matrix.
+	 */
+	public int getSize(){
+		return n;
+	}
+
+	/**
+	 * @return
+	 * 	The number of nonzeros stored in L and U (the nonzeros of A plus the fill-in, plus n for the
+	 * 	unit diagonal of L).
+	 */
+	public int nonZeros(){
+		if(singular){
+			throw new ArithmeticException("matrix is singular");
+		}
+		return lp[n] + up[n];
+	}
+
+	/**
+	 * Solves Ax = b.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		return solve(b, new double[n]);
+	}
+
+	/**
+	 * Solves Ax = b into an array the caller owns.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @param x
+	 * 	Where to put the solution (length n; may be b).
+	 * @return
+	 * 	x
+	 */
+	public double[] solve(double[] b, double[] x){
+		if(b.length != n || x.length != n){
+			throw new IllegalArgumentException("vectors must have length " + n);
+		}
+		if(singular){
+			throw new ArithmeticException("matrix is singular");
+		}
+		double[] y = new double[n];
+		for (int k = 0; k < n; k++) //y = Pb
+			y[k] = b[prow[k]];
+		for (int j = 0; j < n; j++) { //solve Lz = y, column by column
+			double yj = y[j];
+			if(yj == 0)
+				continue;
+			for (int pp = lp[j]+1; pp < lp[j+1]; pp++)
+				y[li[pp]] -= lx[pp]*yj;
+		}
+		for (int j = n-1; j >= 0; j--) { //solve Uw = z, the pivot last in each column
+			int last = up[j+1]-1;
+			double yj = y[j] / ux[last];
+			y[j] = yj;
+			if(yj == 0)
+				continue;
+			for (int pp = up[j]; pp < last; pp++)
+				y[ui[pp]] -= ux[pp]*yj;
+		}
+		for (int k = 0; k < n; k++) //x = Qw
+			x[q[k]] = y[k];
+		return x;
+	}
+}
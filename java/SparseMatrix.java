@@ -0,0 +1,426 @@
+package matrixmath;
+
+import java.util.Arrays;
+
+/**
+ * The SparseMatrix class stores a matrix that is mostly zeros in compressed sparse row (CSR) form:
+ * only the nonzero entries are kept, row by row. For row i, the column numbers and values of its
+ * nonzeros are colIdx[rowPtr[i]] to colIdx[rowPtr[i+1]-1] and values[rowPtr[i]] to
+ * values[rowPtr[i+1]-1], sorted by column. Memory use is proportional to the number of nonzeros
+ * plus the number of rows, not rows*cols.
+ *
+ * The transpose of a CSR matrix has the same arrays as the compressed sparse column (CSC) form of
+ * the original, so transpose doubles as the way to walk a matrix column by column.
+ *
+ * solve factors the matrix with SparseLUDecomposition, which keeps the factors sparse; to solve
+ * with the same matrix many times, keep the decomposition instead.
+ *
+ * @method fromTriplets
+ * 	Builds a sparse matrix from lists of (row, column, value).
+ * @method fromMatrix
+ * 	Builds a sparse matrix from the nonzeros of a Matrix.
+ * @method get
+ * 	Gets a particular entry of the matrix.
+ * @method times
+ * 	Multiplies by a dense matrix, a vector, or another sparse matrix.
+ * @method transpose
+ * 	Returns the transpose (the CSC form of this matrix).
+ * @method solve
+ * 	Solves Ax = b by sparse LU.
+ * @method toMatrix
+ * 	Copies the values into a (dense) Matrix.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class SparseMatrix {
+	final int rows; //number of rows
+	final int cols; //number of columns
+	final int[] rowPtr; //where each row starts in colIdx and values (rows+1 entries)
+	final int[] colIdx; //column of each nonzero
+	final double[] values; //value of each nonzero
+
+	/**
+	 * Wraps CSR arrays (not copied). Columns within a row must be sorted and not repeated.
+	 */
+	SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values){
+		this.rows = rows;
+		this.cols = cols;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.values = values;
+	}
+
+	/**
+	 * Builds a sparse matrix from triplets: entry (r[k], c[k]) is v[k]. Triplets can be in any
+	 * order; repeated positions are added together (useful when assembling a system piece by piece).
+	 *
+	 * @param rows
+	 * 	Number of rows.
+	 * @param cols
+	 * 	Number of columns.
+	 * @param r
+	 * 	Row of each triplet.
+	 * @param c
+	 * 	Column of each triplet.
+	 * @param v
+	 * 	Value of each triplet.
+	 * @return
+	 * 	The sparse matrix.
+	 */
+	public static SparseMatrix fromTriplets(int rows, int cols, int[] r, int[] c, double[] v){
+		return fromTriplets(rows, cols, r, c, v, v.length);
+	}
+
+	private static SparseMatrix fromTriplets(int rows, int cols, int[] r, int[] c, double[] v, int count){
+		int[] rowPtr = new int[rows+1];
+		for (int kk = 0; kk < count; kk++) { //count entries per row
+			if(r[kk] < 0 || r[kk] >= rows || c[kk] < 0 || c[kk] >= cols){
+				throw new IndexOutOfBoundsException("(" + r[kk] + ", " + c[kk] + ") is outside a " + rows + "x" + cols + " matrix");
+			}
+			rowPtr[r[kk]+1]++;
+		}
+		for (int ii = 0; ii < rows; ii++)
+			rowPtr[ii+1] += rowPtr[ii];
+
+		int[] next = Arrays.copyOf(rowPtr, rows); //bucket the triplets by row
+		int[] cs = new int[count];
+		double[] vs = new double[count];
+		for (int kk = 0; kk < count; kk++) {
+			int pos = next[r[kk]]++;
+			cs[pos] = c[kk];
+			vs[pos] = v[kk];
+		}
+
+		int[] outPtr = new int[rows+1]; //sort each row by column and add repeats together
+		int out = 0;
+		for (int ii = 0; ii < rows; ii++) {
+			int start = rowPtr[ii], end = rowPtr[ii+1];
+			sortRow(cs, vs, start, end);
+			for (int kk = start; kk < end; kk++) {
+				if(out > outPtr[ii] && cs[out-1] == cs[kk]){
+					vs[out-1] += vs[kk];
+				}
+				else {
+					cs[out] = cs[kk];
+					vs[out] = vs[kk];
+					out++;
+				}
+			}
+			outPtr[ii+1] = out;
+		}
+		return new SparseMatrix(rows, cols, outPtr, Arrays.copyOf(cs, out), Arrays.copyOf(vs, out));
+	}
+
+	/**
+	 * Insertion sort of one row by column (rows are short, usually already nearly sorted).
+	 */
+	private static void sortRow(int[] cs, double[] vs, int start, int end){
+		for (int ii = start+1; ii < end; ii++) {
+			int col = cs[ii];
+			double val = vs[ii];
+			int jj = ii-1;
+			while(jj >= start && cs[jj] > col){
+				cs[jj+1] = cs[jj];
+				vs[jj+1] = vs[jj];
+				jj--;
+			}
+			cs[jj+1] = col;
+			vs[jj+1] = val;
+		}
+	}
+
+	/**
+	 * Collects triplets one at a time and then builds the sparse matrix.
+	 */
+	public static class Builder {
+		private final int rows, cols;
+		private int[] r = new int[16], c = new int[16];
+		private double[] v = new double[16];
+		private int count = 0;
+
+		public Builder(int rows, int cols){
+			this.rows = rows;
+			this.cols = cols;
+		}
+
+		/**
+		 * Adds value to entry (i, j) (repeated positions are added together).
+		 */
+		public Builder add(int i, int j, double value){
+			if(count == v.length){
+				r = Arrays.copyOf(r, 2*count);
+				c = Arrays.copyOf(c, 2*count);
+				v = Arrays.copyOf(v, 2*count);
+			}
+			r[count] = i;
+			c[count] = j;
+			v[count] = value;
+			count++;
+			return this;
+		}
+
+		public SparseMatrix build(){
+			return fromTriplets(rows, cols, r, c, v, count);
+		}
+	}
+
+	/**
+	 * Builds a sparse matrix from the nonzero entries of a Matrix.
+	 *
+	 * @param that
+	 * 	The dense matrix.
+	 * @return
+	 * 	The sparse matrix.
+	 */
+	public static SparseMatrix fromMatrix(Matrix that){
+		return fromFlat(new FlatMatrix(that));
+	}
+
+	/**
+	 * Builds a sparse matrix from the nonzero entries of a FlatMatrix.
+	 *
+	 * @param that
+	 * 	The dense matrix.
+	 * @return
+	 * 	The sparse matrix.
+	 */
+	public static SparseMatrix fromFlat(FlatMatrix that){
+		int nnz = 0;
+		for (int ii = 0; ii < that.rows; ii++)
+			for (int jj = 0; jj < that.cols; jj++)
+				if(that.get(ii, jj) != 0)
+					nnz++;
+		int[] rowPtr = new int[that.rows+1];
+		int[] colIdx = new int[nnz];
+		double[] values = new double[nnz];
+		int pos = 0;
+		for (int ii = 0; ii < that.rows; ii++) {
+			for (int jj = 0; jj < that.cols; jj++) {
+				double val = that.get(ii, jj);
+				if(val != 0){
+					colIdx[pos] = jj;
+					values[pos] = val;
+					pos++;
+				}
+			}
+			rowPtr[ii+1] = pos;
+		}
+		return new SparseMatrix(that.rows, that.cols, rowPtr, colIdx, values);
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	/**
+	 * @return
+	 * 	The number of stored (nonzero) entries.
+	 */
+	public int nonZeros(){
+		return rowPtr[rows];
+	}
+
+	/**
+	 * Gets an entry (binary search within the row).
+	 *
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value at (i, j), 0 if it is not stored.
+	 */
+	public double get(int i, int j){
+		int pos = Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], j);
+		return pos >= 0 ? values[pos] : 0;
+	}
+
+	/**
+	 * Multiplies by a vector.
+	 *
+	 * @param x
+	 * 	The vector (length cols).
+	 * @return
+	 * 	The product (length rows).
+	 */
+	public double[] times(double[] x){
+		return times(x, new double[rows]);
+	}
+
+	/**
+	 * Multiplies by a vector into an array the caller owns (used by iterative solvers, which
+	 * multiply many times).
+	 *
+	 * @param x
+	 * 	The vector (length cols).
+	 * @param y
+	 * 	Where to put the product (length rows, not x).
+	 * @return
+	 * 	y
+	 */
+	public double[] times(double[] x, double[] y){
+		if(x.length != cols || y.length != rows){
+			throw new IllegalArgumentException("vectors must have lengths " + cols + " and " + rows);
+		}
+		for (int ii = 0; ii < rows; ii++) {
+			double sum = 0;
+			for (int kk = rowPtr[ii]; kk < rowPtr[ii+1]; kk++) {
+				sum += values[kk]*x[colIdx[kk]];
+			}
+			y[ii] = sum;
+		}
+		return y;
+	}
+
+	/**
+	 * Sparse times dense: each nonzero (i, k) adds a multiple of row k of that to row i of the product.
+	 *
+	 * @param that
+	 * 	The dense matrix (cols rows).
+	 * @return
+	 * 	New dense matrix with the product.
+	 */
+	public FlatMatrix times(FlatMatrix that){
+		if(cols != that.rows){
+			throw new IllegalArgumentException("cannot multiply a " + rows + "x" + cols + " by a " + that.rows + "x" + that.cols + " matrix");
+		}
+		FlatMatrix mult = new FlatMatrix(rows, that.cols);
+		for (int ii = 0; ii < rows; ii++) {
+			for (int kk = rowPtr[ii]; kk < rowPtr[ii+1]; kk++) {
+				RowKernels.ACTIVE.axpy(values[kk], that.data, that.offset + colIdx[kk]*that.stride, mult.data, ii*mult.stride, that.cols);
+			}
+		}
+		return mult;
+	}
+
+	/**
+	 * Sparse times dense.
+	 *
+	 * @param that
+	 * 	The dense matrix.
+	 * @return
+	 * 	New dense matrix with the product.
+	 */
+	public Matrix times(Matrix that){
+		return times(new FlatMatrix(that)).toMatrix();
+	}
+
+	/**
+	 * Sparse times sparse (Gustavson's method): row i of the product is built in a dense
+	 * accumulator from the rows of that picked out by the nonzeros of row i, and then compressed.
+	 *
+	 * @param that
+	 * 	The second sparse matrix.
+	 * @return
+	 * 	New sparse matrix with the product.
+	 */
+	public SparseMatrix times(SparseMatrix that){
+		if(cols != that.rows){
+			throw new IllegalArgumentException("cannot multiply a " + rows + "x" + cols + " by a " + that.rows + "x" + that.cols + " matrix");
+		}
+		double[] acc = new double[that.cols]; //dense accumulator for one row
+		int[] marker = new int[that.cols]; //marker[j] == i+1 when column j is already in row i
+		int[] touched = new int[that.cols]; //columns used in the current row
+		int[] rowPtrOut = new int[rows+1];
+		int[] colOut = new int[Math.max(16, nonZeros())];
+		double[] valOut = new double[colOut.length];
+		int nnz = 0;
+
+		for (int ii = 0; ii < rows; ii++) {
+			int count = 0;
+			for (int kk = rowPtr[ii]; kk < rowPtr[ii+1]; kk++) {
+				int k = colIdx[kk];
+				double a = values[kk];
+				for (int pp = that.rowPtr[k]; pp < that.rowPtr[k+1]; pp++) {
+					int j = that.colIdx[pp];
+					if(marker[j] != ii+1){
+						marker[j] = ii+1;
+						touched[count++] = j;
+						acc[j] = 0;
+					}
+					acc[j] += a*that.values[pp];
+				}
+			}
+			Arrays.sort(touched, 0, count);
+			if(nnz + count > colOut.length){
+				int size = Math.max(2*colOut.length, nnz + count);
+				colOut = Arrays.copyOf(colOut, size);
+				valOut = Arrays.copyOf(valOut, size);
+			}
+			for (int tt = 0; tt < count; tt++) {
+				colOut[nnz] = touched[tt];
+				valOut[nnz] = acc[touched[tt]];
+				nnz++;
+			}
+			rowPtrOut[ii+1] = nnz;
+		}
+		return new SparseMatrix(rows, that.cols, rowPtrOut, Arrays.copyOf(colOut, nnz), Arrays.copyOf(valOut, nnz));
+	}
+
+	/**
+	 * Returns the transpose. Its CSR arrays are the CSC arrays of this matrix.
+	 *
+	 * @return
+	 * 	New sparse matrix (cols x rows).
+	 */
+	public SparseMatrix transpose(){
+		int nnz = nonZeros();
+		int[] ptr = new int[cols+1];
+		for (int kk = 0; kk < nnz; kk++) //count entries per column
+			ptr[colIdx[kk]+1]++;
+		for (int jj = 0; jj < cols; jj++)
+			ptr[jj+1] += ptr[jj];
+		int[] next = Arrays.copyOf(ptr, cols);
+		int[] rowIdx = new int[nnz];
+		double[] vals = new double[nnz];
+		for (int ii = 0; ii < rows; ii++) { //walking rows in order keeps each column sorted
+			for (int kk = rowPtr[ii]; kk < rowPtr[ii+1]; kk++) {
+				int pos = next[colIdx[kk]]++;
+				rowIdx[pos] = ii;
+				vals[pos] = values[kk];
+			}
+		}
+		return new SparseMatrix(cols, rows, ptr, rowIdx, vals);
+	}
+
+	/**
+	 * Solves Ax = b by sparse LU with partial pivoting (see SparseLUDecomposition).
+	 *
+	 * @param b
+	 * 	The right-hand side (length rows).
+	 * @return
+	 * 	The solution x.
+	 */
+	public double[] solve(double[] b){
+		return new SparseLUDecomposition(this).solve(b); //throws ArithmeticException if the matrix is singular
+	}
+
+	/**
+	 * Copies the values into a FlatMatrix.
+	 *
+	 * @return
+	 * 	Dense matrix with the same values.
+	 */
+	public FlatMatrix toFlat(){
+		FlatMatrix dense = new FlatMatrix(rows, cols);
+		for (int ii = 0; ii < rows; ii++)
+			for (int kk = rowPtr[ii]; kk < rowPtr[ii+1]; kk++)
+				dense.data[ii*cols + colIdx[kk]] = values[kk];
+		return dense;
+	}
+
+	/**
+	 * Copies the values into a Matrix.
+	 *
+	 * @return
+	 * 	Dense matrix with the same values.
+	 */
+	public Matrix toMatrix(){
+		return toFlat().toMatrix();
+	}
+}
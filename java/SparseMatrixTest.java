@@ -0,0 +1,96 @@
+package test_classes;
+
+import static test_classes.TestSupport.*;
+
+import java.util.Random;
+
+import matrixmath.LUDecomposition;
+import matrixmath.Matrix;
+import matrixmath.SparseLUDecomposition;
+import matrixmath.SparseMatrix;
+
+/**
+ * This class tests SparseMatrix against the same matrix stored densely: products with a vector, a
+ * dense matrix and another sparse matrix, the transpose, and sparse LU. The LU solves are checked by
+ * |b - Ax| / |b| on a matrix with zeros on its diagonal (so it must pivot), with a column order
+ * and a pivot threshold, and on a grid matrix through SparseMatrix.solve; a singular
+ * matrix must be reported as such.
+ *
+ * @author Andrew M.
+ */
+public class SparseMatrixTest {
+
+	public static void main(String[] args) {
+		Random rand = new Random(5);
+		int n = 80;
+
+		Matrix dense = new Matrix(n, n); //about 5% of the entries are not zero
+		for (int ii = 0; ii < n; ii++)
+			for (int jj = 0; jj < n; jj++)
+				if(rand.nextDouble() < 0.05)
+					dense.setEntry(ii, jj, rand.nextDouble()*2 - 1);
+		SparseMatrix sparse = SparseMatrix.fromMatrix(dense);
+		double[] x = randomVector(n, rand);
+		check("sparse times vector", norm(subtract(sparse.times(x), times(dense, x))) < 1e-12);
+		Matrix other = randomMatrix(n, 4, rand);
+		check("sparse times matrix", maxDifference(sparse.times(other), dense.times(other)) < 1e-12);
+		check("sparse times sparse", maxDifference(sparse.times(sparse).toMatrix(), dense.times(dense)) < 1e-12);
+		check("sparse transpose", maxDifference(sparse.transpose().toMatrix(), dense.transpose()) == 0);
+
+		int m = 300;
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(m, m); //nothing on the diagonal
+		for (int ii = 0; ii < m; ii++) {
+			builder.add(ii, (ii+1) % m, 1 + rand.nextDouble());
+			for (int kk = 0; kk < 3; kk++) {
+				int jj = rand.nextInt(m);
+				if(jj != ii)
+					builder.add(ii, jj, rand.nextDouble() - 0.5);
+			}
+		}
+		SparseMatrix a = builder.build();
+		Matrix ad = a.toMatrix();
+		double[] b = randomVector(m, rand);
+		SparseLUDecomposition lu = new SparseLUDecomposition(a);
+		double[] xs = lu.solve(b);
+		check("sparse LU solve (pivoting)", relative(ad, xs, b) < 1e-12);
+		check("sparse LU agrees with dense LU", norm(subtract(xs, new LUDecomposition(ad).solve(b))) < 1e-10*norm(xs));
+		int[] reversed = new int[m];
+		for (int jj = 0; jj < m; jj++)
+			reversed[jj] = m-1 - jj;
+		check("sparse LU solve, column order and threshold", relative(ad, new SparseLUDecomposition(a, reversed, 0.1).solve(b), b) < 1e-12);
+
+		int grid = 60; //3600 unknowns, five nonzeros a row
+		SparseMatrix poisson = gridMatrix(grid);
+		double[] pb = randomVector(grid*grid, rand);
+		double[] px = poisson.solve(pb);
+		check("sparse LU solve on a grid", norm(subtract(pb, poisson.times(px))) / norm(pb) < 1e-12);
+
+		SparseMatrix singular = new SparseMatrix.Builder(3, 3).add(0, 0, 1).add(0, 1, 2).add(1, 0, 2).add(1, 1, 4).add(2, 2, 1).build();
+		check("sparse LU finds a singular matrix", new SparseLUDecomposition(singular).isSingular());
+
+		finish();
+	}
+
+	/**
+	 * Five-point Laplacian on a grid x grid mesh.
+	 */
+	private static SparseMatrix gridMatrix(int grid){
+		int n = grid*grid;
+		SparseMatrix.Builder builder = new SparseMatrix.Builder(n, n);
+		for (int ii = 0; ii < grid; ii++) {
+			for (int jj = 0; jj < grid; jj++) {
+				int row = ii*grid + jj;
+				builder.add(row, row, 4);
+				if(ii > 0)
+					builder.add(row, row - grid, -1);
+				if(ii < grid-1)
+					builder.add(row, row + grid, -1);
+				if(jj > 0)
+					builder.add(row, row - 1, -1);
+				if(jj < grid-1)
+					builder.add(row, row + 1, -1);
+			}
+		}
+		return builder.build();
+	}
+}
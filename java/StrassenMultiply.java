@@ -0,0 +1,210 @@
+package matrixmath;
+
+import java.util.Arrays;
+
+/**
+ * The StrassenMultiply class multiplies large square matrices with Strassen's method: each matrix
+ * is cut into four blocks, and the product is put together from 7 block products instead of 8.
+ * Repeating this on the blocks takes about n^2.81 multiplications instead of n^3.
+ *
+ *   M1 = (A11 + A22)(B11 + B22)	C11 += M1, C22 += M1
+ *   M2 = (A21 + A22)B11		C21 += M2, C22 -= M2
+ *   M3 = A11(B12 - B22)		C12 += M3, C22 += M3
+ *   M4 = A22(B21 - B11)		C11 += M4, C21 += M4
+ *   M5 = (A11 + A12)B22		C11 -= M5, C12 += M5
+ *   M6 = (A21 - A11)(B11 + B12)	C22 += M6
+ *   M7 = (A12 - A22)(B21 + B22)	C11 += M7
+ *
+ * Each product is added into the blocks of C as soon as it is found, so a level only needs three
+ * scratch blocks (the two sums and the product). The scratch space for every level is taken from
+ * one array allocated at the start, so nothing is allocated while recursing. Once the blocks are
+ * at most the cutoff size, the blocked classical kernel (MatrixMultiply) is used.
+ *
+ * Matrices whose size does not halve evenly down to the cutoff are padded with zeros, to a square
+ * of the largest dimension. Padding a long thin product that way would take far more memory and
+ * time than the product itself (a 2x3000 by 3000x2 product would become 3000x3000), so products
+ * whose largest dimension is more than twice the smallest, or whose smallest dimension is not
+ * above the cutoff, are done with the classical kernel instead.
+ *
+ * @method multiply
+ * 	Multiplies two matrices with Strassen's method.
+ * @method setCutoff
+ * 	Sets the block size below which the classical kernel is used.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class StrassenMultiply {
+	private static int cutoff = 256; //blocks this size or smaller use the classical kernel
+	private static final int MAX_ASPECT = 2; //largest dimension over smallest beyond which padding is not worth it
+
+	/**
+	 * Sets the block size below which the classical kernel is used.
+	 *
+	 * @param size
+	 * 	The cutoff (at least 1).
+	 */
+	public static void setCutoff(int size){
+		if(size < 1){
+			throw new IllegalArgumentException("cutoff must be positive");
+		}
+		cutoff = size;
+	}
+
+	public static int getCutoff(){
+		return cutoff;
+	}
+
+	/**
+	 * Multiplies two matrices.
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix (remember not commutative).
+	 * @return
+	 * 	New matrix with the product.
+	 */
+	public static FlatMatrix multiply(FlatMatrix a, FlatMatrix b){
+		if(a.cols != b.rows){
+			throw new IllegalArgumentException("cannot multiply a " + a.rows + "x" + a.cols + " by a " + b.rows + "x" + b.cols + " matrix");
+		}
+		FlatMatrix c = new FlatMatrix(a.rows, b.cols);
+		multiplyAdd(a, b, c);
+		return c;
+	}
+
+	/**
+	 * Adds the product a*b to c (c += a*b).
+	 *
+	 * @param a
+	 * 	The first matrix.
+	 * @param b
+	 * 	The second matrix.
+	 * @param c
+	 * 	The matrix the product is added to.
+	 */
+	public static void multiplyAdd(FlatMatrix a, FlatMatrix b, FlatMatrix c){
+		int n = Math.max(Math.max(a.rows, a.cols), b.cols);
+		int smallest = Math.min(Math.min(a.rows, a.cols), b.cols);
+		if(smallest <= cutoff || n > MAX_ASPECT*smallest){ //not roughly square: padding would cost more than it saves
+			MatrixMultiply.multiplyBlocked(a, b, c, 0, a.rows);
+			return;
+		}
+		int levels = 0;
+		int base = n;
+		while(base > cutoff){ //halve until the blocks are small enough
+			base = (base + 1) / 2;
+			levels++;
+		}
+		int size = base << levels; //padded size that halves evenly at every level
+
+		FlatMatrix pa = pad(a, size);
+		FlatMatrix pb = pad(b, size);
+		FlatMatrix pc = (size == c.rows && size == c.cols) ? c : pad(c, size);
+
+		long scratch = 0; //three blocks per level
+		for (int h = size/2, l = 0; l < levels; l++, h /= 2) {
+			scratch += 3L*h*h;
+		}
+		if(scratch > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("matrix too large for Strassen scratch space");
+		}
+		recurse(pa, pb, pc, new double[(int)scratch], 0);
+
+		if(pc != c){
+			pc.view(0, 0, c.rows, c.cols).copyInto(c);
+		}
+	}
+
+	/**
+	 * c += a*b for square blocks of the same size, using work[pos...] as scratch.
+	 */
+	private static void recurse(FlatMatrix a, FlatMatrix b, FlatMatrix c, double[] work, int pos){
+		int n = a.rows;
+		if(n <= cutoff || (n & 1) != 0){
+			MatrixMultiply.multiplyBlocked(a, b, c, 0, n);
+			return;
+		}
+		int h = n/2;
+		FlatMatrix a11 = a.view(0, 0, h, h), a12 = a.view(0, h, h, h), a21 = a.view(h, 0, h, h), a22 = a.view(h, h, h, h);
+		FlatMatrix b11 = b.view(0, 0, h, h), b12 = b.view(0, h, h, h), b21 = b.view(h, 0, h, h), b22 = b.view(h, h, h, h);
+		FlatMatrix c11 = c.view(0, 0, h, h), c12 = c.view(0, h, h, h), c21 = c.view(h, 0, h, h), c22 = c.view(h, h, h, h);
+
+		FlatMatrix s = new FlatMatrix(work, pos, h, h, h); //sum of a blocks
+		FlatMatrix t = new FlatMatrix(work, pos + h*h, h, h, h); //sum of b blocks
+		FlatMatrix m = new FlatMatrix(work, pos + 2*h*h, h, h, h); //product
+		int next = pos + 3*h*h; //scratch for the level below
+
+		combine(a11, a22, 1, s); combine(b11, b22, 1, t); //M1
+		product(s, t, m, work, next);
+		accumulate(c11, m, 1); accumulate(c22, m, 1);
+
+		combine(a21, a22, 1, s); //M2
+		product(s, b11, m, work, next);
+		accumulate(c21, m, 1); accumulate(c22, m, -1);
+
+		combine(b12, b22, -1, t); //M3
+		product(a11, t, m, work, next);
+		accumulate(c12, m, 1); accumulate(c22, m, 1);
+
+		combine(b21, b11, -1, t); //M4
+		product(a22, t, m, work, next);
+		accumulate(c11, m, 1); accumulate(c21, m, 1);
+
+		combine(a11, a12, 1, s); //M5
+		product(s, b22, m, work, next);
+		accumulate(c11, m, -1); accumulate(c12, m, 1);
+
+		combine(a21, a11, -1, s); combine(b11, b12, 1, t); //M6
+		product(s, t, m, work, next);
+		accumulate(c22, m, 1);
+
+		combine(a12, a22, -1, s); combine(b21, b22, 1, t); //M7
+		product(s, t, m, work, next);
+		accumulate(c11, m, 1);
+	}
+
+	/**
+	 * m = x*y (m is cleared first since the kernels add into it).
+	 */
+	private static void product(FlatMatrix x, FlatMatrix y, FlatMatrix m, double[] work, int pos){
+		Arrays.fill(m.data, m.offset, m.offset + m.rows*m.cols, 0);
+		recurse(x, y, m, work, pos);
+	}
+
+	/**
+	 * dest = x + sign*y
+	 */
+	private static void combine(FlatMatrix x, FlatMatrix y, double sign, FlatMatrix dest){
+		for (int ii = 0; ii < x.rows; ii++) {
+			int xr = x.offset + ii*x.stride, yr = y.offset + ii*y.stride, dr = dest.offset + ii*dest.stride;
+			for (int jj = 0; jj < x.cols; jj++) {
+				dest.data[dr+jj] = x.data[xr+jj] + sign*y.data[yr+jj];
+			}
+		}
+	}
+
+	/**
+	 * dest += sign*x
+	 */
+	private static void accumulate(FlatMatrix dest, FlatMatrix x, double sign){
+		for (int ii = 0; ii < x.rows; ii++) {
+			int xr = x.offset + ii*x.stride, dr = dest.offset + ii*dest.stride;
+			for (int jj = 0; jj < x.cols; jj++) {
+				dest.data[dr+jj] += sign*x.data[xr+jj];
+			}
+		}
+	}
+
+	/**
+	 * Returns the matrix itself if it is already size x size, otherwise a zero-padded copy.
+	 */
+	private static FlatMatrix pad(FlatMatrix x, int size){
+		if(x.rows == size && x.cols == size)
+			return x;
+		FlatMatrix padded = new FlatMatrix(size, size);
+		x.copyInto(padded.view(0, 0, x.rows, x.cols));
+		return padded;
+	}
+}
@@ -0,0 +1,134 @@
+package test_classes;
+
+import java.util.Random;
+
+import matrixmath.Matrix;
+
+/**
+ * The helpers shared by the test classes: counting and printing checks, random matrices and
+ * vectors, and |b - Ax| / |b| computed straight from the entries of A, so that a solver is never
+ * trusted to check its own answer.
+ *
+ * @author Andrew M.
+ */
+final class TestSupport {
+	private static int failures = 0;
+
+	private TestSupport(){
+	}
+
+	/**
+	 * Prints one check and counts it if it failed.
+	 */
+	static void check(String name, boolean ok){
+		if(!ok)
+			failures++;
+		System.out.println((ok ? "ok     " : "FAILED ") + name);
+	}
+
+	/**
+	 * Prints the summary and exits with status 1 if any check failed.
+	 */
+	static void finish(){
+		if(failures > 0){
+			System.out.println(failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("all passed");
+	}
+
+	/**
+	 * A matrix of values between -1 and 1.
+	 */
+	static Matrix randomMatrix(int rows, int cols, Random rand){
+		Matrix a = new Matrix(rows, cols);
+		for (int ii = 0; ii < rows; ii++)
+			for (int jj = 0; jj < cols; jj++)
+				a.setEntry(ii, jj, rand.nextDouble()*2 - 1);
+		return a;
+	}
+
+	/**
+	 * A vector of values between -1 and 1.
+	 */
+	static double[] randomVector(int n, Random rand){
+		double[] v = new double[n];
+		for (int ii = 0; ii < n; ii++)
+			v[ii] = rand.nextDouble()*2 - 1;
+		return v;
+	}
+
+	static double[] times(Matrix a, double[] x){
+		double[] y = new double[a.m.length];
+		for (int ii = 0; ii < y.length; ii++)
+			for (int jj = 0; jj < x.length; jj++)
+				y[ii] += a.m[ii][jj]*x[jj];
+		return y;
+	}
+
+	/**
+	 * |b - Ax| / |b|
+	 */
+	static double relative(Matrix a, double[] x, double[] b){
+		return norm(subtract(b, times(a, x))) / norm(b);
+	}
+
+	/**
+	 * The largest |b - Ax| / |b| over the columns of b.
+	 */
+	static double relative(Matrix a, Matrix x, Matrix b){
+		double worst = 0;
+		for (int jj = 0; jj < b.m[0].length; jj++) {
+			double[] bj = new double[b.m.length], xj = new double[x.m.length];
+			for (int ii = 0; ii < bj.length; ii++)
+				bj[ii] = b.m[ii][jj];
+			for (int ii = 0; ii < xj.length; ii++)
+				xj[ii] = x.m[ii][jj];
+			double r = relative(a, xj, bj);
+			if(Double.isNaN(r))
+				return r;
+			worst = Math.max(worst, r);
+		}
+		return worst;
+	}
+
+	static double[] subtract(double[] x, double[] y){
+		double[] d = new double[x.length];
+		for (int ii = 0; ii < x.length; ii++)
+			d[ii] = x[ii] - y[ii];
+		return d;
+	}
+
+	static double norm(double[] v){
+		double sum = 0;
+		for (double d : v)
+			sum += d*d;
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * The largest difference between two entries in the same place (NaN if any entry is NaN).
+	 */
+	static double maxDifference(Matrix a, Matrix b){
+		double max = 0;
+		for (int ii = 0; ii < a.m.length; ii++) {
+			for (int jj = 0; jj < a.m[0].length; jj++) {
+				double d = Math.abs(a.m[ii][jj] - b.m[ii][jj]);
+				if(Double.isNaN(d))
+					return Double.NaN;
+				max = Math.max(max, d);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * The largest difference between a matrix and the identity.
+	 */
+	static double identityError(Matrix p){
+		Matrix id = new Matrix(p.m.length, p.m.length);
+		for (int ii = 0; ii < p.m.length; ii++)
+			id.setEntry(ii, ii, 1);
+		return maxDifference(p, id);
+	}
+}
@@ -0,0 +1,297 @@
+package matrixmath;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The TiledMatrix class is a matrix kept in a file on disk instead of in memory, so it can be much
+ * larger than RAM. The file uses the MatrixIO format with the tiled layout: the matrix is cut into
+ * square tiles of tile x tile values, the tiles are stored one after another (tile rows top to
+ * bottom, left to right within a tile row), and each tile is stored row by row. Tiles on the right
+ * and bottom edges are padded with zeros so every tile has the same size and position formula.
+ *
+ * Only whole tiles are read or written (see OutOfCoreMultiply). The checksum in the header is kept
+ * up to date as long as tiles are written in file order, which is what OutOfCoreMultiply does;
+ * otherwise close reads the file once more to compute it.
+ *
+ * @method create
+ * 	Creates a file for a matrix of zeros.
+ * @method fromMatrix
+ * 	Saves a Matrix as a tiled file.
+ * @method open
+ * 	Opens an existing tiled file.
+ * @method readTile
+ * 	Reads one tile.
+ * @method writeTile
+ * 	Writes one tile.
+ * @method toMatrix
+ * 	Reads the whole matrix into memory.
+ * @method close
+ * 	Writes the checksum and closes the file.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class TiledMatrix implements AutoCloseable {
+	final int rows; //number of rows
+	final int cols; //number of columns
+	final int tile; //rows (and columns) in one tile
+	final int tilesDown; //number of tile rows
+	final int tilesAcross; //number of tile columns
+	private final FileChannel channel;
+	private final boolean writable;
+	private final ThreadLocal<ByteBuffer> buffers; //one direct buffer per thread for tile transfers
+	private final CRC32 crc = new CRC32(); //checksum of the tiles written so far, in file order
+	private long nextTile; //tile the running checksum expects next
+	private boolean inOrder = true; //false once a tile is written out of file order
+	private boolean dirty; //true once any tile has been written
+
+	private TiledMatrix(FileChannel channel, int rows, int cols, int tile, boolean writable){
+		this.channel = channel;
+		this.rows = rows;
+		this.cols = cols;
+		this.tile = tile;
+		this.tilesDown = (rows + tile - 1) / tile;
+		this.tilesAcross = (cols + tile - 1) / tile;
+		this.writable = writable;
+		int bytes = tile*tile*Double.BYTES;
+		this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bytes).order(MatrixIO.ORDER));
+	}
+
+	/**
+	 * Creates (or replaces) a file for a rows x cols matrix of zeros. The file is sparse where the
+	 * file system allows it, so creating it is fast.
+	 *
+	 * @param file
+	 * 	The file to create.
+	 * @param rows
+	 * 	The number of rows.
+	 * @param cols
+	 * 	The number of columns.
+	 * @param tile
+	 * 	The rows (and columns) in one tile.
+	 * @return
+	 * 	The open matrix, ready for writeTile.
+	 * @throws IOException
+	 * 	If the file cannot be created.
+	 */
+	public static TiledMatrix create(Path file, int rows, int cols, int tile) throws IOException {
+		if(tile <= 0){
+			throw new IllegalArgumentException("tile size must be positive");
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		TiledMatrix tiled = new TiledMatrix(channel, rows, cols, tile, true);
+		tiled.header(0).writeTo(channel);
+		long end = MatrixIO.HEADER_SIZE + tiled.header(0).dataBytes();
+		if(end > MatrixIO.HEADER_SIZE)
+			channel.write(ByteBuffer.allocate(1), end - 1); //sets the file length
+		tiled.dirty = true; //the zeros have no checksum yet
+		return tiled;
+	}
+
+	/**
+	 * Opens an existing tiled file.
+	 *
+	 * @param file
+	 * 	The file to open.
+	 * @param writable
+	 * 	True to allow writeTile.
+	 * @return
+	 * 	The open matrix.
+	 * @throws IOException
+	 * 	If the file cannot be read or is not a tiled matrix file.
+	 */
+	public static TiledMatrix open(Path file, boolean writable) throws IOException {
+		FileChannel channel = writable ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			MatrixIO.Header header = MatrixIO.Header.readFrom(channel);
+			if(header.layout != MatrixIO.LAYOUT_TILED || header.tileRows != header.tileCols){
+				throw new IOException("expected a tiled matrix file with square tiles");
+			}
+			return new TiledMatrix(channel, header.rows, header.cols, header.tileRows, writable);
+		}
+		catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Saves a Matrix as a tiled file (convenient for tests and for inputs that do fit in memory).
+	 *
+	 * @param that
+	 * 	The matrix to save.
+	 * @param file
+	 * 	The file to write.
+	 * @param tile
+	 * 	The rows (and columns) in one tile.
+	 * @return
+	 * 	The open matrix.
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	public static TiledMatrix fromMatrix(Matrix that, Path file, int tile) throws IOException {
+		TiledMatrix tiled = create(file, that.rows, that.cols, tile);
+		double[] values = new double[tile*tile];
+		for (int bi = 0; bi < tiled.tilesDown; bi++) {
+			for (int bj = 0; bj < tiled.tilesAcross; bj++) {
+				java.util.Arrays.fill(values, 0);
+				int height = Math.min(tile, that.rows - bi*tile);
+				int width = Math.min(tile, that.cols - bj*tile);
+				for (int ii = 0; ii < height; ii++)
+					System.arraycopy(that.m[bi*tile + ii], bj*tile, values, ii*tile, width);
+				tiled.writeTile(bi, bj, values);
+			}
+		}
+		return tiled;
+	}
+
+	private MatrixIO.Header header(long checksum){
+		return new MatrixIO.Header(MatrixIO.VERSION, MatrixIO.DTYPE_FLOAT64, MatrixIO.LAYOUT_TILED, rows, cols, tile, tile, MatrixIO.HEADER_SIZE, checksum);
+	}
+
+	public int getRows(){
+		return rows;
+	}
+
+	public int getCols(){
+		return cols;
+	}
+
+	public int getTileSize(){
+		return tile;
+	}
+
+	private long position(int bi, int bj){
+		return MatrixIO.HEADER_SIZE + ((long)bi*tilesAcross + bj)*tile*tile*Double.BYTES;
+	}
+
+	/**
+	 * Reads one tile (row by row, padded with zeros past the edge of the matrix). Several threads
+	 * may read at once.
+	 *
+	 * @param bi
+	 * 	Tile row.
+	 * @param bj
+	 * 	Tile column.
+	 * @param dest
+	 * 	Array of at least tile*tile values to fill.
+	 * @throws IOException
+	 * 	If the file cannot be read.
+	 */
+	public void readTile(int bi, int bj, double[] dest) throws IOException {
+		ByteBuffer buf = buffers.get();
+		buf.clear();
+		long pos = position(bi, bj);
+		while(buf.hasRemaining()){
+			int count = channel.read(buf, pos + buf.position());
+			if(count < 0){
+				throw new IOException("tiled matrix file is truncated");
+			}
+		}
+		buf.flip();
+		buf.asDoubleBuffer().get(dest, 0, tile*tile);
+	}
+
+	/**
+	 * Writes one tile (row by row; values past the edge of the matrix should be 0).
+	 *
+	 * @param bi
+	 * 	Tile row.
+	 * @param bj
+	 * 	Tile column.
+	 * @param src
+	 * 	Array of at least tile*tile values.
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	public synchronized void writeTile(int bi, int bj, double[] src) throws IOException {
+		if(!writable){
+			throw new IllegalStateException("tiled matrix was opened read-only");
+		}
+		ByteBuffer buf = buffers.get();
+		buf.clear();
+		buf.asDoubleBuffer().put(src, 0, tile*tile);
+		long index = (long)bi*tilesAcross + bj;
+		if(inOrder && index == nextTile){
+			crc.update(buf.duplicate());
+			nextTile++;
+		}
+		else{
+			inOrder = false;
+		}
+		long pos = position(bi, bj);
+		while(buf.hasRemaining())
+			channel.write(buf, pos + buf.position());
+		dirty = true;
+	}
+
+	/**
+	 * Reads the whole matrix into memory.
+	 *
+	 * @return
+	 * 	A Matrix with the same values.
+	 * @throws IOException
+	 * 	If the file cannot be read.
+	 */
+	public Matrix toMatrix() throws IOException {
+		Matrix mat = new Matrix(rows, cols);
+		double[] values = new double[tile*tile];
+		for (int bi = 0; bi < tilesDown; bi++) {
+			for (int bj = 0; bj < tilesAcross; bj++) {
+				readTile(bi, bj, values);
+				int height = Math.min(tile, rows - bi*tile);
+				int width = Math.min(tile, cols - bj*tile);
+				for (int ii = 0; ii < height; ii++)
+					System.arraycopy(values, ii*tile, mat.m[bi*tile + ii], bj*tile, width);
+			}
+		}
+		return mat;
+	}
+
+	/**
+	 * Writes the checksum into the header (if any tile was written) and closes the file.
+	 *
+	 * @throws IOException
+	 * 	If the file cannot be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!channel.isOpen())
+			return;
+		try {
+			if(writable && dirty){
+				long total = (long)tilesDown*tilesAcross;
+				long checksum;
+				if(inOrder && nextTile == total){
+					checksum = crc.getValue();
+				}
+				else{ //tiles were written out of order: checksum the whole file again
+					CRC32 full = new CRC32();
+					ByteBuffer buf = buffers.get();
+					for (long tt = 0; tt < total; tt++) {
+						buf.clear();
+						long pos = MatrixIO.HEADER_SIZE + tt*buf.capacity();
+						while(buf.hasRemaining()){
+							if(channel.read(buf, pos + buf.position()) < 0)
+								break;
+						}
+						buf.flip();
+						full.update(buf);
+					}
+					checksum = full.getValue();
+				}
+				header(checksum).writeTo(channel);
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+}
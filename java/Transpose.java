@@ -0,0 +1,211 @@
+package matrixmath;
+
+/**
+ * The Transpose class transposes matrices with a cache-oblivious recursion: the matrix is cut in
+ * half along its longer side until the pieces are small (BASE x BASE), and only those small pieces
+ * are copied with plain loops. A small piece of the source and of the destination both fit in
+ * cache whatever the cache size is, so every cache line that is read or written is used fully,
+ * instead of the destination being walked down a column as the textbook double loop does.
+ *
+ * A square matrix can be transposed in place: the diagonal blocks are transposed in place, and each
+ * block above the diagonal is swapped with the transpose of the matching block below it.
+ *
+ * @method transpose
+ * 	Copies the transpose of a matrix into another.
+ * @method transposeInPlace
+ * 	Transposes a square matrix in place.
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class Transpose {
+	private static final int BASE = 32; //pieces this small are copied directly
+
+	private Transpose(){
+	}
+
+	/**
+	 * Copies the transpose of src into dest.
+	 *
+	 * @param src
+	 * 	The matrix to transpose.
+	 * @param dest
+	 * 	Matrix with src.cols rows and src.rows columns (not overlapping src).
+	 */
+	public static void transpose(FlatMatrix src, FlatMatrix dest){
+		if(dest.rows != src.cols || dest.cols != src.rows){
+			throw new IllegalArgumentException("the transpose of a " + src.rows + "x" + src.cols + " matrix does not fit in a " + dest.rows + "x" + dest.cols + " matrix");
+		}
+		transpose(src, dest, 0, src.rows, 0, src.cols);
+	}
+
+	/**
+	 * Transposes rows r0..r1 and columns c0..c1 of src.
+	 */
+	private static void transpose(FlatMatrix src, FlatMatrix dest, int r0, int r1, int c0, int c1){
+		int height = r1 - r0, width = c1 - c0;
+		if(height <= BASE && width <= BASE){
+			double[] s = src.data, d = dest.data;
+			for (int ii = r0; ii < r1; ii++) {
+				int from = src.offset + ii*src.stride;
+				for (int jj = c0; jj < c1; jj++)
+					d[dest.offset + jj*dest.stride + ii] = s[from + jj];
+			}
+		}
+		else if(height >= width){
+			int mid = r0 + height/2;
+			transpose(src, dest, r0, mid, c0, c1);
+			transpose(src, dest, mid, r1, c0, c1);
+		}
+		else{
+			int mid = c0 + width/2;
+			transpose(src, dest, r0, r1, c0, mid);
+			transpose(src, dest, r0, r1, mid, c1);
+		}
+	}
+
+	/**
+	 * Copies the transpose of src into dest.
+	 *
+	 * @param src
+	 * 	The matrix to transpose (rows of equal length).
+	 * @param dest
+	 * 	Array with src[0].length rows of src.length entries.
+	 */
+	public static void transpose(double[][] src, double[][] dest){
+		int rows = src.length, cols = rows == 0 ? 0 : src[0].length;
+		transpose(src, dest, 0, rows, 0, cols);
+	}
+
+	private static void transpose(double[][] src, double[][] dest, int r0, int r1, int c0, int c1){
+		int height = r1 - r0, width = c1 - c0;
+		if(height <= BASE && width <= BASE){
+			for (int ii = r0; ii < r1; ii++) {
+				double[] row = src[ii];
+				for (int jj = c0; jj < c1; jj++)
+					dest[jj][ii] = row[jj];
+			}
+		}
+		else if(height >= width){
+			int mid = r0 + height/2;
+			transpose(src, dest, r0, mid, c0, c1);
+			transpose(src, dest, mid, r1, c0, c1);
+		}
+		else{
+			int mid = c0 + width/2;
+			transpose(src, dest, r0, r1, c0, mid);
+			transpose(src, dest, r0, r1, mid, c1);
+		}
+	}
+
+	/**
+	 * Transposes a square matrix in place.
+	 *
+	 * @param a
+	 * 	The square matrix.
+	 */
+	public static void transposeInPlace(FlatMatrix a){
+		if(a.rows != a.cols){
+			throw new IllegalArgumentException("only a square matrix can be transposed in place, not " + a.rows + "x" + a.cols);
+		}
+		transposeDiagonal(a, 0, a.rows);
+	}
+
+	/**
+	 * Transposes the diagonal block r0..r1 in place.
+	 */
+	private static void transposeDiagonal(FlatMatrix a, int r0, int r1){
+		int size = r1 - r0;
+		if(size <= BASE){
+			for (int ii = r0; ii < r1; ii++)
+				for (int jj = ii+1; jj < r1; jj++)
+					swap(a, ii, jj);
+			return;
+		}
+		int mid = r0 + size/2;
+		transposeDiagonal(a, r0, mid);
+		transposeDiagonal(a, mid, r1);
+		swapBlocks(a, r0, mid, mid, r1); //block above the diagonal with the one below it
+	}
+
+	/**
+	 * Swaps block (rows r0..r1, columns c0..c1) with the transpose of block (rows c0..c1, columns r0..r1).
+	 */
+	private static void swapBlocks(FlatMatrix a, int r0, int r1, int c0, int c1){
+		int height = r1 - r0, width = c1 - c0;
+		if(height <= BASE && width <= BASE){
+			for (int ii = r0; ii < r1; ii++)
+				for (int jj = c0; jj < c1; jj++)
+					swap(a, ii, jj);
+		}
+		else if(height >= width){
+			int mid = r0 + height/2;
+			swapBlocks(a, r0, mid, c0, c1);
+			swapBlocks(a, mid, r1, c0, c1);
+		}
+		else{
+			int mid = c0 + width/2;
+			swapBlocks(a, r0, r1, c0, mid);
+			swapBlocks(a, r0, r1, mid, c1);
+		}
+	}
+
+	private static void swap(FlatMatrix a, int i, int j){
+		int ij = a.offset + i*a.stride + j, ji = a.offset + j*a.stride + i;
+		double tmp = a.data[ij];
+		a.data[ij] = a.data[ji];
+		a.data[ji] = tmp;
+	}
+
+	/**
+	 * Transposes a square array in place.
+	 *
+	 * @param m
+	 * 	The square array.
+	 */
+	public static void transposeInPlace(double[][] m){
+		if(m.length > 0 && m[0].length != m.length){
+			throw new IllegalArgumentException("only a square matrix can be transposed in place");
+		}
+		transposeDiagonal(m, 0, m.length);
+	}
+
+	private static void transposeDiagonal(double[][] m, int r0, int r1){
+		int size = r1 - r0;
+		if(size <= BASE){
+			for (int ii = r0; ii < r1; ii++)
+				for (int jj = ii+1; jj < r1; jj++)
+					swap(m, ii, jj);
+			return;
+		}
+		int mid = r0 + size/2;
+		transposeDiagonal(m, r0, mid);
+		transposeDiagonal(m, mid, r1);
+		swapBlocks(m, r0, mid, mid, r1);
+	}
+
+	private static void swapBlocks(double[][] m, int r0, int r1, int c0, int c1){
+		int height = r1 - r0, width = c1 - c0;
+		if(height <= BASE && width <= BASE){
+			for (int ii = r0; ii < r1; ii++)
+				for (int jj = c0; jj < c1; jj++)
+					swap(m, ii, jj);
+		}
+		else if(height >= width){
+			int mid = r0 + height/2;
+			swapBlocks(m, r0, mid, c0, c1);
+			swapBlocks(m, mid, r1, c0, c1);
+		}
+		else{
+			int mid = c0 + width/2;
+			swapBlocks(m, r0, r1, c0, mid);
+			swapBlocks(m, r0, r1, mid, c1);
+		}
+	}
+
+	private static void swap(double[][] m, int i, int j){
+		double tmp = m[i][j];
+		m[i][j] = m[j][i];
+		m[j][i] = tmp;
+	}
+}
@@ -0,0 +1,198 @@
+package matrixmath;
+
+/**
+ * The TridiagonalMatrix class stores a square matrix with nonzeros only on the main diagonal and
+ * the diagonals just above and below it, as three arrays. Systems are solved with the Thomas
+ * algorithm (elimination without pivoting, which is stable when the matrix is diagonally dominant,
+ * as it is for the usual 1D finite-difference operators) in O(n) time.
+ *
+ * The scratch array used while solving belongs to the matrix, so repeated solves (for example one
+ * per timestep) allocate nothing when the caller passes the output array. Because of that, one
+ * TridiagonalMatrix should not be solved from several threads at once.
+ *
+ * @method get
+ * 	Gets a particular entry of the matrix (0 off the three diagonals).
+ * @method set
+ * 	Sets a particular entry of the matrix (must be on the three diagonals).
+ * @method times
+ * 	Multiplies by a vector.
+ * @method solve
+ * 	Solves Ax = b with the Thomas algorithm.
+ * @method toBandMatrix
+ * 	Copies into a BandMatrix (for solving with pivoting).
+ *
+ * @author Andrew M.
+ * @version 1.0
+ */
+public class TridiagonalMatrix {
+	final int n; //number of rows and columns
+	final double[] lower; //lower[i] is entry (i+1, i)
+	final double[] diag; //diag[i] is entry (i, i)
+	final double[] upper; //upper[i] is entry (i, i+1)
+	private final double[] scratch; //modified upper diagonal while solving
+
+	/**
+	 * Constructor for a tridiagonal matrix of zeros.
+	 *
+	 * @param n
+	 * 	Number of rows (and columns).
+	 */
+	public TridiagonalMatrix(int n){
+		this(new double[Math.max(0, n-1)], new double[n], new double[Math.max(0, n-1)]);
+	}
+
+	/**
+	 * Wraps three diagonals (not copied).
+	 *
+	 * @param lower
+	 * 	Diagonal below the main diagonal (length n-1).
+	 * @param diag
+	 * 	Main diagonal (length n).
+	 * @param upper
+	 * 	Diagonal above the main diagonal (length n-1).
+	 */
+	public TridiagonalMatrix(double[] lower, double[] diag, double[] upper){
+		this.n = diag.length;
+		if(lower.length != Math.max(0, n-1) || upper.length != Math.max(0, n-1)){
+			throw new IllegalArgumentException("off-diagonals must have length " + (n-1));
+		}
+		this.lower = lower;
+		this.diag = diag;
+		this.upper = upper;
+		this.scratch = new double[n];
+	}
+
+	public int getSize(){
+		return n;
+	}
+
+	/**
+	 * Gets an entry of the matrix.
+	 *
+	 * @param i
+	 * 	Row of the entry
+	 * @param j
+	 * 	Column of the entry
+	 * @return
+	 * 	The value at (i, j).
+	 */
+	public double get(int i, int j){
+		if(i == j)
+			return diag[i];
+		if(i == j+1)
+			return lower[j];
+		if(j == i+1)
+			return upper[i];
+		return 0;
+	}
+
+	/**
+	 * Sets an entry on one of the three diagonals.
+	 *
+	 * @param i
+	 * 	Row of new entry
+	 * @param j
+	 * 	Column of new entry
+	 * @param d
+	 * 	The value to put in the matrix.
+	 */
+	public void set(int i, int j, double d){
+		if(i == j)
+			diag[i] = d;
+		else if(i == j+1)
+			lower[j] = d;
+		else if(j == i+1)
+			upper[i] = d;
+		else
+			throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is not on the three diagonals");
+	}
+
+	/**
+	 * Multiplies by a vector.
+	 *
+	 * @param x
+	 * 	The vector (length n).
+	 * @return
+	 * 	The product.
+	 */
+	public double[] times(double[] x){
+		double[] y = new double[n];
+		for (int ii = 0; ii < n; ii++) {
+			double sum = diag[ii]*x[ii];
+			if(ii > 0)
+				sum += lower[ii-1]*x[ii-1];
+			if(ii < n-1)
+				sum += upper[ii]*x[ii+1];
+			y[ii] = sum;
+		}
+		return y;
+	}
+
+	/**
+	 * Solves Ax = b.
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @return
+	 * 	New array with the solution x.
+	 */
+	public double[] solve(double[] b){
+		return solve(b, new double[n]);
+	}
+
+	/**
+	 * Solves Ax = b into an array the caller owns (b and x may be the same array).
+	 *
+	 * @param b
+	 * 	The right-hand side (length n).
+	 * @param x
+	 * 	Where to put the solution (length n).
+	 * @return
+	 * 	x
+	 */
+	public double[] solve(double[] b, double[] x){
+		if(b.length != n || x.length != n){
+			throw new IllegalArgumentException("vectors must have length " + n);
+		}
+		if(n == 0)
+			return x;
+		double denom = diag[0];
+		if(denom == 0){
+			throw new ArithmeticException("zero pivot in row 0 (use toBandMatrix to solve with pivoting)");
+		}
+		if(n > 1)
+			scratch[0] = upper[0] / denom;
+		x[0] = b[0] / denom;
+		for (int ii = 1; ii < n; ii++) { //forward sweep
+			denom = diag[ii] - lower[ii-1]*scratch[ii-1];
+			if(denom == 0){
+				throw new ArithmeticException("zero pivot in row " + ii + " (use toBandMatrix to solve with pivoting)");
+			}
+			if(ii < n-1)
+				scratch[ii] = upper[ii] / denom;
+			x[ii] = (b[ii] - lower[ii-1]*x[ii-1]) / denom;
+		}
+		for (int ii = n-2; ii >= 0; ii--) { //back substitution
+			x[ii] -= scratch[ii]*x[ii+1];
+		}
+		return x;
+	}
+
+	/**
+	 * Copies into a BandMatrix with one diagonal on each side.
+	 *
+	 * @return
+	 * 	The band matrix.
+	 */
+	public BandMatrix toBandMatrix(){
+		BandMatrix banded = new BandMatrix(n, 1, 1);
+		for (int ii = 0; ii < n; ii++) {
+			banded.set(ii, ii, diag[ii]);
+			if(ii > 0)
+				banded.set(ii, ii-1, lower[ii-1]);
+			if(ii < n-1)
+				banded.set(ii, ii+1, upper[ii]);
+		}
+		return banded;
+	}
+}
@@ -12,12 +12,32 @@ import org.opensourcephysics.display.Trail;
  * This abstract class contains the method for calculating a Reimann sum (rs) no matter the rule 
  * as well as the abstract methods implemented by each rule - slice plot and slice - that define
  * the individual rules. 
+ * 
+ * An Observer can be told about every Riemann sum as it begins and ends (matrixmath.MatrixMetrics 
+ * installs one while it is recording), so this package needs nothing from matrixmath. 
  */
 
 public abstract class Riemann {
+	private static volatile Observer observer; //null unless something is measuring Riemann sums 
+
+	public interface Observer {
+		long begin(); //called when rs begins; the result is passed to end 
+		void end(long token, int degree, int subintervals); //called when rs ends 
+	}
+
+	public static void setObserver(Observer o) {
+		//Sets the observer told about every Riemann sum (null for none). 
+		observer = o; 
+	}
+
 	public double rs(polyfun.Polynomial poly, double left, double right, int subintervals) {
 		//Calculates a Riemann sum from a left endpoint, a right endpoint, 
 		//a polynomial, and the number of subintervals. 
+		Observer obs = observer; 
+		long token = obs == null ? 0 : obs.begin(); 
+		RiemannSumEvent event = new RiemannSumEvent(); 
+		event.begin(); 
+		double from = left; //left is moved along by the loop 
 		double area = 0; //accumulative - makes returning easier 
 		double delta = (right-left)/subintervals; //convenient for for loop
 		for (double ii = 0; ii < subintervals; ii ++) {
@@ -25,6 +45,17 @@ public abstract class Riemann {
 			//this.slice uses the rule's slice method to calculate the Riemann sum 
 			left += delta; 
 		}
+		event.end(); 
+		if(event.shouldCommit()){
+			event.rule = getClass().getSimpleName(); 
+			event.degree = poly.getDegree(); 
+			event.subintervals = subintervals; 
+			event.left = from; 
+			event.right = right; 
+			event.commit(); 
+		}
+		if(obs != null) 
+			obs.end(token, poly.getDegree(), subintervals); 
 		return area; 
 	}
 
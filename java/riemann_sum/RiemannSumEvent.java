@@ -0,0 +1,33 @@
+package riemann_sum;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * The Java Flight Recorder event written by Riemann.rs, so that in a recording the time of a slow 
+ * Riemann sum is labelled with the rule, the degree and the number of subintervals. It keeps the 
+ * name and category of the other Matrix Math events (see matrixmath.MatrixEvents), so recording 
+ * settings such as "matrixmath.RiemannSum#threshold=1 ms" work the same way. 
+ */
+
+@Name("matrixmath.RiemannSum")
+@Label("Riemann Sum")
+@Category({"Matrix Math"})
+@Description("A Riemann sum over an interval (Riemann.rs)")
+@Threshold("10 ms")
+class RiemannSumEvent extends Event {
+	@Label("Rule")
+	String rule;
+	@Label("Degree")
+	int degree;
+	@Label("Subintervals")
+	int subintervals;
+	@Label("Left")
+	double left;
+	@Label("Right")
+	double right;
+}